@@ -0,0 +1,128 @@
+package as.springbatchlearn.benchmark;
+
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerChunkMessageConverter;
+import as.springbatchlearn.domain.CustomerGenerator;
+import as.springbatchlearn.domain.ProcessedChunkResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    The cost of a chunk on the wire: CustomerChunkMessageConverter, with and without compression, against the
+    SimpleMessageConverter (Java serialization) the AMQP template uses by default, for a chunk request, a reply that
+    carries the processed items back (chunking.write-mode=master) and a plain acknowledgement. Both go through the
+    MessageConverter interface, encode makes the body of a message, decode reads one back.
+
+    Customer isn't Serializable, so what Java serialization writes is the same chunk of a Serializable class with the
+    same four fields. The contribution is the one of a real step execution, with the job execution and job instance
+    around it, as the stock ChunkMessageChannelItemWriter sends it. The bytes per message of every combination are
+    printed before the first iteration.
+
+    mvn -Pjmh compile exec:exec -Djmh.args="ChunkSerialization -prof gc"
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkSerializationBenchmark {
+
+    @Param({"wire", "wire-deflate", "java"})
+    public String converter;
+
+    @Param({"request", "processed-reply", "acknowledgement"})
+    public String payload;
+
+    @Param({"100", "1000"})
+    public int chunkSize;
+
+    private MessageConverter messageConverter;
+    private Object message;
+    private Message encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("java".equals(converter)) {
+            messageConverter = new SimpleMessageConverter();
+        } else {
+            CustomerChunkMessageConverter customerConverter = new CustomerChunkMessageConverter();
+            customerConverter.setCompressionThreshold("wire-deflate".equals(converter) ? 0 : -1);
+            messageConverter = customerConverter;
+        }
+
+        CustomerGenerator generator = new CustomerGenerator();
+        generator.setRows(chunkSize);
+        generator.afterPropertiesSet();
+        List<Object> items = new ArrayList<>(chunkSize);
+        for (int row = 0; row < chunkSize; row++) {
+            Customer customer = new Customer(generator.id(row), generator.firstName(row), generator.lastName(row),
+                    (int) (-7000 + row * 37 % 20000));
+            items.add("java".equals(converter) ? new SerializableCustomer(customer) : customer);
+        }
+
+        JobExecution jobExecution = new JobExecution(new JobInstance(1L, "job"), 1L, null, null);
+        StepExecution stepExecution = new StepExecution("step1", jobExecution, 1L);
+        StepContribution contribution = stepExecution.createStepContribution();
+        contribution.incrementWriteCount(chunkSize);
+        switch (payload) {
+            case "request":
+                message = new ChunkRequest<>(7, items, 1L, contribution);
+                break;
+            case "processed-reply":
+                message = new ProcessedChunkResponse<>(7, 1L, contribution, items);
+                break;
+            default:
+                message = new ChunkResponse(7, 1L, contribution);
+        }
+
+        encoded = encode();
+        System.out.printf("%n%s %s of %d customers: %d bytes%n", converter, payload, chunkSize, encoded.getBody().length);
+    }
+
+    @Benchmark
+    public Message encode() {
+        return messageConverter.toMessage(message, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decode() {
+        return messageConverter.fromMessage(encoded);
+    }
+
+    private static final class SerializableCustomer implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long id;
+        private final String firstName;
+        private final String lastName;
+        private final int birthEpochDay;
+
+        private SerializableCustomer(Customer customer) {
+            this.id = customer.getId();
+            this.firstName = customer.getFirstName();
+            this.lastName = customer.getLastName();
+            this.birthEpochDay = customer.getBirthEpochDay();
+        }
+    }
+}
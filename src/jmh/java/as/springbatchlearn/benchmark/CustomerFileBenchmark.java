@@ -0,0 +1,205 @@
+package as.springbatchlearn.benchmark;
+
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerFileFormat;
+import as.springbatchlearn.domain.CustomerFileItemReader;
+import as.springbatchlearn.domain.CustomerFileItemWriter;
+import as.springbatchlearn.domain.CustomerGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.mapping.FieldSetMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.transform.FieldExtractor;
+import org.springframework.batch.item.file.transform.FixedLengthTokenizer;
+import org.springframework.batch.item.file.transform.FormatterLineAggregator;
+import org.springframework.batch.item.file.transform.Range;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    A file of rows customers read and written whole, by FlatFileItemReader/FlatFileItemWriter with the tokenizer,
+    field set mapper and line aggregator a customer file would have, against CustomerFileItemReader/Writer with the
+    same layout. The file is written once per trial and stays in the page cache, so this is the CPU and the
+    allocation per line; run with -prof gc to see the bytes allocated per file.
+
+    mvn -Pjmh compile exec:exec -Djmh.args="CustomerFile -prof gc"
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CustomerFileBenchmark {
+
+    private static final int[] WIDTHS = {10, 16, 16, 10};
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param({"delimited", "fixed-width"})
+    public String format;
+
+    @Param({"1000000"})
+    public int rows;
+
+    private CustomerFileFormat fileFormat;
+    private List<Customer> customers;
+    private Path directory;
+    private Path input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fileFormat = "delimited".equals(format)
+                ? CustomerFileFormat.delimited(',')
+                : CustomerFileFormat.fixedWidth(WIDTHS[0], WIDTHS[1], WIDTHS[2], WIDTHS[3]);
+
+        CustomerGenerator generator = new CustomerGenerator();
+        generator.setRows(rows);
+        generator.afterPropertiesSet();
+        customers = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            customers.add(new Customer(generator.id(row), generator.firstName(row), generator.lastName(row),
+                    LocalDate.parse(generator.birthdate(row).substring(0, 10))));
+        }
+
+        directory = Files.createTempDirectory("customer-file-benchmark");
+        input = directory.resolve("input");
+        writeAll(mappedWriter(input));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(directory.resolve("output"));
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long readFlatFile() throws Exception {
+        return readAll(flatFileReader());
+    }
+
+    @Benchmark
+    public long readMapped() throws Exception {
+        CustomerFileItemReader reader = new CustomerFileItemReader();
+        reader.setResource(new FileSystemResource(input));
+        reader.setFormat(fileFormat);
+        reader.afterPropertiesSet();
+        return readAll(reader);
+    }
+
+    @Benchmark
+    public long writeFlatFile() throws Exception {
+        return writeAll(flatFileWriter());
+    }
+
+    @Benchmark
+    public long writeMapped() throws Exception {
+        return writeAll(mappedWriter(directory.resolve("output")));
+    }
+
+    private FlatFileItemReader<Customer> flatFileReader() throws Exception {
+        DefaultLineMapper<Customer> lineMapper = new DefaultLineMapper<>();
+        if ("delimited".equals(format)) {
+            lineMapper.setLineTokenizer(new DelimitedLineTokenizer(","));
+        } else {
+            FixedLengthTokenizer tokenizer = new FixedLengthTokenizer();
+            tokenizer.setColumns(new Range(1, 10), new Range(11, 26), new Range(27, 42), new Range(43, 52));
+            tokenizer.setStrict(false);
+            lineMapper.setLineTokenizer(tokenizer);
+        }
+        FieldSetMapper<Customer> fieldSetMapper = fieldSet -> {
+            String birthdate = fieldSet.readString(3);
+            return new Customer(fieldSet.readLong(0), emptyToNull(fieldSet.readString(1)),
+                    emptyToNull(fieldSet.readString(2)), birthdate.isEmpty() ? null : LocalDate.parse(birthdate));
+        };
+        lineMapper.setFieldSetMapper(fieldSetMapper);
+
+        FlatFileItemReader<Customer> reader = new FlatFileItemReader<>();
+        reader.setResource(new FileSystemResource(input));
+        reader.setLineMapper(lineMapper);
+        reader.afterPropertiesSet();
+        return reader;
+    }
+
+    private FlatFileItemWriter<Customer> flatFileWriter() throws Exception {
+        FieldExtractor<Customer> fieldExtractor = customer -> new Object[]{customer.getId(),
+                nullToEmpty(customer.getFirstName()), nullToEmpty(customer.getLastName()),
+                customer.hasBirthdate() ? customer.getBirthdate().toString() : ""};
+
+        FlatFileItemWriter<Customer> writer = new FlatFileItemWriter<>();
+        writer.setResource(new FileSystemResource(directory.resolve("output")));
+        if ("delimited".equals(format)) {
+            DelimitedLineAggregator<Customer> lineAggregator = new DelimitedLineAggregator<>();
+            lineAggregator.setFieldExtractor(fieldExtractor);
+            writer.setLineAggregator(lineAggregator);
+        } else {
+            FormatterLineAggregator<Customer> lineAggregator = new FormatterLineAggregator<>();
+            lineAggregator.setFormat("%-10d%-16s%-16s%-10s");
+            lineAggregator.setFieldExtractor(fieldExtractor);
+            writer.setLineAggregator(lineAggregator);
+        }
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    private CustomerFileItemWriter mappedWriter(Path file) {
+        CustomerFileItemWriter writer = new CustomerFileItemWriter();
+        writer.setResource(new FileSystemResource(file));
+        writer.setFormat(fileFormat);
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    private long readAll(ItemStreamReader<Customer> reader) throws Exception {
+        long count = 0;
+        reader.open(new ExecutionContext());
+        try {
+            while (reader.read() != null) {
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+    private long writeAll(ItemStreamWriter<Customer> writer) throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        try {
+            for (int from = 0; from < customers.size(); from += CHUNK_SIZE) {
+                writer.write(customers.subList(from, Math.min(customers.size(), from + CHUNK_SIZE)));
+                writer.update(executionContext);
+            }
+        } finally {
+            writer.close();
+        }
+        return customers.size();
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,104 @@
+package as.springbatchlearn.benchmark;
+
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerItemPreparedStatementSetter;
+import as.springbatchlearn.domain.CustomerRowMapper;
+import as.springbatchlearn.domain.ItemProcessorChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Per-row cost of the read and write mapping of a Customer, old (by name / by bean property) against new
+    (by position), and of the processor: the identity copy step1 used to make of every Customer against the no-op
+    chain it has now. Run with -prof gc to see the bytes allocated per operation; readByName is what the mapping
+    costs with a java.sql.Date parsed by the driver, readByPosition with the epoch day parsed from the String.
+
+    mvn -Pjmh compile exec:exec -Djmh.args="CustomerMapping -prof gc"
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CustomerMappingBenchmark {
+
+    private static final String[] COLUMNS = {"id", "firstName", "lastName", "birthdate"};
+    private static final String[] PARAMETERS = {"id", "firstName", "lastName", "birthdate"};
+
+    private final RowMapper<Customer> byNameRowMapper = (resultSet, i) -> new Customer(resultSet.getLong("id"),
+            resultSet.getString("firstName"),
+            resultSet.getString("lastName"),
+            resultSet.getDate("birthdate").toLocalDate());
+    private final RowMapper<Customer> byPositionRowMapper = new CustomerRowMapper();
+
+    private final BeanPropertyItemSqlParameterSourceProvider<Customer> beanPropertyProvider = new BeanPropertyItemSqlParameterSourceProvider<>();
+    private final CustomerItemPreparedStatementSetter preparedStatementSetter = new CustomerItemPreparedStatementSetter();
+
+    private final ItemProcessor<Customer, Customer> copyingProcessor = item -> new Customer(item.getId(),
+            item.getFirstName(),
+            item.getLastName(),
+            item.getBirthEpochDay());
+    private final ItemProcessor<Customer, Customer> chainedProcessor = ItemProcessorChain.unlessNoOp(ItemProcessorChain.of());
+
+    private Customer customer;
+    private ResultSet resultSet;
+    private PreparedStatement preparedStatement;
+
+    @Setup
+    public void setUp() {
+        customer = new Customer(42, "Leila", "Petty", LocalDate.parse("1972-06-11"));
+        resultSet = JdbcStubs.resultSet(COLUMNS, new Object[]{42L, "Leila", "Petty", "1972-06-11 08:43:55"});
+        preparedStatement = JdbcStubs.preparedStatement(new Object[4]);
+    }
+
+    @Benchmark
+    public Customer readByName() throws SQLException {
+        return byNameRowMapper.mapRow(resultSet, 0);
+    }
+
+    @Benchmark
+    public Customer readByPosition() throws SQLException {
+        return byPositionRowMapper.mapRow(resultSet, 0);
+    }
+
+    @Benchmark
+    public void writeByBeanProperty(Blackhole blackhole) {
+        SqlParameterSource source = beanPropertyProvider.createSqlParameterSource(customer);
+        for (String parameter : PARAMETERS) {
+            blackhole.consume(source.getValue(parameter));
+            blackhole.consume(source.getSqlType(parameter));
+        }
+    }
+
+    @Benchmark
+    public void writeByPosition() throws SQLException {
+        preparedStatementSetter.setValues(customer, preparedStatement);
+    }
+
+    @Benchmark
+    public Customer processByCopy() throws Exception {
+        return copyingProcessor.process(customer);
+    }
+
+    /*
+        What a chunk processor does for an item when the step was given no processor.
+    */
+    @Benchmark
+    public Customer processByChain() throws Exception {
+        return chainedProcessor == null ? customer : chainedProcessor.process(customer);
+    }
+}
@@ -0,0 +1,54 @@
+package as.springbatchlearn.benchmark;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+    Stands in for RabbitMQ: every named queue is an in-memory queue of AMQP Messages. Payloads go through the same
+    MessageConverter as they would on their way to the broker and back, so the encoding cost and the message sizes
+    stay in the numbers, only the network and the broker itself are left out.
+*/
+class InMemoryBroker {
+
+    private final MessageConverter messageConverter;
+    private final Map<String, BlockingQueue<Message>> queues = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytesSent = new ConcurrentHashMap<>();
+
+    InMemoryBroker(MessageConverter messageConverter) {
+        this.messageConverter = messageConverter;
+    }
+
+    void send(String queue, Object payload) {
+        Message message = messageConverter.toMessage(payload, new MessageProperties());
+        bytesSent.computeIfAbsent(queue, key -> new LongAdder()).add(message.getBody().length);
+        queue(queue).add(message);
+    }
+
+    /*
+        The total size of the message bodies sent to the queue.
+    */
+    long bytesSent(String queue) {
+        LongAdder bytes = bytesSent.get(queue);
+        return bytes == null ? 0 : bytes.sum();
+    }
+
+    /*
+        The next payload of the queue, or null if none arrived within the timeout.
+    */
+    Object receive(String queue, long timeout) throws InterruptedException {
+        Message message = queue(queue).poll(timeout, TimeUnit.MILLISECONDS);
+        return message == null ? null : messageConverter.fromMessage(message);
+    }
+
+    private BlockingQueue<Message> queue(String name) {
+        return queues.computeIfAbsent(name, key -> new LinkedBlockingQueue<>());
+    }
+}
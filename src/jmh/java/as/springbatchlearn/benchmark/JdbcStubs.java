@@ -0,0 +1,55 @@
+package as.springbatchlearn.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+    Just enough of ResultSet and PreparedStatement to drive mappers and setters without a database.
+    Like the real drivers, a lookup by column name goes through a case-insensitive name -> index map, and getDate()
+    of a String column parses its yyyy-MM-dd part.
+*/
+final class JdbcStubs {
+
+    private JdbcStubs() {
+    }
+
+    static ResultSet resultSet(String[] columns, Object[] row) {
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            indexes.put(columns[i].toLowerCase(Locale.ROOT), i);
+        }
+        return (ResultSet) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    if (args == null || args.length != 1) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    int index = args[0] instanceof Integer
+                            ? (Integer) args[0] - 1
+                            : indexes.get(((String) args[0]).toLowerCase(Locale.ROOT));
+                    Object value = row[index];
+                    if (method.getReturnType() == long.class) {
+                        return value == null ? 0L : ((Number) value).longValue();
+                    }
+                    if (method.getReturnType() == Date.class && value instanceof String) {
+                        return Date.valueOf(((String) value).substring(0, 10));
+                    }
+                    return value;
+                });
+    }
+
+    static PreparedStatement preparedStatement(Object[] parameters) {
+        return (PreparedStatement) Proxy.newProxyInstance(JdbcStubs.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if (method.getName().startsWith("set") && args != null && args.length >= 2) {
+                        parameters[(Integer) args[0] - 1] = args[1];
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
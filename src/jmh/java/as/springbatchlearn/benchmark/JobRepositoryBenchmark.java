@@ -0,0 +1,101 @@
+package as.springbatchlearn.benchmark;
+
+import as.springbatchlearn.domain.CoalescingJobRepository;
+import as.springbatchlearn.domain.CompactExecutionContextSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/*
+    What the job repository adds to every chunk commit: the context and step execution updates TaskletStep makes
+    in the chunk's transaction, with nothing else in it. default is Spring Batch's repository with the JSON
+    serializer, compact the same with CompactExecutionContextSerializer, lean what repository.lean=true sets up,
+    the compact serializer behind a CoalescingJobRepository that saves every 10th chunk. The database is an H2
+    in memory, against PostgreSQL over the network every update saved is a round trip more.
+
+    mvn -Pjmh compile exec:exec -Djmh.args="JobRepository"
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JobRepositoryBenchmark {
+
+    @Param({"default", "compact", "lean"})
+    public String repository;
+
+    private EmbeddedDatabase dataSource;
+    private JobRepository jobRepository;
+    private TransactionTemplate transactionTemplate;
+    private StepExecution stepExecution;
+    private long lastId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("/org/springframework/batch/core/schema-h2.sql")
+                .build();
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
+        factory.setDataSource(dataSource);
+        factory.setTransactionManager(transactionManager);
+        if (!"default".equals(repository)) {
+            factory.setSerializer(new CompactExecutionContextSerializer());
+        }
+        factory.afterPropertiesSet();
+        jobRepository = "lean".equals(repository) ? new CoalescingJobRepository(factory.getObject()) : factory.getObject();
+
+        JobExecution jobExecution = jobRepository.createJobExecution("job", new JobParameters());
+        stepExecution = jobExecution.createStepExecution("step1");
+        stepExecution.getExecutionContext().putString("batch.taskletType",
+                "org.springframework.batch.core.step.item.ChunkOrientedTasklet");
+        stepExecution.getExecutionContext().putString("batch.stepType",
+                "org.springframework.batch.core.step.tasklet.TaskletStep");
+        jobRepository.add(stepExecution);
+        stepExecution.setStartTime(new Date());
+        stepExecution.setStatus(BatchStatus.STARTED);
+        jobRepository.update(stepExecution);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Benchmark
+    public void chunkCommit() {
+        transactionTemplate.executeWithoutResult(status -> {
+            lastId += 1000;
+            stepExecution.getExecutionContext().putLong("KeysetPagingItemReader.lastId", lastId);
+            stepExecution.setReadCount(stepExecution.getReadCount() + 1000);
+            stepExecution.setWriteCount(stepExecution.getWriteCount() + 1000);
+            jobRepository.updateExecutionContext(stepExecution);
+            stepExecution.incrementCommitCount();
+            jobRepository.update(stepExecution);
+        });
+    }
+}
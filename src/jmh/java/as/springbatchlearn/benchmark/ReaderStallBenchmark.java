@@ -0,0 +1,174 @@
+package as.springbatchlearn.benchmark;
+
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerGenerator;
+import as.springbatchlearn.domain.CustomerGeneratorTasklet;
+import as.springbatchlearn.domain.CustomerRowMapper;
+import as.springbatchlearn.domain.KeysetPagingItemReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.database.JdbcPagingItemReader;
+import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.support.H2PagingQueryProvider;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/*
+    step1's chunk loop over the generated customer table, read by the JdbcPagingItemReader it had before and by the
+    KeysetPagingItemReader that replaced it: read a chunk, then spend work tokens of CPU per item on it, the way the
+    master processes a chunk or hands it to the broker, and read the next one. The paging reader queries the database
+    inside read() whenever a page runs out, the keyset reader has had its next pages fetched in the background while
+    the chunk was being worked on.
+
+    Besides the time per pass, the share of it the chunk loop spent waiting in read() is printed after every
+    iteration; with work 0 there is nothing to hide a query behind and both readers wait for every page.
+
+    mvn -Pjmh compile exec:exec -Djmh.args="ReaderStall"
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReaderStallBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param({"paging", "keyset"})
+    public String reader;
+
+    @Param({"0", "200"})
+    public int work;
+
+    @Param({"500000"})
+    public int rows;
+
+    @Param({"1000"})
+    public int pageSize;
+
+    @Param({"2"})
+    public int prefetchPages;
+
+    private EmbeddedDatabase dataSource;
+    private long stallNanos;
+    private long passNanos;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        new JdbcTemplate(dataSource).execute("CREATE TABLE customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate varchar(255))");
+
+        CustomerGenerator generator = new CustomerGenerator();
+        generator.setRows(rows);
+        generator.afterPropertiesSet();
+
+        CustomerGeneratorTasklet tasklet = new CustomerGeneratorTasklet();
+        tasklet.setDataSource(dataSource);
+        tasklet.setGenerator(generator);
+        tasklet.setCopy(false);
+        tasklet.afterPropertiesSet();
+
+        StepExecution stepExecution = new StepExecution("load", new JobExecution(1L));
+        stepExecution.setExecutionContext(CustomerGeneratorTasklet.partition(rows, 1).get("partition0"));
+        StepContribution contribution = stepExecution.createStepContribution();
+        while (tasklet.execute(contribution, new ChunkContext(new StepContext(stepExecution))) == RepeatStatus.CONTINUABLE) {
+            contribution = stepExecution.createStepContribution();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetStall() {
+        stallNanos = 0;
+        passNanos = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printStall() {
+        System.out.printf("%n%s, work %d: %.1f%% of the pass waiting in read()%n", reader, work,
+                100.0 * stallNanos / Math.max(1, passNanos));
+    }
+
+    @Benchmark
+    public long readChunks() throws Exception {
+        ItemStreamReader<Customer> itemReader = "paging".equals(reader) ? pagingReader() : keysetReader();
+        long start = System.nanoTime();
+        long count = 0;
+        itemReader.open(new ExecutionContext());
+        try {
+            boolean exhausted = false;
+            while (!exhausted) {
+                long readStart = System.nanoTime();
+                int read = 0;
+                while (read < CHUNK_SIZE && itemReader.read() != null) {
+                    read++;
+                }
+                stallNanos += System.nanoTime() - readStart;
+                exhausted = read < CHUNK_SIZE;
+                Blackhole.consumeCPU((long) work * read);
+                count += read;
+            }
+        } finally {
+            itemReader.close();
+        }
+        passNanos += System.nanoTime() - start;
+        return count;
+    }
+
+    private JdbcPagingItemReader<Customer> pagingReader() throws Exception {
+        H2PagingQueryProvider queryProvider = new H2PagingQueryProvider();
+        queryProvider.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        queryProvider.setFromClause("from customer");
+        queryProvider.setSortKeys(Collections.singletonMap("id", Order.ASCENDING));
+
+        JdbcPagingItemReader<Customer> pagingReader = new JdbcPagingItemReader<>();
+        pagingReader.setDataSource(dataSource);
+        pagingReader.setQueryProvider(queryProvider);
+        pagingReader.setRowMapper(new CustomerRowMapper());
+        pagingReader.setPageSize(pageSize);
+        pagingReader.setFetchSize(pageSize);
+        pagingReader.afterPropertiesSet();
+        return pagingReader;
+    }
+
+    private KeysetPagingItemReader<Customer> keysetReader() {
+        KeysetPagingItemReader<Customer> keysetReader = new KeysetPagingItemReader<>();
+        keysetReader.setDataSource(dataSource);
+        keysetReader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        keysetReader.setFromClause("customer");
+        keysetReader.setSortKey("id");
+        keysetReader.setRowMapper(new CustomerRowMapper());
+        keysetReader.setKeyExtractor(Customer::getId);
+        keysetReader.setPageSize(pageSize);
+        keysetReader.setPrefetchPages(prefetchPages);
+        keysetReader.afterPropertiesSet();
+        return keysetReader;
+    }
+}
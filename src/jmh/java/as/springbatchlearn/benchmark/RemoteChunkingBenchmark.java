@@ -0,0 +1,492 @@
+package as.springbatchlearn.benchmark;
+
+import as.springbatchlearn.domain.ChunkPipelineMetrics;
+import as.springbatchlearn.domain.ChunkWriteMode;
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerChunkMessageConverter;
+import as.springbatchlearn.domain.CustomerItemPreparedStatementSetter;
+import as.springbatchlearn.domain.CustomerRowMapper;
+import as.springbatchlearn.domain.ItemReturningChunkHandler;
+import as.springbatchlearn.domain.KeysetPagingItemReader;
+import as.springbatchlearn.domain.WindowedChunkMessageChannelItemWriter;
+import com.sun.management.OperatingSystemMXBean;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.core.step.tasklet.TaskletStep;
+import org.springframework.batch.integration.chunk.ChunkProcessorChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.integration.chunk.RemoteChunkHandlerFactoryBean;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.endpoint.PollingConsumer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.PeriodicTrigger;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+    End-to-end remote chunking in one JVM: the master step1 (keyset reader, windowed chunk writer, binary chunk
+    converter) and K slaves (SimpleChunkProcessor + ChunkProcessorChunkHandler, each on its own thread with its own
+    writer) exchange their chunks over an in-memory stand-in for the chunking.requests and chunking.replies queues,
+    against an embedded H2 database holding a synthetic customer table.
+
+    For every number of slaves it prints items/s, the p50/p99 chunk round trip as seen by the master and the scaling
+    efficiency, the throughput per slave relative to the first row:
+
+    mvn -Pjmh compile exec:exec -Djmh.main=as.springbatchlearn.benchmark.RemoteChunkingBenchmark \
+        -Djmh.args="rows=200000 slaves=1,2,4,8 process-micros=20"
+
+    Arguments (all optional): rows, slaves, chunk-size, max-in-flight, compression-threshold, process-micros
+    (busy work per item on the slave, to stand in for an expensive processor), warmups and write-mode.
+
+    Replies reach the chunk writer through a DirectChannel, as in IntegrationConfiguration. With reply-poll=10 they
+    go through a QueueChannel and a PollingConsumer polling every 10 ms instead, the way the master used to receive
+    them, to compare round trips. Either way the CPU the JVM burns while the reply path sits idle is measured over
+    idle-seconds at the end.
+
+    With write-mode=slave,master every slave count is run once with the slaves writing and replying with their counts
+    only, and once with the slaves sending the processed items back for the master to write (ChunkWriteMode). The
+    reply bytes column is what went over chunking.replies, the master CPU column the CPU time of the step thread and
+    the reply thread together.
+*/
+public class RemoteChunkingBenchmark {
+
+    private static final String REQUESTS = "chunking.requests";
+    private static final String REPLIES = "chunking.replies";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final JobLauncher jobLauncher;
+
+    private int rows = 100000;
+    private int[] slaves = {1, 2, 4};
+    private int chunkSize = 1000;
+    private int maxInFlight = 6;
+    private int compressionThreshold = 4096;
+    private long processMicros;
+    private int warmups = 1;
+    private long replyPoll;
+    private int idleSeconds = 2;
+    private ChunkWriteMode[] writeModes = {ChunkWriteMode.SLAVE};
+
+    private final ConfigurableListableBeanFactory beanFactory;
+    private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+
+    private RemoteChunkingBenchmark(AnnotationConfigApplicationContext context) {
+        this.dataSource = context.getBean(DataSource.class);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jobBuilderFactory = context.getBean(JobBuilderFactory.class);
+        this.stepBuilderFactory = context.getBean(StepBuilderFactory.class);
+        this.jobLauncher = context.getBean(JobLauncher.class);
+        this.beanFactory = context.getBeanFactory();
+        this.taskScheduler.setThreadNamePrefix("poller-");
+        this.taskScheduler.initialize();
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(BenchmarkConfiguration.class)) {
+            RemoteChunkingBenchmark benchmark = new RemoteChunkingBenchmark(context);
+            benchmark.configure(args);
+            benchmark.run();
+        }
+    }
+
+    private void configure(String[] args) {
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "rows":
+                    rows = Integer.parseInt(value);
+                    break;
+                case "slaves":
+                    slaves = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "chunk-size":
+                    chunkSize = Integer.parseInt(value);
+                    break;
+                case "max-in-flight":
+                    maxInFlight = Integer.parseInt(value);
+                    break;
+                case "compression-threshold":
+                    compressionThreshold = Integer.parseInt(value);
+                    break;
+                case "process-micros":
+                    processMicros = Long.parseLong(value);
+                    break;
+                case "warmups":
+                    warmups = Integer.parseInt(value);
+                    break;
+                case "reply-poll":
+                    replyPoll = Long.parseLong(value);
+                    break;
+                case "idle-seconds":
+                    idleSeconds = Integer.parseInt(value);
+                    break;
+                case "write-mode":
+                    writeModes = Arrays.stream(value.split(","))
+                            .map(mode -> ChunkWriteMode.valueOf(mode.trim().toUpperCase()))
+                            .toArray(ChunkWriteMode[]::new);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        loadCustomers();
+
+        for (ChunkWriteMode writeMode : writeModes) {
+            for (int i = 0; i < warmups; i++) {
+                runWith(slaves[0], writeMode);
+            }
+        }
+
+        System.out.printf("%n%d rows, chunks of %d, %d in flight, %dus processing per item, replies %s%n", rows, chunkSize,
+                maxInFlight, processMicros, replyPoll > 0 ? "polled every " + replyPoll + "ms" : "pushed");
+        System.out.printf("%7s %8s %12s %12s %12s %12s %12s %13s %11s%n", "writes", "slaves", "items/s", "rt p50 ms",
+                "rt p99 ms", "wire bytes", "reply bytes", "master cpu ms", "efficiency");
+        for (ChunkWriteMode writeMode : writeModes) {
+            double baselinePerSlave = 0;
+            for (int count : slaves) {
+                Result result = runWith(count, writeMode);
+                double perSlave = result.itemsPerSecond / count;
+                if (baselinePerSlave == 0) {
+                    baselinePerSlave = perSlave;
+                }
+                System.out.printf("%7s %8d %12.0f %12.2f %12.2f %12.0f %12d %13.0f %10.0f%%%n",
+                        writeMode.name().toLowerCase(), count, result.itemsPerSecond, result.p50, result.p99,
+                        result.wireBytes, result.replyBytes, result.masterCpu, 100 * perSlave / baselinePerSlave);
+            }
+        }
+
+        if (idleSeconds > 0) {
+            System.out.printf("idle reply path: %.1f ms CPU per second%n", measureIdle());
+        }
+        taskScheduler.shutdown();
+    }
+
+    /*
+        Process CPU time per second of wall time with the reply path up and no replies coming.
+    */
+    private double measureIdle() throws Exception {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        InMemoryBroker broker = new InMemoryBroker(new CustomerChunkMessageConverter());
+        ReplyPath replyPath = new ReplyPath(broker, message -> {
+        });
+        try {
+            Thread.sleep(1000);
+            long cpuStart = os.getProcessCpuTime();
+            long start = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(idleSeconds));
+            return (os.getProcessCpuTime() - cpuStart) / 1e6 / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            replyPath.stop();
+        }
+    }
+
+    private void loadCustomers() {
+        List<Object[]> batch = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = 0;
+        for (int i = 0; i < rows; i++) {
+            id += 1 + random.nextInt(3);
+            batch.add(new Object[]{id, "First" + random.nextInt(100000), "Last" + random.nextInt(100000),
+                    Date.valueOf(LocalDate.ofEpochDay(random.nextInt(-20000, 15000)))});
+            if (batch.size() == 10000) {
+                jdbcTemplate.batchUpdate("INSERT INTO customer VALUES (?, ?, ?, ?)", batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO customer VALUES (?, ?, ?, ?)", batch);
+        }
+    }
+
+    private Result runWith(int slaveCount, ChunkWriteMode writeMode) throws Exception {
+        jdbcTemplate.execute("TRUNCATE TABLE new_customer");
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ChunkPipelineMetrics metrics = new ChunkPipelineMetrics(registry);
+
+        CustomerChunkMessageConverter converter = new CustomerChunkMessageConverter();
+        converter.setCompressionThreshold(compressionThreshold);
+        converter.setMetrics(metrics);
+        InMemoryBroker broker = new InMemoryBroker(converter);
+
+        DirectChannel outboundRequests = new DirectChannel();
+        outboundRequests.subscribe(message -> broker.send(REQUESTS, message.getPayload()));
+
+        WindowedChunkMessageChannelItemWriter<Customer> chunkWriter = new WindowedChunkMessageChannelItemWriter<>();
+        chunkWriter.setMessagingOperations(new MessagingTemplate(outboundRequests));
+        chunkWriter.setMaxInFlight(maxInFlight);
+        chunkWriter.setReplyTimeout(60000);
+        chunkWriter.setMetrics(metrics);
+        if (writeMode == ChunkWriteMode.MASTER) {
+            chunkWriter.setItemWriter(writer());
+        }
+
+        TaskletStep step = stepBuilderFactory.get("step1")
+                .<Customer, Customer>chunk(chunkSize)
+                .reader(reader())
+                .processor(processor())
+                .writer(items -> {
+                })
+                .build();
+        RemoteChunkHandlerFactoryBean<Customer> factoryBean = new RemoteChunkHandlerFactoryBean<>();
+        factoryBean.setChunkWriter(chunkWriter);
+        factoryBean.setStep(step);
+        factoryBean.getObject();
+        step.registerStream(chunkWriter);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < slaveCount; i++) {
+            threads.add(start("slave-" + i, slave(broker, writeMode)));
+        }
+        ReplyPath replyPath = new ReplyPath(broker, chunkWriter);
+
+        Job job = jobBuilderFactory.get("remoteChunkingBenchmark").start(step).build();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long start = System.nanoTime();
+        long stepCpuStart = threadMXBean.getCurrentThreadCpuTime();
+        long masterCpu;
+        JobExecution execution;
+        try {
+            execution = jobLauncher.run(job, new JobParametersBuilder()
+                    .addLong("run", System.nanoTime())
+                    .toJobParameters());
+        } finally {
+            masterCpu = threadMXBean.getCurrentThreadCpuTime() - stepCpuStart + replyPath.cpuTime();
+            replyPath.stop();
+            threads.forEach(Thread::interrupt);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (execution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException("Benchmark run failed: " + execution.getAllFailureExceptions());
+        }
+        Integer written = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM new_customer", Integer.class);
+        if (written == null || written != rows) {
+            throw new IllegalStateException("Expected " + rows + " rows written, found " + written);
+        }
+
+        HistogramSnapshot roundTrips = metrics.reply().takeSnapshot();
+        Result result = new Result();
+        result.itemsPerSecond = rows / (elapsed / 1e9);
+        for (ValueAtPercentile percentile : roundTrips.percentileValues()) {
+            if (percentile.percentile() == 0.5) {
+                result.p50 = percentile.value(TimeUnit.MILLISECONDS);
+            } else if (percentile.percentile() == 0.99) {
+                result.p99 = percentile.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        result.wireBytes = metrics.bytesSent().totalAmount();
+        result.replyBytes = broker.bytesSent(REPLIES);
+        result.masterCpu = masterCpu / 1e6;
+        return result;
+    }
+
+    private KeysetPagingItemReader<Customer> reader() {
+        KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
+
+        reader.setDataSource(dataSource);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("customer");
+        reader.setSortKey("id");
+        reader.setRowMapper(new CustomerRowMapper());
+        reader.setKeyExtractor(Customer::getId);
+        reader.setPageSize(chunkSize);
+        reader.afterPropertiesSet();
+
+        return reader;
+    }
+
+    private ItemProcessor<Customer, Customer> processor() {
+        return item -> {
+            if (processMicros > 0) {
+                long until = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(processMicros);
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+            }
+            return new Customer(item.getId(), item.getFirstName(), item.getLastName(), item.getBirthEpochDay());
+        };
+    }
+
+    private JdbcBatchItemWriter<Customer> writer() {
+        JdbcBatchItemWriter<Customer> writer = new JdbcBatchItemWriter<>();
+        writer.setDataSource(dataSource);
+        writer.setSql(String.format(CustomerItemPreparedStatementSetter.INSERT_SQL, "new_customer"));
+        writer.setItemPreparedStatementSetter(new CustomerItemPreparedStatementSetter());
+        writer.afterPropertiesSet();
+
+        return writer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Loop slave(InMemoryBroker broker, ChunkWriteMode writeMode) throws Exception {
+        ItemReturningChunkHandler<Customer> returningHandler = new ItemReturningChunkHandler<>();
+        SimpleChunkProcessor<Customer, Customer> chunkProcessor = new SimpleChunkProcessor<>(processor(),
+                writeMode == ChunkWriteMode.MASTER ? returningHandler.getItemWriter() : writer());
+        chunkProcessor.afterPropertiesSet();
+
+        ChunkProcessorChunkHandler<Customer> processorChunkHandler = new ChunkProcessorChunkHandler<>();
+        processorChunkHandler.setChunkProcessor(chunkProcessor);
+        processorChunkHandler.afterPropertiesSet();
+
+        returningHandler.setDelegate(processorChunkHandler);
+        ChunkHandler<Customer> chunkHandler = writeMode == ChunkWriteMode.MASTER ? returningHandler
+                : processorChunkHandler;
+
+        return () -> {
+            Object request = broker.receive(REQUESTS, 100);
+            if (request != null) {
+                ChunkResponse response = chunkHandler.handleChunk((ChunkRequest<Customer>) request);
+                broker.send(REPLIES, response);
+            }
+        };
+    }
+
+    private static Thread start(String name, Loop loop) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    loop.run();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /*
+        What the reply container and inboundReplies are on the master: a thread taking replies off the queue and
+        sending them to the channel the chunk writer consumes.
+    */
+    private class ReplyPath {
+
+        private final Thread receiver;
+        private final PollingConsumer pollingConsumer;
+
+        ReplyPath(InMemoryBroker broker, MessageHandler handler) {
+            MessageChannel inboundReplies;
+            if (replyPoll > 0) {
+                QueueChannel queueChannel = new QueueChannel();
+                pollingConsumer = new PollingConsumer(queueChannel, handler);
+                pollingConsumer.setTrigger(new PeriodicTrigger(replyPoll));
+                pollingConsumer.setMaxMessagesPerPoll(-1);
+                pollingConsumer.setTaskScheduler(taskScheduler);
+                pollingConsumer.setBeanFactory(beanFactory);
+                pollingConsumer.afterPropertiesSet();
+                pollingConsumer.start();
+                inboundReplies = queueChannel;
+            } else {
+                DirectChannel directChannel = new DirectChannel();
+                directChannel.subscribe(handler);
+                pollingConsumer = null;
+                inboundReplies = directChannel;
+            }
+
+            receiver = start("replies", () -> {
+                Object reply = broker.receive(REPLIES, 100);
+                if (reply != null) {
+                    inboundReplies.send(new GenericMessage<>(reply));
+                }
+            });
+        }
+
+        /*
+            CPU time of the thread taking replies off the queue so far, the decoding of the replies included.
+        */
+        long cpuTime() {
+            long cpuTime = ManagementFactory.getThreadMXBean().getThreadCpuTime(receiver.getId());
+            return Math.max(cpuTime, 0);
+        }
+
+        void stop() throws InterruptedException {
+            receiver.interrupt();
+            receiver.join();
+            if (pollingConsumer != null) {
+                pollingConsumer.stop();
+            }
+        }
+    }
+
+    private interface Loop {
+        void run() throws Exception;
+    }
+
+    private static class Result {
+        double itemsPerSecond;
+        double p50;
+        double p99;
+        double wireBytes;
+        long replyBytes;
+        double masterCpu;
+    }
+
+    @Configuration
+    @EnableBatchProcessing
+    static class BenchmarkConfiguration {
+
+        @Bean
+        public DataSource dataSource() {
+            DataSource dataSource = new EmbeddedDatabaseBuilder()
+                    .setType(EmbeddedDatabaseType.H2)
+                    .generateUniqueName(true)
+                    .addScript("/org/springframework/batch/core/schema-h2.sql")
+                    .build();
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("CREATE TABLE customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate date)");
+            jdbcTemplate.execute("CREATE TABLE new_customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate date)");
+
+            return dataSource;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package as.springbatchlearn.configuration;
+
+/*
+    Customers to and from files, laid out as file.format says (see CustomerFileFormat):
+
+    java -jar -Dspring.profiles.active=file-export -Dfile.path=customers.csv target/spring-batch-learn-0.0.1-SNAPSHOT.jar
+    java -jar -Dspring.profiles.active=file-import -Dfile.path=customers.csv target/spring-batch-learn-0.0.1-SNAPSHOT.jar
+
+    The export reads NEW_CUSTOMER in id order with the keyset reader and writes the file through a memory mapping of
+    it. The import is the file's step1: the file is cut into byte ranges (FileRangePartitioner) that file.threads
+    workers take from a WorkStealingPartitionHandler, as local-parallel does with key ranges, and every worker reads
+    its range through a mapping of its own and runs it through the processor and the writer of step1, into
+    NEW_CUSTOMER. Neither reads or writes a file line by line through a stream, or splits a line into Strings.
+
+    A failed export or import is restarted by running the same command again, the export goes on at the byte it
+    had written up to, the import at the byte every range had got to.
+*/
+
+import as.springbatchlearn.domain.ChunkAwareProcessorListener;
+import as.springbatchlearn.domain.ChunkPipelineMetricsListener;
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerFileFormat;
+import as.springbatchlearn.domain.CustomerFileItemReader;
+import as.springbatchlearn.domain.CustomerFileItemWriter;
+import as.springbatchlearn.domain.CustomerRowMapper;
+import as.springbatchlearn.domain.FileRangePartitioner;
+import as.springbatchlearn.domain.ItemProcessorChain;
+import as.springbatchlearn.domain.KeysetPagingItemReader;
+import as.springbatchlearn.domain.WorkStealingPartitionHandler;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+
+@Configuration
+@Profile({"file-export", "file-import"})
+public class FileConfiguration {
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChunkPipelineMetricsListener metricsListener;
+
+    @Value("${file.path:customers.csv}")
+    private String path;
+
+    @Value("${file.format:delimited}")
+    private String format;
+
+    @Value("${file.delimiter:,}")
+    private char delimiter;
+
+    @Value("${file.widths:10,64,64,10}")
+    private int[] widths;
+
+    @Value("${file.mapped-window-size:67108864}")
+    private int mappedWindowSize;
+
+    @Value("${file.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${file.threads:4}")
+    private int threads;
+
+    @Value("${file.partitions-per-thread:8}")
+    private int partitionsPerThread;
+
+    @Value("${file.min-split-size:1048576}")
+    private long minSplitSize;
+
+    @Value("${reader.page-size:1000}")
+    private int pageSize;
+
+    @Value("${reader.prefetch-pages:2}")
+    private int prefetchPages;
+
+    @Bean
+    public CustomerFileFormat customerFileFormat() {
+        if ("fixed-width".equals(format)) {
+            return CustomerFileFormat.fixedWidth(widths[0], widths[1], widths[2], widths[3]);
+        }
+        return CustomerFileFormat.delimited(delimiter);
+    }
+
+    @Bean
+    @Profile("file-export")
+    public KeysetPagingItemReader<Customer> newCustomerItemReader() {
+        KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
+
+        reader.setDataSource(this.dataSource);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("NEW_CUSTOMER");
+        reader.setSortKey("id");
+        reader.setRowMapper(new CustomerRowMapper());
+        reader.setKeyExtractor(Customer::getId);
+        reader.setPageSize(pageSize);
+        reader.setPrefetchPages(prefetchPages);
+
+        return reader;
+    }
+
+    @Bean
+    @Profile("file-export")
+    public CustomerFileItemWriter customerFileItemWriter() {
+        CustomerFileItemWriter writer = new CustomerFileItemWriter();
+
+        writer.setResource(new FileSystemResource(path));
+        writer.setFormat(customerFileFormat());
+        writer.afterPropertiesSet();
+
+        return writer;
+    }
+
+    @Bean
+    @Profile("file-export")
+    public Step exportCustomers() {
+        SimpleStepBuilder<Customer, Customer> builder = stepBuilderFactory.get("exportCustomers")
+                .<Customer, Customer>chunk(chunkSize)
+                .reader(newCustomerItemReader())
+                .writer(customerFileItemWriter());
+        builder.listener((StepExecutionListener) metricsListener);
+        return builder.build();
+    }
+
+    /*
+        Like generateJob, every export is a new instance of the job, while one that failed is restarted.
+    */
+    @Bean
+    @Profile("file-export")
+    public Job exportJob() {
+        return jobBuilderFactory.get("exportJob")
+                .incrementer(new RunIdIncrementer())
+                .start(exportCustomers())
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    @Profile("file-import")
+    public CustomerFileItemReader rangeFileItemReader() {
+        CustomerFileItemReader reader = new CustomerFileItemReader();
+
+        reader.setResource(new FileSystemResource(path));
+        reader.setFormat(customerFileFormat());
+        reader.setMappedWindowSize(mappedWindowSize);
+        reader.setPartitioned(true);
+        reader.afterPropertiesSet();
+
+        return reader;
+    }
+
+    @Bean
+    @Profile("file-import")
+    public FileRangePartitioner fileRangePartitioner() {
+        FileRangePartitioner partitioner = new FileRangePartitioner();
+
+        partitioner.setResource(new FileSystemResource(path));
+        partitioner.setMinRangeSize(minSplitSize);
+
+        return partitioner;
+    }
+
+    @Bean
+    @Profile("file-import")
+    public ThreadPoolTaskExecutor importTaskExecutor() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+
+        taskExecutor.setCorePoolSize(threads);
+        taskExecutor.setMaxPoolSize(threads);
+        taskExecutor.setThreadNamePrefix("import-worker-");
+
+        return taskExecutor;
+    }
+
+    @Bean
+    @Profile("file-import")
+    public Step importCustomersWorker(ItemProcessor<Customer, Customer> itemProcessor,
+                                      @Qualifier("customerItemWriter") ItemWriter<Customer> itemWriter) {
+        SimpleStepBuilder<Customer, Customer> builder = stepBuilderFactory.get("importCustomersWorker")
+                .<Customer, Customer>chunk(chunkSize)
+                .reader(rangeFileItemReader())
+                .processor(ItemProcessorChain.unlessNoOp(itemProcessor))
+                .writer(itemWriter)
+                .listener((ItemReadListener<Object>) metricsListener)
+                .listener((ItemProcessListener<Object, Object>) metricsListener)
+                .listener((ItemWriteListener<Object>) metricsListener);
+        builder.listener((ChunkListener) metricsListener);
+        return ChunkAwareProcessorListener.register(builder, itemProcessor).build();
+    }
+
+    @Bean
+    @Profile("file-import")
+    public WorkStealingPartitionHandler importPartitionHandler(@Qualifier("importCustomersWorker") Step importCustomersWorker) {
+        WorkStealingPartitionHandler partitionHandler = new WorkStealingPartitionHandler();
+
+        partitionHandler.setStep(importCustomersWorker);
+        partitionHandler.setTaskExecutor(importTaskExecutor());
+        partitionHandler.setJobRepository(jobRepository);
+        partitionHandler.setWorkers(threads);
+        partitionHandler.setPartitionsPerWorker(partitionsPerThread);
+        partitionHandler.setMinSplitSize(minSplitSize);
+
+        return partitionHandler;
+    }
+
+    @Bean
+    @Profile("file-import")
+    public Step importCustomers(@Qualifier("importCustomersWorker") Step importCustomersWorker,
+                                WorkStealingPartitionHandler importPartitionHandler) {
+        return stepBuilderFactory.get("importCustomers")
+                .partitioner(importCustomersWorker.getName(), fileRangePartitioner())
+                .partitionHandler(importPartitionHandler)
+                .listener((StepExecutionListener) metricsListener)
+                .build();
+    }
+
+    @Bean
+    @Profile("file-import")
+    public Job importJob(@Qualifier("importCustomers") Step importCustomers) {
+        return jobBuilderFactory.get("importJob")
+                .incrementer(new RunIdIncrementer())
+                .start(importCustomers)
+                .build();
+    }
+}
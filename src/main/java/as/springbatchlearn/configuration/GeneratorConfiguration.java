@@ -0,0 +1,158 @@
+package as.springbatchlearn.configuration;
+
+/*
+    The seed data is a thousand customers, too few to see how step1 behaves on a real table. With the generate profile
+    the application fills the customer table with generator.rows synthetic customers instead of running step1:
+
+    java -jar -Dspring.profiles.active=generate -Dgenerator.rows=50000000 target/spring-batch-learn-0.0.1-SNAPSHOT.jar
+
+    The rows are cut into generator.threads ranges that are loaded at once, each over a connection of its own and
+    each in transactions of generator.rows-per-transaction rows, with binary COPY (generator.mode=copy) or batched
+    INSERTs (generator.mode=batch). The same generator.seed gives the same customers, whatever the number of threads;
+    generator.id-gap and generator.skew shape the ids and the names (see CustomerGenerator). A load that failed is
+    restarted by running the same command again, it goes on where every range stopped.
+
+    The ids start at generator.first-id, past those of the seed data. With copy the customer_seq sequence is moved past
+    the last id when the load is done, so the table's default ids don't run into the generated ones.
+*/
+
+import as.springbatchlearn.domain.CustomerGenerator;
+import as.springbatchlearn.domain.CustomerGeneratorTasklet;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.SimpleJobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+
+@Configuration
+@Profile("generate")
+public class GeneratorConfiguration {
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Value("${generator.rows:10000000}")
+    private long rows;
+
+    @Value("${generator.seed:42}")
+    private long seed;
+
+    @Value("${generator.first-id:1001}")
+    private long firstId;
+
+    @Value("${generator.id-gap:1}")
+    private int idGap;
+
+    @Value("${generator.skew:0}")
+    private double skew;
+
+    @Value("${generator.threads:4}")
+    private int threads;
+
+    @Value("${generator.rows-per-transaction:100000}")
+    private int rowsPerTransaction;
+
+    @Value("${generator.mode:copy}")
+    private String mode;
+
+    @Bean
+    public CustomerGenerator customerGenerator() {
+        CustomerGenerator generator = new CustomerGenerator();
+
+        generator.setSeed(seed);
+        generator.setRows(rows);
+        generator.setFirstId(firstId);
+        generator.setIdGap(idGap);
+        generator.setSkew(skew);
+        generator.afterPropertiesSet();
+
+        return generator;
+    }
+
+    @Bean
+    public CustomerGeneratorTasklet customerGeneratorTasklet() {
+        CustomerGeneratorTasklet tasklet = new CustomerGeneratorTasklet();
+
+        tasklet.setDataSource(dataSource);
+        tasklet.setGenerator(customerGenerator());
+        tasklet.setRowsPerTransaction(rowsPerTransaction);
+        tasklet.setCopy("copy".equals(mode));
+        tasklet.afterPropertiesSet();
+
+        return tasklet;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor generatorTaskExecutor() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+
+        taskExecutor.setCorePoolSize(threads);
+        taskExecutor.setMaxPoolSize(threads);
+        taskExecutor.setThreadNamePrefix("generator-");
+
+        return taskExecutor;
+    }
+
+    @Bean
+    public Step generateCustomersWorker() {
+        return stepBuilderFactory.get("generateCustomersWorker")
+                .tasklet(customerGeneratorTasklet())
+                .build();
+    }
+
+    @Bean
+    public Step generateCustomers() {
+        Partitioner partitioner = gridSize -> CustomerGeneratorTasklet.partition(rows, gridSize);
+
+        return stepBuilderFactory.get("generateCustomers")
+                .partitioner(generateCustomersWorker().getName(), partitioner)
+                .step(generateCustomersWorker())
+                .gridSize(threads)
+                .taskExecutor(generatorTaskExecutor())
+                .build();
+    }
+
+    @Bean
+    public Step resetCustomerSequence() {
+        return stepBuilderFactory.get("resetCustomerSequence")
+                .tasklet((contribution, chunkContext) -> {
+                    new JdbcTemplate(dataSource).queryForObject(
+                            "SELECT setval('customer_seq', (SELECT max(id) FROM customer))", Long.class);
+                    return RepeatStatus.FINISHED;
+                })
+                .build();
+    }
+
+    /*
+        The generator.* settings are properties, not job parameters, so the run.id incrementer is what makes the next
+        load a new instance of the job; a load that failed is restarted instead.
+    */
+    @Bean
+    public Job generateJob() {
+        SimpleJobBuilder builder = jobBuilderFactory.get("generateJob")
+                .incrementer(new RunIdIncrementer())
+                .start(generateCustomers());
+        if ("copy".equals(mode)) {
+            builder.next(resetCustomerSequence());
+        }
+        return builder.build();
+    }
+}
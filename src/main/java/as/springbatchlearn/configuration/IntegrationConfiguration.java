@@ -14,37 +14,113 @@ package as.springbatchlearn.configuration;
     and that also how to manage the responses.
 */
 
+import as.springbatchlearn.domain.ChunkPipelineMetrics;
+import as.springbatchlearn.domain.ChunkPipelineMetricsListener;
+import as.springbatchlearn.domain.ChunkResponseBatcher;
+import as.springbatchlearn.domain.ChunkWriteMode;
 import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerBlock;
+import as.springbatchlearn.domain.CustomerChunkMessageConverter;
+import as.springbatchlearn.domain.ItemReturningChunkHandler;
+import as.springbatchlearn.domain.LoadAwareChunkRouter;
+import as.springbatchlearn.domain.MeteredChunkHandler;
+import as.springbatchlearn.domain.ParallelChunkProcessor;
+import as.springbatchlearn.domain.SlaveHeartbeatPublisher;
+import as.springbatchlearn.domain.SlaveStartupTimer;
+import as.springbatchlearn.domain.WindowedChunkMessageChannelItemWriter;
 import org.springframework.amqp.core.AmqpTemplate;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
-import org.springframework.batch.core.step.item.SimpleChunkProcessor;
 import org.springframework.batch.core.step.tasklet.TaskletStep;
 import org.springframework.batch.integration.chunk.ChunkHandler;
-import org.springframework.batch.integration.chunk.ChunkMessageChannelItemWriter;
 import org.springframework.batch.integration.chunk.ChunkProcessorChunkHandler;
 import org.springframework.batch.integration.chunk.RemoteChunkHandlerFactoryBean;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Profile;
 import org.springframework.integration.amqp.inbound.AmqpInboundChannelAdapter;
 import org.springframework.integration.amqp.outbound.AmqpOutboundEndpoint;
 import org.springframework.integration.annotation.ServiceActivator;
 import org.springframework.integration.channel.DirectChannel;
-import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.core.MessagingTemplate;
-import org.springframework.integration.scheduling.PollerMetadata;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.scheduling.support.PeriodicTrigger;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.lang.management.ManagementFactory;
 
 @Configuration
 public class IntegrationConfiguration {
 
     public static final String CHUNKING_REQUESTS = "chunking.requests";
     public static final String CHUNKING_REPLIES = "chunking.replies";
+    public static final String CHUNKING_CONTROL = "chunking.control";
+
+    @Autowired
+    private ChunkPipelineMetrics metrics;
+
+    @Value("${chunking.compression-threshold:4096}")
+    private int compressionThreshold;
+
+    @Value("${chunking.max-in-flight:6}")
+    private int maxInFlight;
+
+    @Value("${chunking.reply-timeout:600000}")
+    private long replyTimeout;
+
+    @Value("${chunking.write-mode:slave}")
+    private ChunkWriteMode writeMode;
+
+    @Value("${chunking.load-aware-routing:false}")
+    private boolean loadAwareRouting;
+
+    @Value("${chunking.slave-timeout:5000}")
+    private long slaveTimeout;
+
+    @Value("${writer.skip-written:true}")
+    private boolean skipWritten;
+
+    @Value("${incremental.enabled:false}")
+    private boolean incremental;
+
+    @Value("${streaming.enabled:false}")
+    private boolean streaming;
+
+    @Value("${slave.consumers:4}")
+    private int slaveConsumers;
+
+    @Value("${slave.prefetch:1}")
+    private int slavePrefetch;
+
+    @Value("${slave.process-threads:0}")
+    private int slaveProcessThreads;
+
+    @Value("${slave.reply-batch-size:16}")
+    private int replyBatchSize;
+
+    @Value("${slave.reply-linger:5}")
+    private long replyLinger;
+
+    @Value("${slave.id:}")
+    private String slaveId;
+
+    @Value("${slave.heartbeat-interval:1000}")
+    private long heartbeatInterval;
+
+    @Value("${slave.exit-when-ready:false}")
+    private boolean exitWhenReady;
 
     /*
         We do this with the RemoteChunkHandlerFactoryBean.
@@ -55,13 +131,17 @@ public class IntegrationConfiguration {
         what the ItemProcessor and ItemWriter are for the appropriate need. We then return the object.
     */
     @Bean
-    public ChunkHandler chunkHandler(TaskletStep step1) throws Exception {
+    public ChunkHandler chunkHandler(TaskletStep step1, WindowedChunkMessageChannelItemWriter<Customer> chunkWriter) throws Exception {
         RemoteChunkHandlerFactoryBean factoryBean = new RemoteChunkHandlerFactoryBean();
 
-        factoryBean.setChunkWriter(chunkWriter());
+        factoryBean.setChunkWriter(chunkWriter);
         factoryBean.setStep(step1);
 
-        return factoryBean.getObject();
+        ChunkHandler chunkHandler = factoryBean.getObject();
+        // The factory bean registers the writer as a step listener only, we also want its state saved for restart
+        step1.registerStream(chunkWriter);
+
+        return chunkHandler;
     }
 
     /*
@@ -69,33 +149,53 @@ public class IntegrationConfiguration {
         the message from the master to the slave. We set the messageTemplate, so we use the Spring Integration
         Messaging Template for the mechanism of doing the message sending. So, we're going to send that.
         Within the messageTemplate is also when we're configure the channel that were sending the messages out to.
-        We listen for the responses back on this reply channel (inboundReplies). We'll be sending them out
-        on a channel called outboundRequests. We set max timeouts (it's the maximum number of timeouts we're going to
-        tolerate. And then we return our writer.
+        We'll be sending them out on a channel called outboundRequests.
+        Unlike the stock ChunkMessageChannelItemWriter, this writer doesn't go and poll the reply channel itself:
+        it is the service activator of inboundReplies, so replies are matched by their chunk sequence as they arrive.
+        It keeps up to maxInFlight chunks on the wire at once (each chunk takes a credit, each reply gives it back)
+        and only blocks the step thread when every credit is taken. The reply timeout is how long we tolerate
+        hearing nothing back from the slaves, both while writing and when draining at the end of the step.
+        With chunking.write-mode=master the slaves send the processed items back and the writer writes them with
+        customerItemWriter here, every reply in a transaction of its own.
+        With chunking.load-aware-routing the master has a chunk router, and every chunk goes to the slave it picks.
+        The writer saves the last id up to which every chunk is acknowledged, for a restart with writer.skip-written
+        to look for the customers missing from NEW_CUSTOMER from there.
     */
     @Bean
-    public ChunkMessageChannelItemWriter chunkWriter() {
-        ChunkMessageChannelItemWriter chunkWriter = new ChunkMessageChannelItemWriter();
+    @ServiceActivator(inputChannel = "inboundReplies")
+    public WindowedChunkMessageChannelItemWriter<Customer> chunkWriter(@Qualifier("customerItemWriter") ItemWriter<Customer> itemWriter,
+                                                                       ObjectProvider<LoadAwareChunkRouter> chunkRouter,
+                                                                       PlatformTransactionManager transactionManager) {
+        WindowedChunkMessageChannelItemWriter<Customer> chunkWriter = new WindowedChunkMessageChannelItemWriter<>();
 
         chunkWriter.setMessagingOperations(messageTemplate());
-        chunkWriter.setReplyChannel(inboundReplies());
-        chunkWriter.setMaxWaitTimeouts(10);
+        chunkWriter.setMaxInFlight(maxInFlight);
+        chunkWriter.setReplyTimeout(replyTimeout);
+        chunkWriter.setMetrics(metrics);
+        chunkWriter.setRouter(chunkRouter.getIfAvailable());
+        // The writer is declared for Customers, but what a streaming step1 hands it are CustomerBlocks
+        chunkWriter.setKeyExtractor((Object item) -> item instanceof CustomerBlock ? ((CustomerBlock) item).getLastId()
+                : ((Customer) item).getId());
+        if (writeMode == ChunkWriteMode.MASTER) {
+            // The items sent back are Customers, while the chunks of a streaming step1 are CustomerBlocks
+            Assert.state(!streaming, "chunking.write-mode=master can't be combined with streaming.enabled");
+            chunkWriter.setItemWriter(itemWriter);
+            chunkWriter.setTransactionManager(transactionManager);
+        }
 
         return chunkWriter;
     }
 
     @Bean
     public MessagingTemplate messageTemplate() {
-        MessagingTemplate messagingTemplate = new MessagingTemplate(outboundRequests());
-
-        messagingTemplate.setReceiveTimeout(60000000l);
-
-        return messagingTemplate;
+        return new MessagingTemplate(outboundRequests());
     }
 
     /*
         We're using Rabbit for our persistent communication in this example.
         This is what's going to be responsible for actually sending the data from our channel to Rabbit.
+        A chunk the router has picked a slave for carries the routing key of that slave's queue in a header,
+        any other goes to the queue all slaves share.
     */
     @Bean
     @ServiceActivator(inputChannel = "outboundRequests")
@@ -105,7 +205,7 @@ public class IntegrationConfiguration {
         endpoint.setExpectReply(false);
         endpoint.setOutputChannel(inboundReplies());
 
-        endpoint.setRoutingKey(CHUNKING_REQUESTS);
+        endpoint.setRoutingKeyExpressionString("headers['" + LoadAwareChunkRouter.ROUTE + "'] ?: '" + CHUNKING_REQUESTS + "'");
 
         return endpoint;
     }
@@ -121,6 +221,18 @@ public class IntegrationConfiguration {
         return new Queue(CHUNKING_REQUESTS, false);
     }
 
+    /*
+        With chunking.load-aware-routing every slave also takes chunks from a queue of its own, named after the slave,
+        that the master routes chunks to. It goes away with the slave, and so do the chunks still in it: the master
+        sends those again when it stops hearing from the slave.
+    */
+    @Bean
+    @Profile("slave")
+    @ConditionalOnProperty(name = "chunking.load-aware-routing", havingValue = "true")
+    public Queue slaveRequestQueue() {
+        return new Queue(CHUNKING_REQUESTS + "." + slaveId(), false, false, true);
+    }
+
     /*
         On the slave JVM, we have to listen for the messages the master sends.
         This is going to receive the messages from Rabbit and write them to this inboundRequestChannel.
@@ -128,10 +240,12 @@ public class IntegrationConfiguration {
     */
     @Bean
     @Profile("slave")
-    public AmqpInboundChannelAdapter inboundRequestsAdapter(SimpleMessageListenerContainer listenerContainer) {
+    public AmqpInboundChannelAdapter inboundRequestsAdapter(@Qualifier("requestContainer") SimpleMessageListenerContainer listenerContainer,
+                                                            CustomerChunkMessageConverter chunkMessageConverter) {
         AmqpInboundChannelAdapter adapter = new AmqpInboundChannelAdapter(listenerContainer);
 
         adapter.setOutputChannel(inboundRequests());
+        adapter.setMessageConverter(chunkMessageConverter);
 
         adapter.afterPropertiesSet();
 
@@ -153,12 +267,32 @@ public class IntegrationConfiguration {
         We set our ItemProcessor and ItemWriter, we call for property set, and now we're going to create our
         ChunkProcessorChunkHandler. This is that wrapper we're just mentioned. We set our chunk processor
         in the chunk handler, called afterPropertiesSet, and returned chunkHandler.
+        The metrics listener times process and write of every item and chunk on the slave, and the metered handler
+        around it the handling of the whole chunk request.
+        With slave.process-threads > 0 the items of a chunk are processed in slices on that many threads
+        (ParallelChunkProcessor is a SimpleChunkProcessor otherwise), the write stays one write per chunk.
+        With chunking.write-mode=master the slave doesn't write at all: the items the chunk processor would write are
+        sent back with the reply instead, to be written by the master.
+        A slave starts with lazy initialization (application-slave.properties), so the beans a chunk passes through
+        on its way in and back out are created eagerly: the handler, the reply batcher and the outbound endpoints.
+        Whatever else they need is created with them, and nothing the slave doesn't need (the step, its reader, the
+        job repository) is created at all.
     */
     @Bean
+    @Lazy(false)
     @Profile("slave")
     @ServiceActivator(inputChannel = "inboundRequests", outputChannel = "outboundReplies")
-    public ChunkProcessorChunkHandler chunkProcessorChunkHandler(ItemProcessor<Customer, Customer> itemProcessor, ItemWriter<Customer> itemWriter) throws Exception {
-        SimpleChunkProcessor chunkProcessor = new SimpleChunkProcessor<>(itemProcessor, itemWriter);
+    public MeteredChunkHandler<Customer> chunkProcessorChunkHandler(ItemProcessor<Customer, Customer> itemProcessor,
+                                                                    @Qualifier("customerItemWriter") ItemWriter<Customer> itemWriter,
+                                                                    ChunkPipelineMetricsListener metricsListener) throws Exception {
+        ItemReturningChunkHandler<Customer> returningHandler = new ItemReturningChunkHandler<>();
+        ParallelChunkProcessor<Customer, Customer> chunkProcessor = new ParallelChunkProcessor<>(itemProcessor,
+                writeMode == ChunkWriteMode.MASTER ? returningHandler.getItemWriter() : itemWriter);
+        if (slaveProcessThreads > 0) {
+            chunkProcessor.setExecutor(slaveProcessExecutor());
+            chunkProcessor.setParallelism(slaveProcessThreads);
+        }
+        chunkProcessor.registerListener(metricsListener);
         chunkProcessor.afterPropertiesSet();
 
         ChunkProcessorChunkHandler<Customer> chunkHandler = new ChunkProcessorChunkHandler<>();
@@ -166,25 +300,94 @@ public class IntegrationConfiguration {
         chunkHandler.setChunkProcessor(chunkProcessor);
         chunkHandler.afterPropertiesSet();
 
-        return chunkHandler;
+        MeteredChunkHandler<Customer> meteredChunkHandler;
+        if (writeMode == ChunkWriteMode.MASTER) {
+            returningHandler.setDelegate(chunkHandler);
+            meteredChunkHandler = new MeteredChunkHandler<>(returningHandler, metrics);
+        } else {
+            meteredChunkHandler = new MeteredChunkHandler<>(chunkHandler, metrics);
+        }
+        meteredChunkHandler.setStartupTimer(slaveStartupTimer());
+
+        return meteredChunkHandler;
     }
 
+    /*
+        Logs and records how long after the start of its JVM the slave was ready and handled its first chunk.
+        With slave.exit-when-ready the slave exits once it is ready, to list the classes a startup loads.
+    */
+    @Bean
+    @Profile("slave")
+    public SlaveStartupTimer slaveStartupTimer() {
+        SlaveStartupTimer startupTimer = new SlaveStartupTimer();
+
+        startupTimer.setMetrics(metrics);
+        startupTimer.setExitWhenReady(exitWhenReady);
+
+        return startupTimer;
+    }
+
+    @Bean
+    @Profile("slave")
+    public ThreadPoolTaskExecutor slaveProcessExecutor() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+
+        taskExecutor.setCorePoolSize(Math.max(1, slaveProcessThreads));
+        taskExecutor.setMaxPoolSize(Math.max(1, slaveProcessThreads));
+        taskExecutor.setThreadNamePrefix("slave-process-");
+
+        return taskExecutor;
+    }
+
+    @Bean
+    public MessageChannel outboundReplies() {
+        return new DirectChannel();
+    }
+
+    /*
+        With several consumers a slave finishes several chunks at about the same time, so instead of one message per
+        reply the replies are collected for up to slave.reply-linger milliseconds (or slave.reply-batch-size replies)
+        and go back as one ChunkResponseBatch. A reply is sent right away when the slave has nothing else in hand.
+        Every batch tells the master how many of the slave's consumers are free. A consumer acknowledges its request
+        only after the batch with its reply went out, and rejects it, for the broker to deliver again, if that failed.
+    */
     @Bean
-    public QueueChannel outboundReplies() {
-        return new QueueChannel();
+    @Lazy(false)
+    @Profile("slave")
+    @ServiceActivator(inputChannel = "outboundReplies")
+    public ChunkResponseBatcher chunkResponseBatcher(MeteredChunkHandler<Customer> chunkProcessorChunkHandler,
+                                                     TaskScheduler taskScheduler) {
+        ChunkResponseBatcher batcher = new ChunkResponseBatcher();
+
+        batcher.setOutputChannel(batchedReplies());
+        batcher.setTaskScheduler(taskScheduler);
+        batcher.setSlaveId(slaveId());
+        batcher.setConsumers(slaveConsumers);
+        batcher.setActive(chunkProcessorChunkHandler::getActive);
+        batcher.setMaxBatchSize(replyBatchSize);
+        batcher.setLinger(replyLinger);
+        metrics.capacity(batcher, ChunkResponseBatcher::getCapacity);
+
+        return batcher;
+    }
+
+    @Bean
+    public MessageChannel batchedReplies() {
+        return new DirectChannel();
     }
 
     /*
         On the Reply side of things, once the chunk has been processed, we need to reply that something is happened.
-        And so we'll do that over the outboundReplies channel. And just like in the master, where we had
+        And so we'll do that over the outboundReplies channel (batched onto batchedReplies). And just like in the master, where we had
         AmqpOutboundEndpoint sending messages from the master to the slave, we've got the same thing sending messages
         from the slave back to the master. We go ahead to create our endpoint, we configure our routing key to be
         CHUNKING_REPLIES, (so we have CHUNKING_REQUESTS in the way IN and CHUNKING_REPLIES in the way OUT),
         and return the endpoint.
     */
     @Bean
+    @Lazy(false)
     @Profile("slave")
-    @ServiceActivator(inputChannel = "outboundReplies")
+    @ServiceActivator(inputChannel = "batchedReplies")
     public AmqpOutboundEndpoint amqpOutboundEndpointReplies(AmqpTemplate template) {
         AmqpOutboundEndpoint endpoint = new AmqpOutboundEndpoint(template);
 
@@ -200,10 +403,120 @@ public class IntegrationConfiguration {
         return new Queue(CHUNKING_REPLIES, false);
     }
 
-    // This is out channel of messages coming back in from the slave
+    /*
+        With chunking.load-aware-routing every slave tells the master about itself on the control queue every
+        slave.heartbeat-interval milliseconds: how many of its consumers are busy, and how many chunks it handled
+        since the last heartbeat in how much time.
+    */
+    @Bean
+    @Profile("slave")
+    @ConditionalOnProperty(name = "chunking.load-aware-routing", havingValue = "true")
+    public SlaveHeartbeatPublisher slaveHeartbeatPublisher(MeteredChunkHandler<Customer> chunkProcessorChunkHandler,
+                                                           TaskScheduler taskScheduler) {
+        SlaveHeartbeatPublisher publisher = new SlaveHeartbeatPublisher();
+
+        publisher.setOutputChannel(outboundHeartbeats());
+        publisher.setTaskScheduler(taskScheduler);
+        publisher.setChunkHandler(chunkProcessorChunkHandler);
+        publisher.setSlaveId(slaveId());
+        publisher.setQueue(slaveRequestQueue().getName());
+        publisher.setConsumers(slaveConsumers);
+        publisher.setInterval(heartbeatInterval);
+
+        return publisher;
+    }
+
+    @Bean
+    public MessageChannel outboundHeartbeats() {
+        return new DirectChannel();
+    }
+
     @Bean
-    public QueueChannel inboundReplies() {
-        return new QueueChannel();
+    @Lazy(false)
+    @Profile("slave")
+    @ConditionalOnProperty(name = "chunking.load-aware-routing", havingValue = "true")
+    @ServiceActivator(inputChannel = "outboundHeartbeats")
+    public AmqpOutboundEndpoint amqpOutboundEndpointHeartbeats(AmqpTemplate template) {
+        AmqpOutboundEndpoint endpoint = new AmqpOutboundEndpoint(template);
+
+        endpoint.setExpectReply(false);
+
+        endpoint.setRoutingKey(CHUNKING_CONTROL);
+
+        return endpoint;
+    }
+
+    @Bean
+    public Queue controlQueue() {
+        return new Queue(CHUNKING_CONTROL, false);
+    }
+
+    /*
+        The master reads the heartbeats of the slaves into the chunk router, which sends every chunk to the slave
+        expected to finish it first, and sends the chunks of a slave silent for chunking.slave-timeout milliseconds to
+        the others. A slave that was only slow may still write such a chunk, and the slave the chunk went to writes
+        it as well, so the writer has to leave the rows it finds alone (writer.skip-written or incremental.enabled)
+        unless the master writes them itself and ignores the second reply.
+    */
+    @Bean
+    @Profile("master")
+    @ConditionalOnProperty(name = "chunking.load-aware-routing", havingValue = "true")
+    @ServiceActivator(inputChannel = "inboundHeartbeats")
+    public LoadAwareChunkRouter chunkRouter(TaskScheduler taskScheduler) {
+        Assert.state(skipWritten || incremental || writeMode == ChunkWriteMode.MASTER,
+                "chunking.load-aware-routing needs writer.skip-written, incremental.enabled or chunking.write-mode=master, a redispatched chunk may be written twice");
+        LoadAwareChunkRouter router = new LoadAwareChunkRouter();
+
+        router.setMessagingOperations(messageTemplate());
+        router.setTaskScheduler(taskScheduler);
+        router.setSharedQueue(CHUNKING_REQUESTS);
+        router.setSlaveTimeout(slaveTimeout);
+        router.setMetrics(metrics);
+
+        return router;
+    }
+
+    @Bean
+    public MessageChannel inboundHeartbeats() {
+        return new DirectChannel();
+    }
+
+    @Bean
+    @Profile("master")
+    @ConditionalOnProperty(name = "chunking.load-aware-routing", havingValue = "true")
+    public AmqpInboundChannelAdapter inboundHeartbeatsAdapter(@Qualifier("controlContainer") SimpleMessageListenerContainer listenerContainer,
+                                                              CustomerChunkMessageConverter chunkMessageConverter) {
+        AmqpInboundChannelAdapter adapter = new AmqpInboundChannelAdapter(listenerContainer);
+
+        adapter.setOutputChannel(inboundHeartbeats());
+        adapter.setMessageConverter(chunkMessageConverter);
+
+        adapter.afterPropertiesSet();
+
+        return adapter;
+    }
+
+    @Bean
+    @Profile("master")
+    @ConditionalOnProperty(name = "chunking.load-aware-routing", havingValue = "true")
+    public SimpleMessageListenerContainer controlContainer(ConnectionFactory connectionFactory) {
+        SimpleMessageListenerContainer container =
+                new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(CHUNKING_CONTROL);
+        container.setAutoStartup(false);
+
+        return container;
+    }
+
+    /*
+        This is out channel of messages coming back in from the slave. It is a DirectChannel: the listener thread of
+        the reply container that received a reply hands it straight to the chunk writer, which correlates it with
+        its chunk by job id and sequence. There is nothing to poll, so a reply doesn't wait for the next poll and
+        an idle master doesn't wake up every few milliseconds to find nothing.
+    */
+    @Bean
+    public MessageChannel inboundReplies() {
+        return new DirectChannel();
     }
 
     /*
@@ -211,22 +524,36 @@ public class IntegrationConfiguration {
     */
     @Bean
     @Profile("master")
-    public AmqpInboundChannelAdapter inboundRepliesAdapter(SimpleMessageListenerContainer listenerContainer) {
+    public AmqpInboundChannelAdapter inboundRepliesAdapter(@Qualifier("replyContainer") SimpleMessageListenerContainer listenerContainer,
+                                                           CustomerChunkMessageConverter chunkMessageConverter) {
         AmqpInboundChannelAdapter adapter = new AmqpInboundChannelAdapter(listenerContainer);
 
         adapter.setOutputChannel(inboundReplies());
+        adapter.setMessageConverter(chunkMessageConverter);
 
         adapter.afterPropertiesSet();
 
         return adapter;
     }
 
+    /*
+        Every consumer handles one chunk request at a time on its own thread, so slave.consumers is how many chunks
+        the slave works on at once. The prefetch counts messages, and every message is a whole chunk: 1 keeps the
+        next chunk close at hand without one consumer hoarding chunks another (or another slave) could take.
+        With chunking.load-aware-routing the consumers take chunks from the slave's own queue as well.
+    */
     @Bean
     @Profile("slave")
     public SimpleMessageListenerContainer requestContainer(ConnectionFactory connectionFactory) {
         SimpleMessageListenerContainer container =
                 new SimpleMessageListenerContainer(connectionFactory);
-        container.setQueueNames(CHUNKING_REQUESTS);
+        if (loadAwareRouting) {
+            container.setQueueNames(CHUNKING_REQUESTS, slaveRequestQueue().getName());
+        } else {
+            container.setQueueNames(CHUNKING_REQUESTS);
+        }
+        container.setConcurrentConsumers(slaveConsumers);
+        container.setPrefetchCount(slavePrefetch);
         container.setAutoStartup(false);
 
         return container;
@@ -243,10 +570,24 @@ public class IntegrationConfiguration {
         return container;
     }
 
-    @Bean(name = PollerMetadata.DEFAULT_POLLER)
-    public PollerMetadata defaultPoller() {
-        PollerMetadata pollerMetadata = new PollerMetadata();
-        pollerMetadata.setTrigger(new PeriodicTrigger(10));
-        return pollerMetadata;
+    private String slaveId() {
+        return StringUtils.hasText(slaveId) ? slaveId : ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /*
+        By default every ChunkRequest travels to the slave Java-serialized, together with the whole StepExecution
+        and JobExecution graph hanging off its StepContribution, and every ChunkResponse travels back the same way.
+        This converter writes a compact binary form instead (varint ids, epoch-day dates, length-prefixed strings,
+        optionally deflated). Spring Boot hands a single MessageConverter bean to the auto-configured RabbitTemplate,
+        so the AmqpOutboundEndpoints pick it up on their own, the inbound adapters get it explicitly.
+    */
+    @Bean
+    public CustomerChunkMessageConverter chunkMessageConverter() {
+        CustomerChunkMessageConverter converter = new CustomerChunkMessageConverter();
+
+        converter.setCompressionThreshold(compressionThreshold);
+        converter.setMetrics(metrics);
+
+        return converter;
     }
 }
@@ -24,6 +24,12 @@ package as.springbatchlearn.configuration;
 
     Adding more slaves increases the all our processing.
 
+    A slave starts lean (application-slave.properties): lazily, without JPA, without schema scripts or jobs of its
+    own, and it logs how long after the start of its JVM it was ready and handled its first chunk (slave.startup).
+    Built with mvn -Pcds package, it also starts from a class data sharing archive of the classes it loads:
+
+    java -Dspring.profiles.active=slave -XX:SharedArchiveFile=target/slave.jsa -cp "target/slave-lib/*" as.springbatchlearn.SpringBatchLearnApplication
+
     One additional difference between the remote partitioning and remote chunking should be noted.
     With partitioning there are multiple step executions, one per partition, and one additional one for the master.
     However with remote chunking, there is just one step execution. Because of this unlike remote partitioning
@@ -32,27 +38,44 @@ package as.springbatchlearn.configuration;
 
 */
 
+import as.springbatchlearn.domain.AdaptiveChunkSizeCompletionPolicy;
+import as.springbatchlearn.domain.ChangeWatermarkListener;
+import as.springbatchlearn.domain.ChunkAwareProcessorListener;
+import as.springbatchlearn.domain.ChunkPipelineMetricsListener;
+import as.springbatchlearn.domain.ColumnRangePartitioner;
 import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerBlock;
+import as.springbatchlearn.domain.CustomerBlockItemProcessor;
+import as.springbatchlearn.domain.CustomerBlockItemWriter;
+import as.springbatchlearn.domain.CustomerBlockPageAssembler;
+import as.springbatchlearn.domain.CustomerBlockPool;
+import as.springbatchlearn.domain.CustomerCopyItemWriter;
+import as.springbatchlearn.domain.CustomerItemPreparedStatementSetter;
 import as.springbatchlearn.domain.CustomerRowMapper;
+import as.springbatchlearn.domain.ItemProcessorChain;
+import as.springbatchlearn.domain.KeysetPagingItemReader;
+import as.springbatchlearn.domain.WindowedChunkMessageChannelItemWriter;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemReadListener;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.core.step.tasklet.TaskletStep;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
+import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.support.PostgresPagingQueryProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import javax.sql.DataSource;
-import java.util.HashMap;
-import java.util.Map;
 
 @Configuration
 public class JobConfiguration {
@@ -69,59 +92,298 @@ public class JobConfiguration {
     @Autowired
     public JobExplorer jobExplorer;
 
+    @Autowired
+    private ChunkPipelineMetricsListener metricsListener;
+
+    @Value("${reader.page-size:1000}")
+    private int pageSize;
+
+    @Value("${reader.prefetch-pages:2}")
+    private int prefetchPages;
+
+    @Value("${writer.mode:copy}")
+    private String writerMode;
+
+    @Value("${writer.skip-written:true}")
+    private boolean skipWritten;
+
+    @Value("${incremental.enabled:false}")
+    private boolean incremental;
+
+    @Value("${chunk.initial-size:1000}")
+    private int initialChunkSize;
+
+    @Value("${chunk.min-size:100}")
+    private int minChunkSize;
+
+    @Value("${chunk.max-size:10000}")
+    private int maxChunkSize;
+
+    @Value("${chunk.target-latency:500}")
+    private long targetChunkLatency;
+
+    @Value("${chunk.max-bytes:0}")
+    private long maxChunkBytes;
+
+    @Value("${streaming.enabled:false}")
+    private boolean streaming;
+
+    @Value("${streaming.direct-buffers:true}")
+    private boolean directBuffers;
+
+    @Value("${streaming.pooled-blocks:8}")
+    private int pooledBlocks;
+
+    /*
+        The paging reader used to go page by page with OFFSET-style queries, synchronously inside the chunk loop.
+        The keyset reader seeks with "WHERE id > :lastId" so every page is a short index range scan, and it fetches
+        the next pages on a background thread while the current chunk is processed or on the wire.
+        For a restart it only saves the last id it handed out, and with writer.skip-written it resumes at the first
+        customer missing from NEW_CUSTOMER after the last id every chunk up to which the slaves acknowledged, rather
+        than right after that id.
+    */
     @Bean
-    public JdbcPagingItemReader<Customer> pagingItemReader() {
-        JdbcPagingItemReader<Customer> reader = new JdbcPagingItemReader<>();
+    public KeysetPagingItemReader<Customer> keysetItemReader() {
+        KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
 
         reader.setDataSource(this.dataSource);
-        reader.setFetchSize(1000);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("customer");
+        reader.setSortKey("id");
         reader.setRowMapper(new CustomerRowMapper());
+        reader.setKeyExtractor(Customer::getId);
+        reader.setPageSize(pageSize);
+        reader.setPrefetchPages(prefetchPages);
+        if (skipWritten) {
+            reader.setWrittenTable("NEW_CUSTOMER");
+            reader.setAcknowledgedKey(WindowedChunkMessageChannelItemWriter.ACKNOWLEDGED);
+        }
+
+        return reader;
+    }
+
+    /*
+        With streaming.enabled every page of reader.page-size rows goes from the ResultSet straight into one
+        CustomerBlock, in the layout the rows have on the wire, and that block is the only item of its chunk.
+        What the master holds is then a buffer per page read ahead or chunk in flight, no longer a Customer, two
+        Strings per row; the buffers are direct (off the heap) unless streaming.direct-buffers=false, and
+        up to streaming.pooled-blocks of them are kept for reuse.
+    */
+    @Bean
+    public CustomerBlockPool customerBlockPool() {
+        CustomerBlockPool pool = new CustomerBlockPool();
+
+        pool.setDirect(directBuffers);
+        pool.setMaxPooled(pooledBlocks);
+
+        return pool;
+    }
+
+    @Bean
+    public KeysetPagingItemReader<CustomerBlock> keysetBlockReader() {
+        KeysetPagingItemReader<CustomerBlock> reader = new KeysetPagingItemReader<>();
+
+        reader.setDataSource(this.dataSource);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("customer");
+        reader.setSortKey("id");
+        reader.setPageAssembler(() -> new CustomerBlockPageAssembler(customerBlockPool()));
+        reader.setKeyExtractor(CustomerBlock::getLastId);
+        reader.setPageSize(pageSize);
+        reader.setPrefetchPages(prefetchPages);
+        if (skipWritten) {
+            reader.setWrittenTable("NEW_CUSTOMER");
+            reader.setAcknowledgedKey(WindowedChunkMessageChannelItemWriter.ACKNOWLEDGED);
+        }
+
+        return reader;
+    }
 
-        PostgresPagingQueryProvider queryProvider = new PostgresPagingQueryProvider();
-        queryProvider.setSelectClause("id, firstName, lastName, birthdate");
-        queryProvider.setFromClause("from customer");
+    /*
+        The same keyset reader for the steps that run one key range each (local-parallel, partition-worker): it reads
+        only the [minValue, maxValue] range the partitioner put into its step's ExecutionContext, and keeps its
+        progress there.
+    */
+    @Bean
+    @StepScope
+    public KeysetPagingItemReader<Customer> rangeItemReader() {
+        KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
 
-        Map<String, Order> sortKeys = new HashMap<>(1);
-        sortKeys.put("id", Order.ASCENDING);
-        queryProvider.setSortKeys(sortKeys);
-        reader.setQueryProvider(queryProvider);
+        reader.setDataSource(this.dataSource);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("customer");
+        reader.setSortKey("id");
+        reader.setRowMapper(new CustomerRowMapper());
+        reader.setKeyExtractor(Customer::getId);
+        reader.setPageSize(pageSize);
+        reader.setPrefetchPages(prefetchPages);
+        reader.setPartitioned(true);
 
         return reader;
     }
 
+    @Bean
+    public ColumnRangePartitioner rangePartitioner() {
+        ColumnRangePartitioner partitioner = new ColumnRangePartitioner();
+
+        partitioner.setDataSource(this.dataSource);
+        partitioner.setTable("customer");
+        partitioner.setColumn("id");
+        partitioner.setSampleQuantiles(true);
+
+        return partitioner;
+    }
+
+    /*
+        The processor used to copy every Customer into an identical new one, an allocation per item for nothing now
+        that a Customer is immutable. It is a chain without stages, i.e. a PassThroughItemProcessor, which the steps
+        leave out altogether (ItemProcessorChain.unlessNoOp); real processing goes in as stages of the chain.
+        Enrichment from reference tables goes in as a LookupItemProcessor over a JdbcLookup, with one LookupCache per
+        table: the steps show it every chunk first (ChunkAwareProcessorListener here, ParallelChunkProcessor on the
+        slave), so a chunk costs one query for the keys the cache doesn't have rather than one per item.
+    */
     @Bean
     ItemProcessor<Customer, Customer> upperCaseItemProcessor() {
-        return item -> new Customer(item.getId(),
-                item.getFirstName(),
-                item.getLastName(),
-                item.getBirthdate());
+        return ItemProcessorChain.of();
     }
 
+    /*
+        With writer.mode=copy (the default) each chunk goes into NEW_CUSTOMER as one binary COPY frame, which avoids
+        the per-row INSERT statements altogether. The batch writer (binding by position, no BeanWrapper per item)
+        stays around as the fallback for chunks the COPY rejects, so a bad item still surfaces the way a
+        skip or retry policy expects. With writer.mode=batch the batch writer is used on its own.
+        The same bean is the writer of the local step and of the slave's chunk handler.
+
+        With writer.skip-written (the default) customers that are in NEW_CUSTOMER already are left out instead of
+        failing the chunk, which is what the chunks at the boundary of a restarted remote chunking run need. For COPY
+        that only costs something for a chunk that actually hits one, it is then inserted with ON CONFLICT DO NOTHING;
+        the batch writer inserts every chunk that way.
+
+        With incremental.enabled customers are upserted, a customer read again overwrites its row in NEW_CUSTOMER.
+    */
     @Bean
-    public JdbcBatchItemWriter<Customer> customerItemWriter() {
+    public ItemWriter<Customer> customerItemWriter() {
+        if (!"copy".equals(writerMode)) {
+            return batchCustomerItemWriter(incremental ? CustomerItemPreparedStatementSetter.UPSERT_SQL
+                    : skipWritten ? CustomerItemPreparedStatementSetter.INSERT_IF_ABSENT_SQL
+                    : CustomerItemPreparedStatementSetter.INSERT_SQL);
+        }
+        CustomerCopyItemWriter itemWriter = new CustomerCopyItemWriter();
+
+        itemWriter.setDataSource(this.dataSource);
+        itemWriter.setTable("NEW_CUSTOMER");
+        if (incremental) {
+            itemWriter.setUpsert(true);
+            itemWriter.setFallbackWriter(batchCustomerItemWriter(CustomerItemPreparedStatementSetter.UPSERT_SQL));
+        } else {
+            itemWriter.setFallbackWriter(batchCustomerItemWriter(CustomerItemPreparedStatementSetter.INSERT_SQL));
+            if (skipWritten) {
+                itemWriter.setConflictWriter(batchCustomerItemWriter(CustomerItemPreparedStatementSetter.INSERT_IF_ABSENT_SQL));
+            }
+        }
+        itemWriter.afterPropertiesSet();
+
+        return itemWriter;
+    }
+
+    private JdbcBatchItemWriter<Customer> batchCustomerItemWriter(String sql) {
         JdbcBatchItemWriter<Customer> itemWriter = new JdbcBatchItemWriter<>();
 
         itemWriter.setDataSource(this.dataSource);
-        itemWriter.setSql("INSERT INTO NEW_CUSTOMER VALUES (:id, :firstName, :lastName, :birthdate)");
-        itemWriter.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<>());
+        itemWriter.setSql(String.format(sql, "NEW_CUSTOMER"));
+        itemWriter.setItemPreparedStatementSetter(new CustomerItemPreparedStatementSetter());
+        // with ON CONFLICT DO NOTHING a row that is there already is an update count of 0
+        itemWriter.setAssertUpdates(!sql.equals(CustomerItemPreparedStatementSetter.INSERT_IF_ABSENT_SQL));
         itemWriter.afterPropertiesSet();
 
         return itemWriter;
     }
 
+    /*
+        With incremental.enabled step1 reads only the customers added since the last completed run of the job, that
+        run's highest id is its watermark in the job's ExecutionContext. The job gets a run.id incrementer for it, so
+        every run is a new instance while a failed one is still restarted as before; full-refresh=true as a job
+        parameter reads the whole table again.
+    */
+    @Bean
+    public ChangeWatermarkListener changeWatermarkListener() {
+        ChangeWatermarkListener listener = new ChangeWatermarkListener();
+
+        listener.setDataSource(this.dataSource);
+        listener.setJobExplorer(this.jobExplorer);
+        listener.setTable("customer");
+        listener.setColumn("id");
+        listener.setReader(streaming ? keysetBlockReader() : keysetItemReader());
+
+        return listener;
+    }
+
+    /*
+        The right chunk size is not the same for the local step and for remote chunking, nor under a busy database.
+        So step1 starts at chunk.initial-size and moves within [chunk.min-size, chunk.max-size] toward a chunk that
+        takes chunk.target-latency milliseconds from its last read to its commit, taking the reader's page size along.
+        The size it settled on is saved with the step, so a restart doesn't have to find it again.
+    */
+    @Bean
+    public AdaptiveChunkSizeCompletionPolicy chunkSizePolicy() {
+        AdaptiveChunkSizeCompletionPolicy policy = new AdaptiveChunkSizeCompletionPolicy(initialChunkSize);
+
+        policy.setMinChunkSize(minChunkSize);
+        policy.setMaxChunkSize(maxChunkSize);
+        policy.setTargetLatency(targetChunkLatency);
+        policy.setMaxChunkBytes(maxChunkBytes);
+        policy.setItemSizeEstimator((Customer customer) -> 16
+                + (customer.getFirstName() == null ? 0 : customer.getFirstName().length())
+                + (customer.getLastName() == null ? 0 : customer.getLastName().length()));
+        policy.setFetchSizeConsumer(keysetItemReader()::setPageSize);
+
+        return policy;
+    }
+
+    /*
+        In streaming mode a chunk is a single block of reader.page-size rows, so the page size is the chunk size and the
+        adaptive chunk size policy has nothing to adapt. Remote chunking sends the block's bytes as they are.
+    */
     @Bean
     TaskletStep step1() {
-        return stepBuilderFactory.get("step1")
-                .<Customer, Customer>chunk(1000)
-                .reader(pagingItemReader())
-                .processor(upperCaseItemProcessor())
-                .writer(customerItemWriter())
-                .build();
+        if (streaming) {
+            SimpleStepBuilder<CustomerBlock, CustomerBlock> builder = stepBuilderFactory.get("step1")
+                    .<CustomerBlock, CustomerBlock>chunk(1)
+                    .reader(keysetBlockReader())
+                    .processor(ItemProcessorChain.unlessNoOp(
+                            new CustomerBlockItemProcessor(upperCaseItemProcessor(), customerBlockPool())))
+                    .writer(new CustomerBlockItemWriter(customerItemWriter()));
+            builder.listener((StepExecutionListener) metricsListener);
+            if (incremental) {
+                builder.listener((StepExecutionListener) changeWatermarkListener());
+            }
+            return builder.build();
+        }
+        SimpleStepBuilder<Customer, Customer> builder = stepBuilderFactory.get("step1")
+                .<Customer, Customer>chunk(chunkSizePolicy())
+                .reader(keysetItemReader())
+                .processor(ItemProcessorChain.unlessNoOp(upperCaseItemProcessor()))
+                .writer(customerItemWriter());
+        builder.listener((StepExecutionListener) metricsListener);
+        builder.listener((ItemReadListener<Object>) chunkSizePolicy());
+        builder.listener((ChunkListener) chunkSizePolicy());
+        builder.stream(chunkSizePolicy());
+        ChunkAwareProcessorListener.register(builder, upperCaseItemProcessor());
+        if (incremental) {
+            builder.listener((StepExecutionListener) changeWatermarkListener());
+        }
+        return builder.build();
     }
 
     @Bean
     @Profile("master")  // This is to prevent the job from kicking off in the slave JVMs.
     public Job job() throws Exception {
+        if (incremental) {
+            return jobBuilderFactory.get("job")
+                    .incrementer(new RunIdIncrementer())
+                    .start(step1())
+                    .build();
+        }
         return jobBuilderFactory.get("job")
                 .start(step1())
                 .build();
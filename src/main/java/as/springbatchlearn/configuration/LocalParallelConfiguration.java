@@ -0,0 +1,183 @@
+package as.springbatchlearn.configuration;
+
+/*
+    The master/slave setup needs RabbitMQ even when all we have is one machine with plenty of cores.
+    With the local-parallel profile the same reader, processor and writer run inside a single JVM instead:
+
+    java -jar -Dspring.profiles.active=local-parallel target/spring-batch-learn-0.0.1-SNAPSHOT.jar
+
+    The customer table is cut into key ranges by the ColumnRangePartitioner and local.threads workers take them from
+    the WorkStealingPartitionHandler's queue, each with its own partitioned keyset reader and its own transactions.
+    So the writes go over local.threads connections at once, and a restart picks up every range where it stopped.
+    Every worker and every reader's prefetch thread holds a connection, so the pool
+    (spring.datasource.hikari.maximum-pool-size) should have at least 2 * local.threads of them.
+
+    If the processor is the expensive part, local.processor-threads > 0 runs it through an AsyncItemProcessor on a
+    pool of its own, so every worker processes its chunk in parallel and the AsyncItemWriter waits for the results
+    before they are written in the chunk transaction.
+
+    The workers record their stages into the pipeline metrics, the report is logged once, by the manager step.
+*/
+
+import as.springbatchlearn.domain.ChunkAwareProcessorListener;
+import as.springbatchlearn.domain.ChunkPipelineMetricsListener;
+import as.springbatchlearn.domain.ColumnRangePartitioner;
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.ItemProcessorChain;
+import as.springbatchlearn.domain.KeysetPagingItemReader;
+import as.springbatchlearn.domain.WorkStealingPartitionHandler;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Future;
+
+@Configuration
+@Profile("local-parallel")
+public class LocalParallelConfiguration {
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private ItemProcessor<Customer, Customer> itemProcessor;
+
+    @Autowired
+    @Qualifier("customerItemWriter")
+    private ItemWriter<Customer> itemWriter;
+
+    @Autowired
+    private ChunkPipelineMetricsListener metricsListener;
+
+    @Autowired
+    @Qualifier("rangeItemReader")
+    private KeysetPagingItemReader<Customer> rangeItemReader;
+
+    @Autowired
+    private ColumnRangePartitioner rangePartitioner;
+
+    @Value("${local.threads:4}")
+    private int threads;
+
+    @Value("${local.partitions-per-thread:8}")
+    private int partitionsPerThread;
+
+    @Value("${local.min-split-size:1000}")
+    private long minSplitSize;
+
+    @Value("${local.processor-threads:0}")
+    private int processorThreads;
+
+    @Bean
+    public ThreadPoolTaskExecutor workerTaskExecutor() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+
+        taskExecutor.setCorePoolSize(threads);
+        taskExecutor.setMaxPoolSize(threads);
+        taskExecutor.setThreadNamePrefix("step1-worker-");
+
+        return taskExecutor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor processorTaskExecutor() {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+
+        taskExecutor.setCorePoolSize(Math.max(1, processorThreads));
+        taskExecutor.setMaxPoolSize(Math.max(1, processorThreads));
+        taskExecutor.setThreadNamePrefix("step1-processor-");
+
+        return taskExecutor;
+    }
+
+    @Bean
+    public Step step1Worker() throws Exception {
+        if (processorThreads <= 0) {
+            SimpleStepBuilder<Customer, Customer> builder = stepBuilderFactory.get("step1Worker")
+                    .<Customer, Customer>chunk(1000)
+                    .reader(rangeItemReader)
+                    .processor(ItemProcessorChain.unlessNoOp(itemProcessor))
+                    .writer(itemWriter)
+                    .listener((ItemReadListener<Object>) metricsListener)
+                    .listener((ItemProcessListener<Object, Object>) metricsListener)
+                    .listener((ItemWriteListener<Object>) metricsListener);
+            builder.listener((ChunkListener) metricsListener);
+            return ChunkAwareProcessorListener.register(builder, itemProcessor).build();
+        }
+
+        AsyncItemProcessor<Customer, Customer> asyncItemProcessor = new AsyncItemProcessor<>();
+        asyncItemProcessor.setDelegate(itemProcessor);
+        asyncItemProcessor.setTaskExecutor(processorTaskExecutor());
+        asyncItemProcessor.afterPropertiesSet();
+
+        AsyncItemWriter<Customer> asyncItemWriter = new AsyncItemWriter<>();
+        asyncItemWriter.setDelegate(itemWriter);
+        asyncItemWriter.afterPropertiesSet();
+
+        SimpleStepBuilder<Customer, Future<Customer>> builder = stepBuilderFactory.get("step1Worker")
+                .<Customer, Future<Customer>>chunk(1000)
+                .reader(rangeItemReader)
+                .processor(asyncItemProcessor)
+                .writer(asyncItemWriter)
+                .listener((ItemReadListener<Object>) metricsListener)
+                .listener((ItemProcessListener<Object, Object>) metricsListener)
+                .listener((ItemWriteListener<Object>) metricsListener);
+        builder.listener((ChunkListener) metricsListener);
+        return ChunkAwareProcessorListener.register(builder, itemProcessor).build();
+    }
+
+    @Bean
+    public WorkStealingPartitionHandler localPartitionHandler() throws Exception {
+        WorkStealingPartitionHandler partitionHandler = new WorkStealingPartitionHandler();
+
+        partitionHandler.setStep(step1Worker());
+        partitionHandler.setTaskExecutor(workerTaskExecutor());
+        partitionHandler.setJobRepository(jobRepository);
+        partitionHandler.setWorkers(threads);
+        partitionHandler.setPartitionsPerWorker(partitionsPerThread);
+        partitionHandler.setMinSplitSize(minSplitSize);
+
+        return partitionHandler;
+    }
+
+    @Bean
+    public Step step1Local() throws Exception {
+        return stepBuilderFactory.get("step1Local")
+                .partitioner(step1Worker().getName(), rangePartitioner)
+                .partitionHandler(localPartitionHandler())
+                .listener((StepExecutionListener) metricsListener)
+                .build();
+    }
+
+    @Bean
+    public Job localJob() throws Exception {
+        return jobBuilderFactory.get("job")
+                .start(step1Local())
+                .build();
+    }
+}
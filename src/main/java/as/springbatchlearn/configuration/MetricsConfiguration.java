@@ -0,0 +1,41 @@
+package as.springbatchlearn.configuration;
+
+/*
+    To tell whether step1 is bound by reading, processing, writing, the wire format or the broker, every stage of the
+    chunk pipeline records into one set of Micrometer meters (see ChunkPipelineMetrics). The listener times read,
+    process, write and commit on whichever JVM runs them, the chunk writer times the window and the broker round
+    trips on the master, the converter counts the bytes on the wire and the slave times every chunk it handles.
+    At the end of the step the listener logs a report of it all.
+
+    There is no actuator here, so the registry is an in-memory SimpleMeterRegistry. It is also added to the global
+    registry, which is where Spring Batch records its own job, step and chunk metrics.
+*/
+
+import as.springbatchlearn.domain.ChunkPipelineMetrics;
+import as.springbatchlearn.domain.ChunkPipelineMetricsListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfiguration {
+
+    @Bean
+    public MeterRegistry meterRegistry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Metrics.addRegistry(registry);
+        return registry;
+    }
+
+    @Bean
+    public ChunkPipelineMetrics chunkPipelineMetrics() {
+        return new ChunkPipelineMetrics(meterRegistry());
+    }
+
+    @Bean
+    public ChunkPipelineMetricsListener chunkPipelineMetricsListener() {
+        return new ChunkPipelineMetricsListener(chunkPipelineMetrics());
+    }
+}
@@ -0,0 +1,235 @@
+package as.springbatchlearn.configuration;
+
+/*
+    Remote partitioning over the same RabbitMQ as remote chunking. For IO-bound copies sending every item over the
+    wire is the expensive part, so here the master only cuts the customer table into key ranges (ColumnRangePartitioner)
+    and sends one small StepExecutionRequest per range. The range itself, minValue/maxValue, is in the partition's
+    ExecutionContext in the job repository, which the workers share with the master. Every worker reads its range with
+    the range-bounded keyset reader and writes it with customerItemWriter (COPY or batch inserts, see writer.mode),
+    so no item ever leaves the worker's JVM.
+
+    java -jar -Dspring.profiles.active=partition-worker target/spring-batch-learn-0.0.1-SNAPSHOT.jar    // a worker
+    java -jar -Dspring.profiles.active=partition-master target/spring-batch-learn-0.0.1-SNAPSHOT.jar    // the master
+
+    The reader, processor and writer are the same beans as for remote chunking and local-parallel, so whether the job
+    runs with chunking or with partitioning is only a matter of the profile the master is started with. A worker JVM
+    can serve both, with -Dspring.profiles.active=slave,partition-worker.
+
+    The workers don't reply over the broker. The master polls the job repository every partition.poll-interval
+    milliseconds until every partition is finished, one query for the whole set of partitions, and a worker that
+    dies with a partition doesn't leave the master waiting for a message that never comes: the partition is failed
+    and restarting the job runs it again from where it stopped.
+    Each worker runs partition.worker-consumers partitions at once, each of them holds a connection for its chunks and
+    one for its reader's prefetch, so the pool should have at least 2 * partition.worker-consumers of them.
+*/
+
+import as.springbatchlearn.domain.ChunkAwareProcessorListener;
+import as.springbatchlearn.domain.ChunkPipelineMetricsListener;
+import as.springbatchlearn.domain.ColumnRangePartitioner;
+import as.springbatchlearn.domain.Customer;
+import as.springbatchlearn.domain.CustomerChunkMessageConverter;
+import as.springbatchlearn.domain.ItemProcessorChain;
+import as.springbatchlearn.domain.KeysetPagingItemReader;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.integration.partition.BeanFactoryStepLocator;
+import org.springframework.batch.integration.partition.MessageChannelPartitionHandler;
+import org.springframework.batch.integration.partition.StepExecutionRequestHandler;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.integration.amqp.inbound.AmqpInboundChannelAdapter;
+import org.springframework.integration.amqp.outbound.AmqpOutboundEndpoint;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.messaging.MessageChannel;
+
+@Configuration
+@Profile({"partition-master", "partition-worker"})
+public class PartitioningConfiguration {
+
+    public static final String PARTITIONING_REQUESTS = "partitioning.requests";
+
+    private static final String WORKER_STEP = "step1Partition";
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private ChunkPipelineMetricsListener metricsListener;
+
+    @Autowired
+    private ColumnRangePartitioner rangePartitioner;
+
+    @Value("${partition.grid-size:16}")
+    private int gridSize;
+
+    @Value("${partition.poll-interval:1000}")
+    private long pollInterval;
+
+    @Value("${partition.worker-consumers:2}")
+    private int workerConsumers;
+
+    /*
+        Sends one StepExecutionRequest (job execution id, step execution id, step name) per partition to
+        outboundPartitionRequests, and then waits for the partitions to finish by polling the job repository.
+    */
+    @Bean
+    @Profile("partition-master")
+    public MessageChannelPartitionHandler partitionHandler() {
+        MessageChannelPartitionHandler partitionHandler = new MessageChannelPartitionHandler();
+
+        partitionHandler.setStepName(WORKER_STEP);
+        partitionHandler.setGridSize(gridSize);
+        partitionHandler.setMessagingOperations(new MessagingTemplate(outboundPartitionRequests()));
+        partitionHandler.setJobExplorer(jobExplorer);
+        partitionHandler.setPollInterval(pollInterval);
+
+        return partitionHandler;
+    }
+
+    @Bean
+    @Profile("partition-master")
+    public Step step1Manager() {
+        return stepBuilderFactory.get("step1Manager")
+                .partitioner(WORKER_STEP, rangePartitioner)
+                .partitionHandler(partitionHandler())
+                .listener((StepExecutionListener) metricsListener)
+                .build();
+    }
+
+    @Bean
+    @Profile("partition-master")
+    public Job partitionJob() {
+        return jobBuilderFactory.get("job")
+                .start(step1Manager())
+                .build();
+    }
+
+    @Bean
+    public MessageChannel outboundPartitionRequests() {
+        return new DirectChannel();
+    }
+
+    @Bean
+    @Profile("partition-master")
+    @ServiceActivator(inputChannel = "outboundPartitionRequests")
+    public AmqpOutboundEndpoint amqpOutboundPartitionRequests(AmqpTemplate template) {
+        AmqpOutboundEndpoint endpoint = new AmqpOutboundEndpoint(template);
+
+        endpoint.setExpectReply(false);
+        endpoint.setRoutingKey(PARTITIONING_REQUESTS);
+
+        return endpoint;
+    }
+
+    @Bean
+    public Queue partitionRequestQueue() {
+        return new Queue(PARTITIONING_REQUESTS, false);
+    }
+
+    /*
+        The step every worker runs for a partition. The name of the bean is the step name the master sends, it is how
+        the worker's BeanFactoryStepLocator finds it.
+    */
+    @Bean(name = WORKER_STEP)
+    @Profile("partition-worker")
+    public Step step1Partition(@Qualifier("rangeItemReader") KeysetPagingItemReader<Customer> rangeItemReader,
+                               ItemProcessor<Customer, Customer> itemProcessor,
+                               @Qualifier("customerItemWriter") ItemWriter<Customer> itemWriter) {
+        SimpleStepBuilder<Customer, Customer> builder = stepBuilderFactory.get(WORKER_STEP)
+                .<Customer, Customer>chunk(1000)
+                .reader(rangeItemReader)
+                .processor(ItemProcessorChain.unlessNoOp(itemProcessor))
+                .writer(itemWriter)
+                .listener((ItemReadListener<Object>) metricsListener)
+                .listener((ItemProcessListener<Object, Object>) metricsListener)
+                .listener((ItemWriteListener<Object>) metricsListener);
+        builder.listener((ChunkListener) metricsListener);
+        return ChunkAwareProcessorListener.register(builder, itemProcessor).build();
+    }
+
+    @Bean
+    @Profile("partition-worker")
+    public BeanFactoryStepLocator stepLocator() {
+        return new BeanFactoryStepLocator();
+    }
+
+    /*
+        Looks the partition's StepExecution up in the job repository and runs the step on it, on the consumer thread
+        that received the request. The StepExecution it returns is of no use to anyone, the master reads the outcome
+        from the job repository, so it goes to the nullChannel.
+    */
+    @Bean
+    @Profile("partition-worker")
+    @ServiceActivator(inputChannel = "inboundPartitionRequests", outputChannel = "nullChannel")
+    public StepExecutionRequestHandler stepExecutionRequestHandler() {
+        StepExecutionRequestHandler handler = new StepExecutionRequestHandler();
+
+        handler.setJobExplorer(jobExplorer);
+        handler.setStepLocator(stepLocator());
+
+        return handler;
+    }
+
+    @Bean
+    public MessageChannel inboundPartitionRequests() {
+        return new DirectChannel();
+    }
+
+    @Bean
+    @Profile("partition-worker")
+    public AmqpInboundChannelAdapter inboundPartitionRequestsAdapter(@Qualifier("partitionRequestContainer") SimpleMessageListenerContainer listenerContainer,
+                                                                     CustomerChunkMessageConverter chunkMessageConverter) {
+        AmqpInboundChannelAdapter adapter = new AmqpInboundChannelAdapter(listenerContainer);
+
+        adapter.setOutputChannel(inboundPartitionRequests());
+        adapter.setMessageConverter(chunkMessageConverter);
+
+        adapter.afterPropertiesSet();
+
+        return adapter;
+    }
+
+    /*
+        Every consumer runs one partition at a time, a partition can run for minutes, so a consumer takes no more
+        than the one request it works on: the next one stays on the queue for whichever worker is free first.
+    */
+    @Bean
+    @Profile("partition-worker")
+    public SimpleMessageListenerContainer partitionRequestContainer(ConnectionFactory connectionFactory) {
+        SimpleMessageListenerContainer container =
+                new SimpleMessageListenerContainer(connectionFactory);
+        container.setQueueNames(PARTITIONING_REQUESTS);
+        container.setConcurrentConsumers(workerConsumers);
+        container.setPrefetchCount(1);
+        container.setAutoStartup(false);
+
+        return container;
+    }
+}
@@ -0,0 +1,184 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.repeat.policy.SimpleCompletionPolicy;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+
+/*
+    A chunk size that follows the measured cost of the chunk instead of a fixed number.
+
+    After every committed chunk the time from its last read to the end of its commit (processing, writing and the
+    commit locally, waiting for a window slot and sending on a remote chunking master) is divided by the number of
+    items, and the next chunk size is the one that would take targetLatency at that rate. The new size is averaged
+    with the old one and never more than doubles or halves at once, so a single slow commit doesn't swing it around,
+    and it stays within [minChunkSize, maxChunkSize]. When an item size estimator is set, the chunk is also kept
+    under maxChunkBytes, which bounds the size of a chunk message on the wire.
+
+    The fetch size of the reader follows the chunk size through the fetch size consumer. Both sizes are saved in the
+    step ExecutionContext, so a restart starts from the value the previous execution had settled on.
+
+    Besides being the completion policy of the step it has to be registered as its chunk listener, read listener
+    and stream.
+*/
+public class AdaptiveChunkSizeCompletionPolicy extends SimpleCompletionPolicy
+        implements ChunkListener, ItemReadListener<Object>, ItemStream {
+
+    private static final Log logger = LogFactory.getLog(AdaptiveChunkSizeCompletionPolicy.class);
+
+    static final String CHUNK_SIZE = AdaptiveChunkSizeCompletionPolicy.class.getSimpleName() + ".chunkSize";
+    static final String FETCH_SIZE = AdaptiveChunkSizeCompletionPolicy.class.getSimpleName() + ".fetchSize";
+
+    private int minChunkSize = 100;
+    private int maxChunkSize = 10000;
+    private long targetLatency = TimeUnit.MILLISECONDS.toNanos(500);
+    private long maxChunkBytes;
+    private ToIntFunction<Object> itemSizeEstimator;
+    private IntConsumer fetchSizeConsumer = size -> {
+    };
+
+    private final ThreadLocal<long[]> chunkState = ThreadLocal.withInitial(() -> new long[3]);
+    private volatile double averageItemBytes;
+
+    public AdaptiveChunkSizeCompletionPolicy() {
+        super(1000);
+    }
+
+    public AdaptiveChunkSizeCompletionPolicy(int initialChunkSize) {
+        super(initialChunkSize);
+    }
+
+    public void setMinChunkSize(int minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
+    public void setMaxChunkSize(int maxChunkSize) {
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /*
+        How long (in milliseconds) processing, writing and committing one chunk should take.
+    */
+    public void setTargetLatency(long targetLatency) {
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+    }
+
+    /*
+        Upper bound for the estimated size of a chunk in bytes, only used with an item size estimator, 0 means none.
+    */
+    public void setMaxChunkBytes(long maxChunkBytes) {
+        this.maxChunkBytes = maxChunkBytes;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void setItemSizeEstimator(ToIntFunction<T> itemSizeEstimator) {
+        this.itemSizeEstimator = (ToIntFunction<Object>) itemSizeEstimator;
+    }
+
+    /*
+        Receives the fetch size every time the chunk size changes, typically the page size setter of the reader.
+    */
+    public void setFetchSizeConsumer(IntConsumer fetchSizeConsumer) {
+        this.fetchSizeConsumer = fetchSizeConsumer;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        Assert.isTrue(minChunkSize > 0 && minChunkSize <= maxChunkSize, "Chunk size bounds must satisfy 0 < min <= max");
+        if (executionContext.containsKey(CHUNK_SIZE)) {
+            setChunkSize(clamp(executionContext.getInt(CHUNK_SIZE)));
+            logger.info("Starting from the saved chunk size " + getChunkSize());
+        } else {
+            setChunkSize(clamp(getChunkSize()));
+        }
+        fetchSizeConsumer.accept(executionContext.getInt(FETCH_SIZE, getChunkSize()));
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putInt(CHUNK_SIZE, getChunkSize());
+        executionContext.putInt(FETCH_SIZE, getChunkSize());
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        long[] state = chunkState.get();
+        state[0] = 0;
+        state[1] = 0;
+        state[2] = 0;
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        long[] state = chunkState.get();
+        long items = state[1];
+        if (items == 0 || state[0] == 0) {
+            return;
+        }
+        long perItem = Math.max(1, (System.nanoTime() - state[0]) / items);
+        if (itemSizeEstimator != null) {
+            double bytes = (double) state[2] / items;
+            averageItemBytes = averageItemBytes == 0 ? bytes : (averageItemBytes + bytes) / 2;
+        }
+        adjust(perItem);
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        chunkState.get()[0] = 0;
+    }
+
+    @Override
+    public void beforeRead() {
+    }
+
+    @Override
+    public void afterRead(Object item) {
+        long[] state = chunkState.get();
+        state[0] = System.nanoTime();
+        state[1]++;
+        if (itemSizeEstimator != null) {
+            state[2] += itemSizeEstimator.applyAsInt(item);
+        }
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    private void adjust(long perItemNanos) {
+        int current = getChunkSize();
+        long wanted = targetLatency / perItemNanos;
+        if (maxChunkBytes > 0 && averageItemBytes > 0) {
+            wanted = Math.min(wanted, (long) (maxChunkBytes / averageItemBytes));
+        }
+        wanted = Math.max(current / 2, Math.min((long) current * 2, wanted));
+
+        int next = clamp((current + wanted) / 2);
+        if (next != current) {
+            setChunkSize(next);
+            fetchSizeConsumer.accept(next);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Chunk size " + current + " -> " + next + " at " + perItemNanos + "ns per item");
+            }
+        }
+    }
+
+    private int clamp(long size) {
+        return (int) Math.max(minChunkSize, Math.min(maxChunkSize, size));
+    }
+}
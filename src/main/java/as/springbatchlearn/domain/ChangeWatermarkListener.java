@@ -0,0 +1,128 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/*
+    Makes a step read only what was added since the last successful run of its job. The watermark is the highest key
+    of the table when a run starts: it is kept in the step's ExecutionContext, so a restart reads the same window,
+    and once the step has completed it goes into the job's ExecutionContext, where the next run finds it. The reader
+    then starts after it (KeysetPagingItemReader.setStartAfter), which is an index range scan over the new rows only.
+
+    Rows added while a run is going on may be read by it and again by the next run, so the writer has to be one that
+    overwrites (CustomerCopyItemWriter.setUpsert). A job parameter full-refresh=true, or no earlier run with a
+    watermark, makes the run read the whole table.
+*/
+public class ChangeWatermarkListener implements StepExecutionListener, InitializingBean {
+
+    private static final Log logger = LogFactory.getLog(ChangeWatermarkListener.class);
+
+    public static final String WATERMARK = "watermark";
+    public static final String FULL_REFRESH = "full-refresh";
+
+    private static final String FROM = "watermark.from";
+    private static final String TO = "watermark.to";
+    private static final int INSTANCES_PER_LOOKUP = 20;
+
+    private DataSource dataSource;
+    private JobExplorer jobExplorer;
+    private String table;
+    private String column;
+    private KeysetPagingItemReader<?> reader;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setJobExplorer(JobExplorer jobExplorer) {
+        this.jobExplorer = jobExplorer;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    /*
+        The sort key of the reader, a column whose values only ever grow.
+    */
+    public void setColumn(String column) {
+        this.column = column;
+    }
+
+    public void setReader(KeysetPagingItemReader<?> reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(dataSource, "A DataSource is required");
+        Assert.notNull(jobExplorer, "A JobExplorer is required");
+        Assert.hasText(table, "A table is required");
+        Assert.hasText(column, "A column is required");
+        Assert.notNull(reader, "A reader is required");
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        if (!executionContext.containsKey(TO)) {
+            long from = "true".equals(stepExecution.getJobParameters().getString(FULL_REFRESH))
+                    ? Long.MIN_VALUE
+                    : lastWatermark(stepExecution.getJobExecution());
+            Long max = new JdbcTemplate(dataSource).queryForObject("SELECT max(" + column + ") FROM " + table, Long.class);
+
+            executionContext.putLong(FROM, from);
+            executionContext.putLong(TO, max == null ? from : Math.max(from, max));
+        }
+        long from = executionContext.getLong(FROM);
+        if (logger.isInfoEnabled()) {
+            logger.info(stepExecution.getStepName() + " reads " + table + (from == Long.MIN_VALUE
+                    ? " in full" : " after " + column + " " + from) + ", up to " + executionContext.getLong(TO));
+        }
+        reader.setStartAfter(from);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (stepExecution.getStatus() == BatchStatus.COMPLETED) {
+            stepExecution.getJobExecution().getExecutionContext()
+                    .putLong(WATERMARK, stepExecution.getExecutionContext().getLong(TO));
+        }
+        return null;
+    }
+
+    /*
+        The watermark of the latest completed execution of the job that has one, newest instances first.
+    */
+    private long lastWatermark(JobExecution current) {
+        String jobName = current.getJobInstance().getJobName();
+        for (int start = 0; ; start += INSTANCES_PER_LOOKUP) {
+            List<JobInstance> instances = jobExplorer.getJobInstances(jobName, start, INSTANCES_PER_LOOKUP);
+            for (JobInstance instance : instances) {
+                for (JobExecution execution : jobExplorer.getJobExecutions(instance)) {
+                    if (execution.getStatus() == BatchStatus.COMPLETED
+                            && execution.getExecutionContext().containsKey(WATERMARK)) {
+                        return execution.getExecutionContext().getLong(WATERMARK);
+                    }
+                }
+            }
+            if (instances.size() < INSTANCES_PER_LOOKUP) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.List;
+
+/*
+    A processor that wants to see all the items of a chunk before it is asked to process the first of them, to do
+    for the whole chunk at once what it would otherwise do item by item (see LookupItemProcessor). beforeChunk is a
+    hint: process has to give the same result for an item it was not shown, only slower.
+
+    Who calls it: ParallelChunkProcessor, that is the slave's chunk handler, with the items of every chunk request;
+    CustomerBlockItemProcessor with the customers of every block; and ChunkAwareProcessorListener on the steps built
+    with a step builder, with the items read for the chunk.
+*/
+public interface ChunkAwareItemProcessor<I, O> extends ItemProcessor<I, O> {
+
+    void beforeChunk(List<? extends I> items);
+}
@@ -0,0 +1,91 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.item.ItemProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    A chunk-oriented step reads all the items of a chunk before it processes the first, but the ChunkProcessor a step
+    builder creates doesn't tell the processor about the chunk. This listener does: it keeps the items as they are
+    read and hands them to the processor's beforeChunk just before the first of them is processed.
+
+    The items are kept per thread, so one listener serves the concurrent steps of local-parallel and of the partition
+    workers, whose reads and processing of a chunk happen on the thread that runs the step. What a chunk that failed
+    before it got to processing leaves behind is dropped when the next chunk starts.
+*/
+public class ChunkAwareProcessorListener implements ChunkListener, ItemReadListener<Object>,
+        ItemProcessListener<Object, Object> {
+
+    private final ChunkAwareItemProcessor<Object, ?> processor;
+    private final ThreadLocal<List<Object>> read = ThreadLocal.withInitial(ArrayList::new);
+
+    @SuppressWarnings("unchecked")
+    public ChunkAwareProcessorListener(ChunkAwareItemProcessor<?, ?> processor) {
+        this.processor = (ChunkAwareItemProcessor<Object, ?>) processor;
+    }
+
+    /*
+        Registers a listener for the processor on the step, if the processor is chunk aware.
+    */
+    public static <I, O> SimpleStepBuilder<I, O> register(SimpleStepBuilder<I, O> builder, ItemProcessor<?, ?> processor) {
+        if (processor instanceof ChunkAwareItemProcessor) {
+            ChunkAwareProcessorListener listener = new ChunkAwareProcessorListener((ChunkAwareItemProcessor<?, ?>) processor);
+            builder.listener((ChunkListener) listener);
+            builder.listener((ItemReadListener<Object>) listener);
+            builder.listener((ItemProcessListener<Object, Object>) listener);
+        }
+        return builder;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        read.get().clear();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+
+    @Override
+    public void beforeRead() {
+    }
+
+    @Override
+    public void afterRead(Object item) {
+        read.get().add(item);
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    @Override
+    public void beforeProcess(Object item) {
+        List<Object> items = read.get();
+        if (!items.isEmpty()) {
+            try {
+                processor.beforeChunk(items);
+            } finally {
+                items.clear();
+            }
+        }
+    }
+
+    @Override
+    public void afterProcess(Object item, Object result) {
+    }
+
+    @Override
+    public void onProcessError(Object item, Exception e) {
+    }
+}
@@ -0,0 +1,211 @@
+package as.springbatchlearn.domain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/*
+    The meters of every stage of the chunk pipeline, registered once and shared by the components that record them:
+
+        pipeline.read / process / write     per item read and processed, per chunk written (ChunkPipelineMetricsListener)
+        pipeline.chunk / commit             per chunk, and from the end of its write to the end of its commit
+        chunking.credit.wait                master: waiting for a free slot in the window
+        chunking.send                       master: handing a chunk to the broker
+        chunking.reply                      master: from sending a chunk to receiving its reply
+        chunking.in.flight                  master: chunks sent and not yet acknowledged
+        chunking.handle                     slave: processing and writing one chunk request
+        chunking.capacity                   slave: consumers not busy with a chunk
+        chunking.slaves                     master: slaves heard from lately, that chunks can be routed to
+        chunking.redispatched               master: chunks sent again because their slave went silent
+        chunking.wire.bytes                 encoded chunk sizes, tagged with the direction
+        slave.startup                       slave: from the start of the JVM to being ready and to the first chunk
+
+    Timers keep the 50th, 95th and 99th percentile so a SimpleMeterRegistry is enough to read latencies off in a test.
+    Like Spring Batch's own metrics, the default is the global registry, which records nothing until a registry is added.
+*/
+public class ChunkPipelineMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+
+    private final Timer read;
+    private final Timer process;
+    private final Timer write;
+    private final Timer chunk;
+    private final Timer commit;
+    private final Timer creditWait;
+    private final Timer send;
+    private final Timer reply;
+    private final Timer handle;
+    private final Counter itemsRead;
+    private final Counter itemsWritten;
+    private final Counter redispatched;
+    private final DistributionSummary bytesSent;
+    private final DistributionSummary bytesReceived;
+
+    public ChunkPipelineMetrics() {
+        this(Metrics.globalRegistry);
+    }
+
+    public ChunkPipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        read = timer("pipeline.read", "Reading one item");
+        process = timer("pipeline.process", "Processing one item");
+        write = timer("pipeline.write", "Writing one chunk");
+        chunk = timer("pipeline.chunk", "One chunk, from the first read to the commit");
+        commit = timer("pipeline.commit", "From the end of a chunk's write to the end of its commit");
+        creditWait = timer("chunking.credit.wait", "Waiting for a free slot in the window of chunks in flight");
+        send = timer("chunking.send", "Sending one chunk request");
+        reply = timer("chunking.reply", "From sending a chunk request to receiving its reply");
+        handle = timer("chunking.handle", "Processing and writing one chunk request on the slave");
+
+        itemsRead = Counter.builder("pipeline.items").tag("stage", "read").register(registry);
+        itemsWritten = Counter.builder("pipeline.items").tag("stage", "write").register(registry);
+        redispatched = Counter.builder("chunking.redispatched")
+                .description("Chunks sent again because the slave they were routed to went silent")
+                .register(registry);
+
+        bytesSent = bytes("sent");
+        bytesReceived = bytes("received");
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public Timer read() {
+        return read;
+    }
+
+    public Timer process() {
+        return process;
+    }
+
+    public Timer write() {
+        return write;
+    }
+
+    public Timer chunk() {
+        return chunk;
+    }
+
+    public Timer commit() {
+        return commit;
+    }
+
+    public Timer creditWait() {
+        return creditWait;
+    }
+
+    public Timer send() {
+        return send;
+    }
+
+    public Timer reply() {
+        return reply;
+    }
+
+    public Timer handle() {
+        return handle;
+    }
+
+    public Counter itemsRead() {
+        return itemsRead;
+    }
+
+    public Counter itemsWritten() {
+        return itemsWritten;
+    }
+
+    public Counter redispatched() {
+        return redispatched;
+    }
+
+    public DistributionSummary bytesSent() {
+        return bytesSent;
+    }
+
+    public DistributionSummary bytesReceived() {
+        return bytesReceived;
+    }
+
+    public <T> void inFlight(T source, ToDoubleFunction<T> count) {
+        Gauge.builder("chunking.in.flight", source, count)
+                .description("Chunks sent and not yet acknowledged")
+                .register(registry);
+    }
+
+    public <T> void capacity(T source, ToDoubleFunction<T> capacity) {
+        Gauge.builder("chunking.capacity", source, capacity)
+                .description("Consumers of the slave not busy with a chunk")
+                .register(registry);
+    }
+
+    public <T> void slaves(T source, ToDoubleFunction<T> count) {
+        Gauge.builder("chunking.slaves", source, count)
+                .description("Slaves heard from lately, that chunks can be routed to")
+                .register(registry);
+    }
+
+    /*
+        Recorded once per phase of a slave's startup, see SlaveStartupTimer.
+    */
+    public Timer startup(String phase) {
+        return Timer.builder("slave.startup")
+                .description("From the start of the slave's JVM to a phase of its startup")
+                .tag("phase", phase)
+                .register(registry);
+    }
+
+    /*
+        One line per stage that recorded anything: count, mean, percentiles and max in milliseconds,
+        followed by the number of bytes on the wire.
+    */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Timer timer : new Timer[]{read, process, write, chunk, commit, creditWait, send, reply, handle}) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            if (snapshot.count() == 0) {
+                continue;
+            }
+            report.append(String.format("%n  %-22s count=%-9d mean=%.3fms", timer.getId().getName(), snapshot.count(),
+                    snapshot.mean(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                report.append(String.format(" p%.0f=%.3fms", percentile.percentile() * 100, percentile.value(TimeUnit.MILLISECONDS)));
+            }
+            report.append(String.format(" max=%.3fms", snapshot.max(TimeUnit.MILLISECONDS)));
+        }
+        for (DistributionSummary summary : new DistributionSummary[]{bytesSent, bytesReceived}) {
+            if (summary.count() > 0) {
+                report.append(String.format("%n  %-22s messages=%-6d total=%.0fB mean=%.0fB", "chunking.wire.bytes "
+                        + summary.getId().getTag("direction"), summary.count(), summary.totalAmount(), summary.mean()));
+            }
+        }
+        return report.toString();
+    }
+
+    private Timer timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(PERCENTILES)
+                .register(registry);
+    }
+
+    private DistributionSummary bytes(String direction) {
+        return DistributionSummary.builder("chunking.wire.bytes")
+                .description("Encoded size of one chunk request or response")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(registry);
+    }
+}
@@ -0,0 +1,140 @@
+package as.springbatchlearn.domain;
+
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Times the stages of a chunk-oriented step into ChunkPipelineMetrics and logs a report when the step ends.
+
+    Registered as a StepExecutionListener the step builder also registers it as chunk and item listener. For worker
+    steps of a partitioned step register only the item and chunk listener sides and the StepExecutionListener side
+    on the manager step, which then reports once for all partitions. Start times are kept per thread, so one instance
+    can serve a multi-threaded or partitioned step as well as the slave's chunk processor.
+*/
+public class ChunkPipelineMetricsListener implements StepExecutionListener, ChunkListener,
+        ItemReadListener<Object>, ItemProcessListener<Object, Object>, ItemWriteListener<Object> {
+
+    private static final Log logger = LogFactory.getLog(ChunkPipelineMetricsListener.class);
+
+    private final ChunkPipelineMetrics metrics;
+
+    private final ThreadLocal<long[]> started = ThreadLocal.withInitial(() -> new long[Stage.values().length]);
+
+    private enum Stage {
+        READ, PROCESS, WRITE, CHUNK, WRITTEN
+    }
+
+    public ChunkPipelineMetricsListener(ChunkPipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        long elapsed = System.currentTimeMillis() - stepExecution.getStartTime().getTime();
+        double seconds = Math.max(elapsed, 1) / 1000.0;
+
+        logger.info(String.format("%s: read %d, wrote %d items in %s, %.0f items/s, %d commits%s",
+                stepExecution.getStepName(), stepExecution.getReadCount(), stepExecution.getWriteCount(),
+                Duration.ofMillis(elapsed), stepExecution.getWriteCount() / seconds, stepExecution.getCommitCount(),
+                metrics.report()));
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        long[] times = started.get();
+        times[Stage.CHUNK.ordinal()] = System.nanoTime();
+        times[Stage.WRITTEN.ordinal()] = 0;
+    }
+
+    /*
+        Called after the chunk transaction has committed.
+    */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        long now = System.nanoTime();
+        long[] times = started.get();
+        record(metrics.chunk(), times, Stage.CHUNK, now);
+        record(metrics.commit(), times, Stage.WRITTEN, now);
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        started.get()[Stage.CHUNK.ordinal()] = 0;
+    }
+
+    @Override
+    public void beforeRead() {
+        started.get()[Stage.READ.ordinal()] = System.nanoTime();
+    }
+
+    @Override
+    public void afterRead(Object item) {
+        record(metrics.read(), started.get(), Stage.READ, System.nanoTime());
+        metrics.itemsRead().increment();
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+        started.get()[Stage.READ.ordinal()] = 0;
+    }
+
+    @Override
+    public void beforeProcess(Object item) {
+        started.get()[Stage.PROCESS.ordinal()] = System.nanoTime();
+    }
+
+    @Override
+    public void afterProcess(Object item, Object result) {
+        record(metrics.process(), started.get(), Stage.PROCESS, System.nanoTime());
+    }
+
+    @Override
+    public void onProcessError(Object item, Exception e) {
+        started.get()[Stage.PROCESS.ordinal()] = 0;
+    }
+
+    @Override
+    public void beforeWrite(List<?> items) {
+        started.get()[Stage.WRITE.ordinal()] = System.nanoTime();
+    }
+
+    @Override
+    public void afterWrite(List<?> items) {
+        long now = System.nanoTime();
+        long[] times = started.get();
+        record(metrics.write(), times, Stage.WRITE, now);
+        times[Stage.WRITTEN.ordinal()] = now;
+        metrics.itemsWritten().increment(items.size());
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<?> items) {
+        started.get()[Stage.WRITE.ordinal()] = 0;
+    }
+
+    private static void record(Timer timer, long[] times, Stage stage, long now) {
+        long start = times[stage.ordinal()];
+        if (start != 0) {
+            timer.record(now - start, TimeUnit.NANOSECONDS);
+            times[stage.ordinal()] = 0;
+        }
+    }
+}
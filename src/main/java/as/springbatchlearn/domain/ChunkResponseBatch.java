@@ -0,0 +1,50 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.integration.chunk.ChunkResponse;
+
+import java.util.List;
+
+/*
+    Several chunk responses of one slave sent back as a single message, together with how much of that slave is
+    free at the time: capacity is the number of its consumers not busy with a chunk.
+*/
+public class ChunkResponseBatch {
+
+    private final String slaveId;
+    private final int consumers;
+    private final int capacity;
+    private final List<ChunkResponse> responses;
+
+    public ChunkResponseBatch(String slaveId, int consumers, int capacity, List<ChunkResponse> responses) {
+        this.slaveId = slaveId;
+        this.consumers = consumers;
+        this.capacity = capacity;
+        this.responses = responses;
+    }
+
+    public String getSlaveId() {
+        return slaveId;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public List<ChunkResponse> getResponses() {
+        return responses;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkResponseBatch{" +
+                "slaveId='" + slaveId + '\'' +
+                ", consumers=" + consumers +
+                ", capacity=" + capacity +
+                ", responses=" + responses.size() +
+                '}';
+    }
+}
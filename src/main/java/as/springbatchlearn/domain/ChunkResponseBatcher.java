@@ -0,0 +1,162 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.IntSupplier;
+
+/*
+    Collects the chunk responses of a slave with several consumers and sends them back as one ChunkResponseBatch.
+
+    A response goes out at once when no other chunk is being handled (nothing else is coming soon) or when the batch
+    is full, otherwise it waits at most linger milliseconds for the responses of the other consumers. Every batch
+    carries the slave's current capacity, its consumers minus the ones busy with a chunk.
+
+    The consumer that handed in a response waits until the batch with it has been sent, whichever thread sends it,
+    and a failed send is thrown back at every one of them. So the request of a chunk is acknowledged to the broker
+    only once its reply is on its way, and is rejected and delivered again otherwise; the price is that a consumer
+    takes its next request up to linger milliseconds later.
+*/
+public class ChunkResponseBatcher implements MessageHandler {
+
+    private MessageChannel outputChannel;
+    private TaskScheduler taskScheduler;
+    private String slaveId;
+    private int consumers = 1;
+    private IntSupplier active = () -> 0;
+    private int maxBatchSize = 16;
+    private long linger = 5;
+
+    private final Object lock = new Object();
+    private Batch batch = new Batch();
+    private ScheduledFuture<?> pendingFlush;
+
+    public void setOutputChannel(MessageChannel outputChannel) {
+        this.outputChannel = outputChannel;
+    }
+
+    public void setTaskScheduler(TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    public void setSlaveId(String slaveId) {
+        this.slaveId = slaveId;
+    }
+
+    public void setConsumers(int consumers) {
+        this.consumers = consumers;
+    }
+
+    /*
+        The number of chunks the slave is handling right now.
+    */
+    public void setActive(IntSupplier active) {
+        this.active = active;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /*
+        How long (in milliseconds) a response may wait for others, 0 sends every response on its own.
+    */
+    public void setLinger(long linger) {
+        this.linger = linger;
+    }
+
+    @Override
+    public void handleMessage(Message<?> message) {
+        ChunkResponse response = (ChunkResponse) message.getPayload();
+
+        Batch joined;
+        Batch ready = null;
+        synchronized (lock) {
+            joined = batch;
+            joined.responses.add(response);
+            if (joined.responses.size() >= maxBatchSize || linger <= 0 || taskScheduler == null || active.getAsInt() == 0) {
+                ready = drain();
+            } else if (pendingFlush == null) {
+                pendingFlush = taskScheduler.schedule(this::flush, new Date(System.currentTimeMillis() + linger));
+            }
+        }
+        if (ready != null) {
+            send(ready);
+        }
+        await(joined, message);
+    }
+
+    public int getCapacity() {
+        return Math.max(0, consumers - active.getAsInt());
+    }
+
+    /*
+        The number of responses waiting to be sent.
+    */
+    public int getPending() {
+        synchronized (lock) {
+            return batch.responses.size();
+        }
+    }
+
+    private void flush() {
+        Batch ready;
+        synchronized (lock) {
+            pendingFlush = null;
+            ready = drain();
+        }
+        if (!ready.responses.isEmpty()) {
+            send(ready);
+        }
+    }
+
+    private Batch drain() {
+        Batch ready = batch;
+        batch = new Batch();
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+        return ready;
+    }
+
+    private void send(Batch ready) {
+        try {
+            outputChannel.send(new GenericMessage<>(new ChunkResponseBatch(slaveId, consumers, getCapacity(), ready.responses)));
+            ready.sent.complete(null);
+        } catch (RuntimeException e) {
+            ready.sent.completeExceptionally(e);
+        }
+    }
+
+    private void await(Batch joined, Message<?> message) {
+        try {
+            joined.sent.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageDeliveryException(message, "Interrupted waiting for the reply to be sent", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new MessageDeliveryException(message, "Failed to send the reply", e.getCause());
+        }
+    }
+
+    private static final class Batch {
+
+        private final List<ChunkResponse> responses = new ArrayList<>();
+        private final CompletableFuture<Void> sent = new CompletableFuture<>();
+    }
+}
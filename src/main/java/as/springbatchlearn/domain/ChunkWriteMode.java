@@ -0,0 +1,13 @@
+package as.springbatchlearn.domain;
+
+/*
+    Where the processed items of a remote chunk are written.
+
+        SLAVE   the slave writes them itself and replies with the contribution counts only
+        MASTER  the slave only processes them and sends them back, the master writes them
+*/
+public enum ChunkWriteMode {
+
+    SLAVE,
+    MASTER
+}
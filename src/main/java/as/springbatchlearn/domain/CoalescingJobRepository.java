@@ -0,0 +1,165 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    A chunk-oriented step saves its StepExecution (an UPDATE of BATCH_STEP_EXECUTION after a SELECT of the job
+    execution's status, to notice a stop) and its ExecutionContext (an UPDATE of BATCH_STEP_EXECUTION_CONTEXT) in
+    the transaction of every chunk. This JobRepository lets the delegate do that only every flushChunks chunks or
+    flushInterval milliseconds, whichever comes first, and skips it for the chunks in between; what is saved then is
+    the state after the last chunk, so nothing is saved twice and nothing is lost while the step runs.
+
+    Only updates made inside a transaction of a running step are put off, that is the chunk commits. The updates
+    the step makes outside of its chunks (when it starts, after its streams are opened, when it ends, whatever
+    the outcome) and every update of a JobExecution go straight to the delegate, so a step that ends, fails or is
+    stopped leaves the same state behind as without this class.
+
+    What it does give up is the state of the chunks since the last flush when the JVM dies in the middle of a step:
+    a restart then goes back up to flushChunks chunks and writes them again. That is only correct with a writer that
+    tolerates rows that are already there (writer.skip-written or incremental.enabled), and the counts of the step
+    then miss those chunks. A stop request is likewise noticed at the next flush rather than at the next chunk.
+*/
+public class CoalescingJobRepository implements JobRepository {
+
+    private final JobRepository delegate;
+    private final Map<Long, Progress> progress = new ConcurrentHashMap<>();
+
+    private int flushChunks = 10;
+    private long flushInterval = 1000;
+
+    public CoalescingJobRepository(JobRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setFlushChunks(int flushChunks) {
+        this.flushChunks = flushChunks;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    @Override
+    public void update(StepExecution stepExecution) {
+        Progress stepProgress = deferrable(stepExecution);
+        if (stepProgress != null && !stepProgress.due()) {
+            return;
+        }
+        if (stepProgress != null && stepProgress.contextChanged) {
+            delegate.updateExecutionContext(stepExecution);
+        }
+        delegate.update(stepExecution);
+        track(stepExecution);
+    }
+
+    @Override
+    public void updateExecutionContext(StepExecution stepExecution) {
+        Progress stepProgress = deferrable(stepExecution);
+        if (stepProgress != null) {
+            stepProgress.contextChanged = true;
+            return;
+        }
+        delegate.updateExecutionContext(stepExecution);
+    }
+
+    private Progress deferrable(StepExecution stepExecution) {
+        if (stepExecution.getId() == null || stepExecution.getStatus() != BatchStatus.STARTED
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        return progress.get(stepExecution.getId());
+    }
+
+    private void track(StepExecution stepExecution) {
+        if (stepExecution.getStatus() == BatchStatus.STARTED) {
+            progress.put(stepExecution.getId(), new Progress());
+        } else {
+            progress.remove(stepExecution.getId());
+        }
+    }
+
+    @Override
+    public boolean isJobInstanceExists(String jobName, JobParameters jobParameters) {
+        return delegate.isJobInstanceExists(jobName, jobParameters);
+    }
+
+    @Override
+    public JobInstance createJobInstance(String jobName, JobParameters jobParameters) {
+        return delegate.createJobInstance(jobName, jobParameters);
+    }
+
+    @Override
+    public JobExecution createJobExecution(JobInstance jobInstance, JobParameters jobParameters,
+                                           String jobConfigurationLocation) {
+        return delegate.createJobExecution(jobInstance, jobParameters, jobConfigurationLocation);
+    }
+
+    @Override
+    public JobExecution createJobExecution(String jobName, JobParameters jobParameters)
+            throws JobExecutionAlreadyRunningException, JobRestartException, JobInstanceAlreadyCompleteException {
+        return delegate.createJobExecution(jobName, jobParameters);
+    }
+
+    @Override
+    public void update(JobExecution jobExecution) {
+        delegate.update(jobExecution);
+    }
+
+    @Override
+    public void add(StepExecution stepExecution) {
+        delegate.add(stepExecution);
+    }
+
+    @Override
+    public void addAll(Collection<StepExecution> stepExecutions) {
+        delegate.addAll(stepExecutions);
+    }
+
+    @Override
+    public void updateExecutionContext(JobExecution jobExecution) {
+        delegate.updateExecutionContext(jobExecution);
+    }
+
+    @Override
+    public StepExecution getLastStepExecution(JobInstance jobInstance, String stepName) {
+        return delegate.getLastStepExecution(jobInstance, stepName);
+    }
+
+    @Override
+    public int getStepExecutionCount(JobInstance jobInstance, String stepName) {
+        return delegate.getStepExecutionCount(jobInstance, stepName);
+    }
+
+    @Override
+    public JobExecution getLastJobExecution(String jobName, JobParameters jobParameters) {
+        return delegate.getLastJobExecution(jobName, jobParameters);
+    }
+
+    /*
+        Chunks committed since the last flush of one step execution. A step execution runs its chunks one after the
+        other, so only the one thread running it touches its Progress.
+    */
+    private class Progress {
+
+        private final long flushedAt = System.currentTimeMillis();
+        private int chunks;
+        private boolean contextChanged;
+
+        boolean due() {
+            return ++chunks >= flushChunks || System.currentTimeMillis() - flushedAt >= flushInterval;
+        }
+    }
+}
@@ -7,13 +7,36 @@ import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.sql.DataSource;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/*
+    Splits [MIN(column), MAX(column)] into ranges and writes them as minValue/maxValue (inclusive, long) into one
+    ExecutionContext per partition.
+
+    By default the ranges are of equal width. With gaps in the column that gives partitions of very different row
+    counts, so with setSampleQuantiles(true) the cut points are taken from the actual distribution of the column
+    (the last value of every NTILE over the table, or over a TABLESAMPLE of it for big tables) and every partition
+    gets about the same number of rows. With setTargetRowsPerPartition the number of partitions follows from the row count instead
+    of the grid size.
+*/
 public class ColumnRangePartitioner implements Partitioner {
 
+    public static final String MIN_VALUE = "minValue";
+    public static final String MAX_VALUE = "maxValue";
+    /*
+        The next value the reader of a running partition reads. minValue only moves with the commits of the step,
+        the values in between are read but not written yet, so a range is never cut below this one (see
+        WorkStealingPartitionHandler). A restart goes by minValue alone.
+    */
+    public static final String READ_VALUE = "readValue";
+
     private JdbcOperations jdbcTemplate;
     private String table;
     private String column;
+    private boolean sampleQuantiles;
+    private double samplePercent;
+    private long targetRowsPerPartition;
 
     public void setTable(String table) {
         this.table = table;
@@ -27,31 +50,103 @@ public class ColumnRangePartitioner implements Partitioner {
         jdbcTemplate = new JdbcTemplate(dataSource);
     }
 
+    public void setSampleQuantiles(boolean sampleQuantiles) {
+        this.sampleQuantiles = sampleQuantiles;
+    }
+
+    /*
+        Percentage of the table (0 < percent < 100) the quantiles are computed on, 0 means the whole table.
+    */
+    public void setSamplePercent(double samplePercent) {
+        this.samplePercent = samplePercent;
+    }
+
+    /*
+        When set, the number of partitions is the row count divided by this value and the grid size is ignored.
+    */
+    public void setTargetRowsPerPartition(long targetRowsPerPartition) {
+        this.targetRowsPerPartition = targetRowsPerPartition;
+    }
+
     @Override
     public Map<String, ExecutionContext> partition(int gridSize) {
-        int min = jdbcTemplate.queryForObject("SELECT MIN(" + column + ") from " + table, Integer.class);
-        int max = jdbcTemplate.queryForObject("SELECT MAX(" + column + ") from " + table, Integer.class);
-        int targetSize = (max - min) / gridSize + 1;
+        Long min = jdbcTemplate.queryForObject("SELECT MIN(" + column + ") from " + table, Long.class);
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(" + column + ") from " + table, Long.class);
 
-        Map<String, ExecutionContext> result = new HashMap<String, ExecutionContext>();
-        int number = 0;
-        int start = min;
-        int end = start + targetSize -1;
+        Map<String, ExecutionContext> result = new HashMap<>();
+        if (min == null || max == null) {
+            return result;
+        }
+
+        int partitions = gridSize;
+        if (targetRowsPerPartition > 0) {
+            long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) from " + table, Long.class);
+            partitions = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (rows + targetRowsPerPartition - 1) / targetRowsPerPartition));
+        }
 
-        while (start <= max) {
+        long[] upperBounds = sampleQuantiles && partitions > 1
+                ? quantileBounds(partitions, max)
+                : equalWidthBounds(min, max, partitions);
+
+        int number = 0;
+        long start = min;
+        for (long end : upperBounds) {
+            if (end < start) {
+                continue;
+            }
             ExecutionContext value = new ExecutionContext();
             result.put("partition" + number, value);
 
-            if (end >= max) {
-                end = max;
+            value.putLong(MIN_VALUE, start);
+            value.putLong(MAX_VALUE, end);
+            if (end == max) {
+                break;
             }
-            value.putInt("minValue", start);
-            value.putInt("maxValue", end);
-            start += targetSize;
-            end += targetSize;
+            start = end + 1;
             number++;
         }
 
         return result;
     }
+
+    /*
+        max - min is taken as an unsigned value: a range of more than Long.MAX_VALUE values, a bigint column with
+        negative and large positive keys, doesn't fit a long otherwise.
+    */
+    private long[] equalWidthBounds(long min, long max, int partitions) {
+        long[] bounds = new long[partitions];
+        bounds[partitions - 1] = max;
+        if (partitions == 1) {
+            return bounds;
+        }
+        long span = max - min;
+        long targetSize = Long.divideUnsigned(span, partitions) + 1;
+        for (int i = 0; i < partitions - 1; i++) {
+            long offset = targetSize * (i + 1) - 1;
+            bounds[i] = Long.compareUnsigned(offset, span) >= 0 ? max : min + offset;
+        }
+        return bounds;
+    }
+
+    /*
+        The upper bound of partition i is the last value of tile i of NTILE(partitions) over the column, the last one
+        is always MAX. Tiles ending on the same value (a column with few distinct values) collapse into a single
+        partition, a sample with fewer rows than partitions gives fewer tiles.
+    */
+    private long[] quantileBounds(int partitions, long max) {
+        String source = samplePercent > 0 && samplePercent < 100
+                ? table + " TABLESAMPLE SYSTEM (" + samplePercent + ")"
+                : table;
+        String sql = "SELECT MAX(" + column + ") from (SELECT " + column + ", NTILE(" + partitions + ") OVER (ORDER BY "
+                + column + ") AS tile from " + source + ") tiles GROUP BY tile ORDER BY tile";
+
+        List<Long> lastValues = jdbcTemplate.queryForList(sql, Long.class);
+
+        long[] bounds = new long[Math.max(1, lastValues.size())];
+        for (int i = 0; i < lastValues.size(); i++) {
+            bounds[i] = lastValues.get(i);
+        }
+        bounds[bounds.length - 1] = max;
+        return bounds;
+    }
 }
@@ -0,0 +1,173 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    The contexts of our steps hold a few keys, the reader's last id, a partition's range, the chunk size, and their
+    values are numbers and Strings. The default serializer writes them as JSON with the Java type of every value,
+    through an ObjectMapper with default typing, on every chunk commit. This one writes such a context as plain text,
+    two lines per entry, the type and key then the value:
+
+        #compact
+        LKeysetPagingItemReader.lastId
+        123456
+        Sbatch.taskletType
+        org.springframework.batch.core.step.item.ChunkOrientedTasklet
+
+    A context with a value of any other type is written by the delegate, the default JSON serializer, and so is
+    anything that doesn't start with the marker read by it: contexts saved before the switch still load.
+    Like the JSON it is text, the context columns of the job repository can't hold arbitrary bytes.
+*/
+public class CompactExecutionContextSerializer implements ExecutionContextSerializer {
+
+    private static final String MARKER = "#compact\n";
+    private static final byte[] MARKER_BYTES = MARKER.getBytes(StandardCharsets.UTF_8);
+
+    private final ExecutionContextSerializer delegate;
+
+    public CompactExecutionContextSerializer() {
+        this(new Jackson2ExecutionContextStringSerializer());
+    }
+
+    public CompactExecutionContextSerializer(ExecutionContextSerializer delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void serialize(Map<String, Object> context, OutputStream out) throws IOException {
+        Assert.notNull(context, "A context is required");
+        Assert.notNull(out, "An OutputStream is required");
+
+        StringBuilder text = new StringBuilder(MARKER);
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            char type = type(entry.getValue());
+            if (type == 0) {
+                delegate.serialize(context, out);
+                return;
+            }
+            text.append(type);
+            escape(entry.getKey(), text);
+            text.append('\n');
+            escape(String.valueOf(entry.getValue()), text);
+            text.append('\n');
+        }
+        out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Map<String, Object> deserialize(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        if (!startsWithMarker(bytes)) {
+            return delegate.deserialize(new ByteArrayInputStream(bytes));
+        }
+
+        String text = new String(bytes, MARKER_BYTES.length, bytes.length - MARKER_BYTES.length, StandardCharsets.UTF_8);
+        Map<String, Object> context = new HashMap<>();
+        int position = 0;
+        while (position < text.length()) {
+            int keyEnd = text.indexOf('\n', position);
+            int valueEnd = text.indexOf('\n', keyEnd + 1);
+            if (keyEnd < 0 || valueEnd < 0) {
+                throw new IOException("Truncated execution context at offset " + position);
+            }
+            char type = text.charAt(position);
+            String key = unescape(text, position + 1, keyEnd);
+            String value = unescape(text, keyEnd + 1, valueEnd);
+            context.put(key, value(type, value));
+            position = valueEnd + 1;
+        }
+        return context;
+    }
+
+    private static char type(Object value) {
+        if (value instanceof String) {
+            return 'S';
+        }
+        if (value instanceof Long) {
+            return 'L';
+        }
+        if (value instanceof Integer) {
+            return 'I';
+        }
+        if (value instanceof Double) {
+            return 'D';
+        }
+        if (value instanceof Boolean) {
+            return 'B';
+        }
+        return 0;
+    }
+
+    private static Object value(char type, String value) throws IOException {
+        switch (type) {
+            case 'S':
+                return value;
+            case 'L':
+                return Long.valueOf(value);
+            case 'I':
+                return Integer.valueOf(value);
+            case 'D':
+                return Double.valueOf(value);
+            case 'B':
+                return Boolean.valueOf(value);
+            default:
+                throw new IOException("Unknown value type '" + type + "' in execution context");
+        }
+    }
+
+    private static boolean startsWithMarker(byte[] bytes) {
+        if (bytes.length < MARKER_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < MARKER_BYTES.length; i++) {
+            if (bytes[i] != MARKER_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+        Backslash and line feed are the only characters escaped, a line feed ends a key or a value.
+    */
+    private static void escape(String value, StringBuilder text) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\') {
+                text.append("\\\\");
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String text, int from, int to) {
+        int backslash = text.indexOf('\\', from);
+        if (backslash < 0 || backslash >= to) {
+            return text.substring(from, to);
+        }
+        StringBuilder value = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < to) {
+                char next = text.charAt(++i);
+                value.append(next == 'n' ? '\n' : next);
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+}
@@ -1,19 +1,31 @@
 package as.springbatchlearn.domain;
 
-import java.util.Date;
+import java.time.LocalDate;
+import java.util.Objects;
 
-public class Customer {
+/*
+    The birthdate is kept as its epoch day (NO_BIRTHDATE when there is none), which is what the wire format and the
+    COPY writer need anyway, so a Customer is one object plus its two names and nothing on the way from the reader to
+    the writer has to make or take apart a date object. getBirthdate() makes a LocalDate only when it is asked for.
+*/
+public final class Customer {
+
+    public static final int NO_BIRTHDATE = Integer.MIN_VALUE;
 
     private final long id;
     private final String firstName;
     private final String lastName;
-    private final Date birthdate;
+    private final int birthEpochDay;
+
+    public Customer(long id, String firstName, String lastName, LocalDate birthdate) {
+        this(id, firstName, lastName, birthdate == null ? NO_BIRTHDATE : Math.toIntExact(birthdate.toEpochDay()));
+    }
 
-    public Customer(long id, String firstName, String lastName, Date birthdate) {
+    public Customer(long id, String firstName, String lastName, int birthEpochDay) {
         this.id = id;
         this.firstName = firstName;
         this.lastName = lastName;
-        this.birthdate = birthdate;
+        this.birthEpochDay = birthEpochDay;
     }
 
     public long getId() {
@@ -28,8 +40,39 @@ public class Customer {
         return lastName;
     }
 
-    public Date getBirthdate() {
-        return birthdate;
+    public boolean hasBirthdate() {
+        return birthEpochDay != NO_BIRTHDATE;
+    }
+
+    /*
+        NO_BIRTHDATE when the customer has none.
+    */
+    public int getBirthEpochDay() {
+        return birthEpochDay;
+    }
+
+    public LocalDate getBirthdate() {
+        return hasBirthdate() ? LocalDate.ofEpochDay(birthEpochDay) : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Customer)) {
+            return false;
+        }
+        Customer customer = (Customer) o;
+        return id == customer.id
+                && birthEpochDay == customer.birthEpochDay
+                && Objects.equals(firstName, customer.firstName)
+                && Objects.equals(lastName, customer.lastName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
     }
 
     @Override
@@ -38,7 +81,7 @@ public class Customer {
                 "id=" + id +
                 ", firstName='" + firstName + '\'' +
                 ", lastName='" + lastName + '\'' +
-                ", birthdate=" + birthdate +
+                ", birthdate=" + getBirthdate() +
                 '}';
     }
 }
@@ -0,0 +1,237 @@
+package as.springbatchlearn.domain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    The customers of one chunk as a single item: their rows packed one after the other in the layout of
+    CustomerWireFormat (ids as deltas against the previous row of the block), in a buffer taken from a CustomerBlockPool.
+    Instead of one Customer, two Strings and a Date per row that live as long as the chunk, a chunk in this form is
+    one buffer and a few small objects, however many rows it holds.
+
+    The rows are read through a Cursor, a flyweight that moves over the buffer and only decodes what it is asked for:
+    getId() and getBirthEpochDay() cost nothing, the names become Strings only when getFirstName()/getLastName() are
+    called, and getFirstNameBytes()/getLastNameBytes() give their UTF-8 bytes straight from the buffer.
+
+    release() hands the buffer back to the pool, after which neither the block nor its cursors may be used.
+*/
+public class CustomerBlock {
+
+    private final ByteBuffer data;
+    private final int size;
+    private final long firstId;
+    private final long lastId;
+    private final CustomerBlockPool pool;
+    private boolean released;
+
+    private CustomerBlock(ByteBuffer data, int size, long firstId, long lastId, CustomerBlockPool pool) {
+        this.data = data;
+        this.size = size;
+        this.firstId = firstId;
+        this.lastId = lastId;
+        this.pool = pool;
+    }
+
+    public static Builder builder(CustomerBlockPool pool) {
+        return new Builder(pool);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getFirstId() {
+        return firstId;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    /*
+        The encoded rows, from the first byte of the first row to the end of the last one.
+    */
+    public ByteBuffer data() {
+        return data.asReadOnlyBuffer();
+    }
+
+    public int byteSize() {
+        return data.limit();
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public List<Customer> toCustomers() {
+        List<Customer> customers = new ArrayList<>(size);
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            customers.add(cursor.toCustomer());
+        }
+        return customers;
+    }
+
+    public synchronized void release() {
+        if (!released && pool != null) {
+            pool.release(data);
+        }
+        released = true;
+    }
+
+    @Override
+    public String toString() {
+        return "CustomerBlock{size=" + size + ", ids=" + firstId + ".." + lastId + ", bytes=" + byteSize() + '}';
+    }
+
+    public static class Builder {
+
+        private final CustomerBlockPool pool;
+        private final WireWriter writer;
+        private int size;
+        private long firstId;
+        private long previousId;
+
+        private Builder(CustomerBlockPool pool) {
+            this.pool = pool;
+            this.writer = new WireWriter(pool == null ? ByteBuffer.allocate(4096) : pool.acquire());
+        }
+
+        public Builder add(long id, String firstName, String lastName, int birthEpochDay) {
+            CustomerWireFormat.write(writer, id, firstName, lastName, birthEpochDay, previousId);
+            if (size == 0) {
+                firstId = id;
+            }
+            previousId = id;
+            size++;
+            return this;
+        }
+
+        public Builder add(Customer customer) {
+            return add(customer.getId(), customer.getFirstName(), customer.getLastName(), customer.getBirthEpochDay());
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public CustomerBlock build() {
+            ByteBuffer data = writer.buffer();
+            data.flip();
+            return new CustomerBlock(data, size, firstId, previousId, pool);
+        }
+
+        /*
+            Gives the buffer back without building a block, for a builder that ended up empty.
+        */
+        public void discard() {
+            if (pool != null) {
+                pool.release(writer.buffer());
+            }
+        }
+    }
+
+    public class Cursor {
+
+        private final WireReader reader = new WireReader(data.duplicate());
+        private int index = -1;
+        private long id;
+        private int firstNameOffset;
+        private int firstNameLength;
+        private int lastNameOffset;
+        private int lastNameLength;
+        private int birthEpochDay;
+
+        /*
+            Moves to the next row, false once past the last one.
+        */
+        public boolean next() {
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+            id = (index < 0 ? 0 : id) + reader.getZigZagLong();
+            firstNameLength = reader.getVarInt() - 1;
+            firstNameOffset = skip(firstNameLength);
+            lastNameLength = reader.getVarInt() - 1;
+            lastNameOffset = skip(lastNameLength);
+            birthEpochDay = CustomerWireFormat.epochDay(reader.getVarLong());
+            index++;
+            return true;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getFirstName() {
+            return string(firstNameOffset, firstNameLength);
+        }
+
+        public String getLastName() {
+            return string(lastNameOffset, lastNameLength);
+        }
+
+        /*
+            The UTF-8 bytes of the first name as a view on the block's buffer, null for a null name.
+        */
+        public ByteBuffer getFirstNameBytes() {
+            return bytes(firstNameOffset, firstNameLength);
+        }
+
+        public ByteBuffer getLastNameBytes() {
+            return bytes(lastNameOffset, lastNameLength);
+        }
+
+        public boolean hasBirthdate() {
+            return birthEpochDay != Customer.NO_BIRTHDATE;
+        }
+
+        /*
+            Customer.NO_BIRTHDATE when the row has none.
+        */
+        public int getBirthEpochDay() {
+            return birthEpochDay;
+        }
+
+        public LocalDate getBirthdate() {
+            return hasBirthdate() ? LocalDate.ofEpochDay(birthEpochDay) : null;
+        }
+
+        public Customer toCustomer() {
+            return new Customer(id, getFirstName(), getLastName(), birthEpochDay);
+        }
+
+        private int skip(int length) {
+            int offset = reader.position();
+            if (length > 0) {
+                reader.position(offset + length);
+            }
+            return offset;
+        }
+
+        private ByteBuffer bytes(int offset, int length) {
+            if (length < 0) {
+                return null;
+            }
+            ByteBuffer bytes = data.duplicate();
+            bytes.limit(offset + length).position(offset);
+            return bytes;
+        }
+
+        private String string(int offset, int length) {
+            if (length < 0) {
+                return null;
+            }
+            if (data.hasArray()) {
+                return new String(data.array(), data.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+            }
+            byte[] bytes = new byte[length];
+            data.duplicate().position(offset).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
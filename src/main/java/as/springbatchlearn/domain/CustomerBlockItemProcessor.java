@@ -0,0 +1,53 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.ItemProcessor;
+
+/*
+    Runs the Customer processor over every row of a block and packs what it returns into a new block, rows it
+    filters out are left out. Only one row at a time is a Customer, so whatever the size of the block the objects it
+    allocates die young. Without a delegate, or with a no-op one, the block goes through as it is. A chunk-aware
+    delegate is shown all the customers of the block first, which does turn them all into Customers at once.
+
+    The input block is released once the new one is built. That is only safe in a step that is not fault tolerant,
+    where nothing processes or writes the input of a chunk a second time.
+*/
+public class CustomerBlockItemProcessor implements ItemProcessor<CustomerBlock, CustomerBlock> {
+
+    private final ItemProcessor<Customer, Customer> delegate;
+    private final CustomerBlockPool pool;
+
+    public CustomerBlockItemProcessor(ItemProcessor<Customer, Customer> delegate, CustomerBlockPool pool) {
+        this.delegate = ItemProcessorChain.unlessNoOp(delegate);
+        this.pool = pool;
+    }
+
+    public boolean isNoOp() {
+        return delegate == null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CustomerBlock process(CustomerBlock block) throws Exception {
+        if (delegate == null) {
+            return block;
+        }
+        if (delegate instanceof ChunkAwareItemProcessor) {
+            ((ChunkAwareItemProcessor<Customer, Customer>) delegate).beforeChunk(block.toCustomers());
+        }
+        CustomerBlock.Builder builder = CustomerBlock.builder(pool);
+        CustomerBlock.Cursor cursor = block.cursor();
+        while (cursor.next()) {
+            Customer processed = delegate.process(cursor.toCustomer());
+            if (processed != null) {
+                builder.add(processed);
+            }
+        }
+        block.release();
+
+        if (builder.size() == 0) {
+            builder.discard();
+            return null;
+        }
+        return builder.build();
+    }
+}
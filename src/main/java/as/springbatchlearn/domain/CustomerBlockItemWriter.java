@@ -0,0 +1,33 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.List;
+
+/*
+    Writes blocks with the Customer writer: a CustomerCopyItemWriter takes them as they are, any other writer gets the
+    rows of one block at a time as Customers. The blocks are released once they are written, the COPY frame or the
+    batch of inserts holds its own copy of the values by then.
+*/
+public class CustomerBlockItemWriter implements ItemWriter<CustomerBlock> {
+
+    private final ItemWriter<Customer> delegate;
+
+    public CustomerBlockItemWriter(ItemWriter<Customer> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(List<? extends CustomerBlock> blocks) throws Exception {
+        for (CustomerBlock block : blocks) {
+            if (delegate instanceof CustomerCopyItemWriter) {
+                ((CustomerCopyItemWriter) delegate).write(block);
+            } else {
+                delegate.write(block.toCustomers());
+            }
+        }
+        for (CustomerBlock block : blocks) {
+            block.release();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package as.springbatchlearn.domain;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Packs every row of a page into one CustomerBlock, straight from the ResultSet, so a page never exists as a list
+    of Customers. Reads the columns by position, the select clause must be CustomerRowMapper.SELECT_CLAUSE.
+*/
+public class CustomerBlockPageAssembler implements KeysetPagingItemReader.PageAssembler<CustomerBlock> {
+
+    private static final int ID = 1;
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME = 3;
+    private static final int BIRTHDATE = 4;
+
+    private final CustomerBlock.Builder builder;
+
+    public CustomerBlockPageAssembler(CustomerBlockPool pool) {
+        this.builder = CustomerBlock.builder(pool);
+    }
+
+    @Override
+    public void addRow(ResultSet resultSet) throws SQLException {
+        builder.add(resultSet.getLong(ID),
+                resultSet.getString(FIRST_NAME),
+                resultSet.getString(LAST_NAME),
+                CustomerRowMapper.birthEpochDay(resultSet, BIRTHDATE));
+    }
+
+    @Override
+    public List<CustomerBlock> finish() {
+        if (builder.size() == 0) {
+            builder.discard();
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(builder.build());
+    }
+}
@@ -0,0 +1,60 @@
+package as.springbatchlearn.domain;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    The buffers CustomerBlocks are built in. A released buffer is kept for the next block, up to maxPooled of them;
+    when none is free a new one is allocated, so acquire() never waits. A block that is never released is not a leak,
+    its buffer is simply left to the garbage collector like any other.
+
+    Buffers are direct by default, which keeps the bytes of the customers off the heap altogether.
+*/
+public class CustomerBlockPool {
+
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    private int bufferSize = 64 * 1024;
+    private int maxPooled = 8;
+    private boolean direct = true;
+
+    /*
+        Initial capacity of a new buffer, a block that needs more grows its buffer and the bigger one is pooled.
+    */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setMaxPooled(int maxPooled) {
+        this.maxPooled = maxPooled;
+    }
+
+    public void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            free.add(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    int getPooled() {
+        return pooled.get();
+    }
+}
@@ -0,0 +1,488 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+    Replaces default Java serialization of ChunkRequest<Customer> and ChunkResponse on the wire.
+    Java serialization writes the whole StepContribution -> StepExecution -> JobExecution object graph together
+    with class descriptors for every chunk. Here we write only what the other side actually needs: the ids and names
+    the chunk processor uses for its metrics, the contribution counters and the items themselves in the compact
+    layout of CustomerWireFormat. Bodies bigger than the compression threshold are deflated as a whole block.
+
+        byte        format version
+        byte        payload type (request / response / response batch / heartbeat)
+        byte        flags (compressed)
+        [varint     uncompressed body length, only when compressed]
+        ...         body
+
+    A response is an acknowledgement: the master applies its counters to the step execution and needs nothing else
+    of the contribution, so only the counters go back (and the exit status when it is not EXECUTING). A
+    ProcessedChunkResponse carries its customers after that, in the same layout as a request. The heartbeats of the
+    slaves (SlaveHeartbeat) travel in this form too, on the control queue.
+
+    A request whose items are CustomerBlocks already holds its customers in this layout, so their bytes are copied
+    as they are; only the id of the first row of every block is re-encoded against the last id before it. On the
+    other side such a request is read like any other, as a chunk of Customers.
+
+    Anything that is not a chunk of customers falls back to the SimpleMessageConverter, so the converter can be
+    registered as the single converter of the RabbitTemplate and of the inbound adapters.
+*/
+public class CustomerChunkMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-customer-chunk";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int TYPE_REQUEST = 1;
+    private static final int TYPE_RESPONSE = 2;
+    private static final int TYPE_RESPONSE_BATCH = 3;
+    private static final int TYPE_HEARTBEAT = 4;
+    private static final int FLAG_COMPRESSED = 1;
+    private static final int RESPONSE_SUCCESSFUL = 1;
+    private static final int RESPONSE_REDELIVERED = 2;
+    private static final int RESPONSE_EXIT_STATUS = 4;
+    private static final int RESPONSE_ITEMS = 8;
+    private static final int HEADER_SIZE = 3;
+
+    private final MessageConverter delegate = new SimpleMessageConverter();
+
+    private int compressionThreshold = 4096;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private ChunkPipelineMetrics metrics = new ChunkPipelineMetrics();
+
+    /*
+        Bodies smaller than this number of bytes are sent uncompressed, a negative value disables compression.
+    */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /*
+        Where the encoded size of every chunk request and response sent and received is recorded.
+    */
+    public void setMetrics(ChunkPipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        byte[] body;
+        if (object instanceof ChunkRequest && containsOnlyCustomers(((ChunkRequest<?>) object).getItems())) {
+            body = encodeRequest((ChunkRequest<?>) object);
+        } else if (object instanceof ChunkResponse && containsOnlyCustomers((ChunkResponse) object)) {
+            body = encodeResponse((ChunkResponse) object);
+        } else if (object instanceof ChunkResponseBatch) {
+            body = encodeResponseBatch((ChunkResponseBatch) object);
+        } else if (object instanceof SlaveHeartbeat) {
+            body = encodeHeartbeat((SlaveHeartbeat) object);
+        } else {
+            return delegate.toMessage(object, messageProperties);
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        metrics.bytesSent().record(body.length);
+
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        if (!CONTENT_TYPE.equals(message.getMessageProperties().getContentType())) {
+            return delegate.fromMessage(message);
+        }
+        metrics.bytesReceived().record(message.getBody().length);
+        return decode(message.getBody());
+    }
+
+    public byte[] encodeRequest(ChunkRequest<?> request) {
+        WireWriter writer = newWriter(encodedSize(request.getItems()) + 128);
+
+        writer.putVarInt(request.getSequence());
+        writer.putVarLong(request.getJobId());
+        writeContribution(writer, request.getStepContribution());
+
+        writeItems(writer, request.getItems());
+
+        return finish(writer, TYPE_REQUEST);
+    }
+
+    public byte[] encodeResponse(ChunkResponse response) {
+        WireWriter writer = newWriter(response instanceof ProcessedChunkResponse
+                ? ((ProcessedChunkResponse<?>) response).getItems().size() * 32 + 32
+                : 32);
+        writeResponse(writer, response);
+        return finish(writer, TYPE_RESPONSE);
+    }
+
+    public byte[] encodeResponseBatch(ChunkResponseBatch batch) {
+        WireWriter writer = newWriter(batch.getResponses().size() * 32 + 32);
+
+        writer.putString(batch.getSlaveId());
+        writer.putVarInt(batch.getConsumers());
+        writer.putVarInt(batch.getCapacity());
+        writer.putVarInt(batch.getResponses().size());
+        for (ChunkResponse response : batch.getResponses()) {
+            writeResponse(writer, response);
+        }
+
+        return finish(writer, TYPE_RESPONSE_BATCH);
+    }
+
+    public byte[] encodeHeartbeat(SlaveHeartbeat heartbeat) {
+        WireWriter writer = newWriter(64);
+
+        writer.putString(heartbeat.getSlaveId());
+        writer.putString(heartbeat.getQueue());
+        writer.putVarInt(heartbeat.getConsumers());
+        writer.putVarInt(heartbeat.getActive());
+        writer.putVarLong(heartbeat.getChunks());
+        writer.putVarLong(heartbeat.getHandleNanos());
+
+        return finish(writer, TYPE_HEARTBEAT);
+    }
+
+    public Object decode(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE || bytes[0] != FORMAT_VERSION) {
+            throw new MessageConversionException("Unsupported chunk wire format version");
+        }
+        int type = bytes[1];
+        WireReader reader = (bytes[2] & FLAG_COMPRESSED) != 0
+                ? new WireReader(inflate(bytes))
+                : new WireReader(ByteBuffer.wrap(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE).slice());
+
+        switch (type) {
+            case TYPE_REQUEST:
+                return readRequest(reader);
+            case TYPE_RESPONSE:
+                return readResponse(reader);
+            case TYPE_RESPONSE_BATCH:
+                return readResponseBatch(reader);
+            case TYPE_HEARTBEAT:
+                return new SlaveHeartbeat(reader.getString(), reader.getString(), reader.getVarInt(), reader.getVarInt(),
+                        reader.getVarLong(), reader.getVarLong());
+            default:
+                throw new MessageConversionException("Unknown chunk payload type " + type);
+        }
+    }
+
+    private ChunkRequest<Customer> readRequest(WireReader reader) {
+        int sequence = reader.getVarInt();
+        long jobId = reader.getVarLong();
+        StepContribution contribution = readContribution(reader);
+
+        return new ChunkRequest<>(sequence, readItems(reader), jobId, contribution);
+    }
+
+    private void writeItems(WireWriter writer, Collection<?> items) {
+        if (!items.isEmpty() && items.iterator().next() instanceof CustomerBlock) {
+            writeBlocks(writer, items);
+            return;
+        }
+        writer.putVarInt(items.size());
+        long previousId = 0;
+        for (Object item : items) {
+            Customer customer = (Customer) item;
+            CustomerWireFormat.write(writer, customer, previousId);
+            previousId = customer.getId();
+        }
+    }
+
+    private void writeBlocks(WireWriter writer, Collection<?> blocks) {
+        int size = 0;
+        for (Object block : blocks) {
+            size += ((CustomerBlock) block).size();
+        }
+        writer.putVarInt(size);
+
+        long previousId = 0;
+        for (Object item : blocks) {
+            CustomerBlock block = (CustomerBlock) item;
+            if (block.size() == 0) {
+                continue;
+            }
+            ByteBuffer data = block.data();
+            new WireReader(data).getZigZagLong();
+            writer.putZigZagLong(block.getFirstId() - previousId);
+            writer.putBytes(data);
+            previousId = block.getLastId();
+        }
+    }
+
+    private static int encodedSize(Collection<?> items) {
+        int size = 0;
+        for (Object item : items) {
+            size += item instanceof CustomerBlock ? ((CustomerBlock) item).byteSize() : 32;
+        }
+        return size;
+    }
+
+    private List<Customer> readItems(WireReader reader) {
+        int size = reader.getVarInt();
+        List<Customer> items = new ArrayList<>(size);
+        long previousId = 0;
+        for (int i = 0; i < size; i++) {
+            Customer customer = CustomerWireFormat.read(reader, previousId);
+            items.add(customer);
+            previousId = customer.getId();
+        }
+        return items;
+    }
+
+    private void writeResponse(WireWriter writer, ChunkResponse response) {
+        StepContribution contribution = response.getStepContribution();
+        ExitStatus exitStatus = contribution.getExitStatus();
+        boolean hasExitStatus = exitStatus != null && !ExitStatus.EXECUTING.getExitCode().equals(exitStatus.getExitCode());
+        boolean hasItems = response instanceof ProcessedChunkResponse;
+
+        writer.putByte((response.isSuccessful() ? RESPONSE_SUCCESSFUL : 0)
+                | (response.isRedelivered() ? RESPONSE_REDELIVERED : 0)
+                | (hasExitStatus ? RESPONSE_EXIT_STATUS : 0)
+                | (hasItems ? RESPONSE_ITEMS : 0));
+        writer.putVarInt(response.getSequence());
+        writer.putNullableVarLong(response.getJobId());
+        writer.putVarInt(contribution.getReadCount());
+        writer.putVarInt(contribution.getWriteCount());
+        writer.putVarInt(contribution.getFilterCount());
+        writer.putVarInt(contribution.getReadSkipCount());
+        writer.putVarInt(contribution.getWriteSkipCount());
+        writer.putVarInt(contribution.getProcessSkipCount());
+        if (hasExitStatus) {
+            writer.putString(exitStatus.getExitCode());
+            writer.putString(exitStatus.getExitDescription());
+        }
+        writer.putString(response.getMessage());
+        if (hasItems) {
+            writeItems(writer, ((ProcessedChunkResponse<?>) response).getItems());
+        }
+    }
+
+    private ChunkResponseBatch readResponseBatch(WireReader reader) {
+        String slaveId = reader.getString();
+        int consumers = reader.getVarInt();
+        int capacity = reader.getVarInt();
+
+        int size = reader.getVarInt();
+        List<ChunkResponse> responses = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            responses.add(readResponse(reader));
+        }
+
+        return new ChunkResponseBatch(slaveId, consumers, capacity, responses);
+    }
+
+    private ChunkResponse readResponse(WireReader reader) {
+        int flags = reader.getByte();
+        int sequence = reader.getVarInt();
+        Long jobId = reader.getNullableVarLong();
+
+        // The master only applies the counters, the step execution around them is a placeholder
+        StepContribution contribution = new StepContribution(new StepExecution("remoteChunk", new JobExecution(jobId)));
+        readCounts(reader, contribution);
+        if ((flags & RESPONSE_EXIT_STATUS) != 0) {
+            contribution.setExitStatus(new ExitStatus(reader.getString(), reader.getString()));
+        }
+        String message = reader.getString();
+
+        if ((flags & RESPONSE_ITEMS) != 0) {
+            return new ProcessedChunkResponse<>(sequence, jobId, contribution, readItems(reader));
+        }
+        return new ChunkResponse((flags & RESPONSE_SUCCESSFUL) != 0, sequence, jobId, contribution, message,
+                (flags & RESPONSE_REDELIVERED) != 0);
+    }
+
+    /*
+        The chunk processor on the slave tags its timers with the job and step names, so a minimal
+        JobInstance -> JobExecution -> StepExecution chain is rebuilt around every contribution.
+    */
+    private void writeContribution(WireWriter writer, StepContribution contribution) {
+        StepExecution stepExecution = contribution.getStepExecution();
+        JobExecution jobExecution = stepExecution == null ? null : stepExecution.getJobExecution();
+        JobInstance jobInstance = jobExecution == null ? null : jobExecution.getJobInstance();
+
+        writer.putNullableVarLong(jobInstance == null ? null : jobInstance.getId());
+        writer.putString(jobInstance == null ? null : jobInstance.getJobName());
+        writer.putNullableVarLong(jobExecution == null ? null : jobExecution.getId());
+        writer.putString(stepExecution == null ? null : stepExecution.getStepName());
+        writer.putNullableVarLong(stepExecution == null ? null : stepExecution.getId());
+
+        writer.putVarInt(contribution.getReadCount());
+        writer.putVarInt(contribution.getWriteCount());
+        writer.putVarInt(contribution.getFilterCount());
+        writer.putVarInt(contribution.getStepSkipCount() - contribution.getSkipCount());
+        writer.putVarInt(contribution.getReadSkipCount());
+        writer.putVarInt(contribution.getWriteSkipCount());
+        writer.putVarInt(contribution.getProcessSkipCount());
+
+        ExitStatus exitStatus = contribution.getExitStatus();
+        writer.putString(exitStatus == null ? null : exitStatus.getExitCode());
+        writer.putString(exitStatus == null ? null : exitStatus.getExitDescription());
+    }
+
+    private StepContribution readContribution(WireReader reader) {
+        Long jobInstanceId = reader.getNullableVarLong();
+        String jobName = reader.getString();
+        Long jobExecutionId = reader.getNullableVarLong();
+        String stepName = reader.getString();
+        Long stepExecutionId = reader.getNullableVarLong();
+
+        int readCount = reader.getVarInt();
+        int writeCount = reader.getVarInt();
+        int filterCount = reader.getVarInt();
+        int parentSkipCount = reader.getVarInt();
+        int readSkipCount = reader.getVarInt();
+        int writeSkipCount = reader.getVarInt();
+        int processSkipCount = reader.getVarInt();
+        String exitCode = reader.getString();
+        String exitDescription = reader.getString();
+
+        JobExecution jobExecution = new JobExecution(new JobInstance(jobInstanceId, jobName == null ? "" : jobName),
+                jobExecutionId, null, null);
+        StepExecution stepExecution = new StepExecution(stepName == null ? "" : stepName, jobExecution, stepExecutionId);
+        stepExecution.setReadSkipCount(parentSkipCount);
+
+        StepContribution contribution = new StepContribution(stepExecution);
+        incrementCounts(contribution, readCount, writeCount, filterCount, readSkipCount, writeSkipCount, processSkipCount);
+        if (exitCode != null) {
+            contribution.setExitStatus(new ExitStatus(exitCode, exitDescription));
+        }
+
+        return contribution;
+    }
+
+    private void readCounts(WireReader reader, StepContribution contribution) {
+        int readCount = reader.getVarInt();
+        int writeCount = reader.getVarInt();
+        int filterCount = reader.getVarInt();
+        int readSkipCount = reader.getVarInt();
+        int writeSkipCount = reader.getVarInt();
+        int processSkipCount = reader.getVarInt();
+        incrementCounts(contribution, readCount, writeCount, filterCount, readSkipCount, writeSkipCount, processSkipCount);
+    }
+
+    private void incrementCounts(StepContribution contribution, int readCount, int writeCount, int filterCount,
+                                 int readSkipCount, int writeSkipCount, int processSkipCount) {
+        for (int i = 0; i < readCount; i++) {
+            contribution.incrementReadCount();
+        }
+        contribution.incrementWriteCount(writeCount);
+        contribution.incrementFilterCount(filterCount);
+        contribution.incrementReadSkipCount(readSkipCount);
+        for (int i = 0; i < writeSkipCount; i++) {
+            contribution.incrementWriteSkipCount();
+        }
+        for (int i = 0; i < processSkipCount; i++) {
+            contribution.incrementProcessSkipCount();
+        }
+    }
+
+    private WireWriter newWriter(int initialCapacity) {
+        WireWriter writer = new WireWriter(initialCapacity + HEADER_SIZE);
+        writer.putByte(FORMAT_VERSION);
+        writer.putByte(0);
+        writer.putByte(0);
+        return writer;
+    }
+
+    private byte[] finish(WireWriter writer, int type) {
+        byte[] bytes = writer.toByteArray();
+        bytes[1] = (byte) type;
+
+        int bodyLength = bytes.length - HEADER_SIZE;
+        if (compressionThreshold < 0 || bodyLength < compressionThreshold) {
+            return bytes;
+        }
+        return deflate(bytes, type, bodyLength);
+    }
+
+    private byte[] deflate(byte[] bytes, int type, int bodyLength) {
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            deflater.setInput(bytes, HEADER_SIZE, bodyLength);
+            deflater.finish();
+
+            WireWriter writer = new WireWriter(bodyLength / 2 + 16);
+            writer.putByte(FORMAT_VERSION);
+            writer.putByte(type);
+            writer.putByte(FLAG_COMPRESSED);
+            writer.putVarInt(bodyLength);
+
+            byte[] block = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(block);
+                writer.putBytes(block, 0, length);
+            }
+            return writer.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] bytes) {
+        WireReader header = new WireReader(bytes);
+        header.position(HEADER_SIZE);
+        int bodyLength = header.getVarInt();
+        int offset = header.position();
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] body = new byte[bodyLength];
+            int length = 0;
+            while (length < bodyLength && !inflater.finished()) {
+                int inflated = inflater.inflate(body, length, bodyLength - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != bodyLength) {
+                throw new MessageConversionException("Truncated chunk payload");
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new MessageConversionException("Corrupt chunk payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private boolean containsOnlyCustomers(ChunkResponse response) {
+        return !(response instanceof ProcessedChunkResponse)
+                || containsOnlyCustomers(((ProcessedChunkResponse<?>) response).getItems());
+    }
+
+    /*
+        Either every item is a Customer or every item is a CustomerBlock.
+    */
+    private boolean containsOnlyCustomers(Collection<?> items) {
+        Class<?> type = items.isEmpty() || !(items.iterator().next() instanceof CustomerBlock) ? Customer.class : CustomerBlock.class;
+        for (Object item : items) {
+            if (!type.isInstance(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
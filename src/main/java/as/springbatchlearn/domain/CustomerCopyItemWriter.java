@@ -0,0 +1,251 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+    Writes every chunk with a single COPY ... FROM STDIN (FORMAT binary) instead of a batch of INSERTs.
+    The whole chunk is encoded into one binary COPY frame and streamed over the connection of the chunk transaction,
+    so it commits or rolls back together with the rest of the chunk.
+
+    If the COPY fails (a duplicate key, a value that doesn't fit, ...) the statement is rolled back to a savepoint
+    and the chunk is handed to the fallback writer, which inserts item by item in a batch. That keeps the usual
+    skip and retry behaviour: the fallback is what raises the error the fault tolerant step reacts to.
+
+    A COPY that fails on a duplicate key goes to the conflict writer instead, if there is one. On a restart of remote
+    chunking the chunks at the boundary of what the failed run wrote may hold rows that are already in the table (see
+    KeysetPagingItemReader.setWrittenTable), and a conflict writer that inserts with ON CONFLICT DO NOTHING writes
+    the rest of such a chunk. Every other chunk still goes in with the plain COPY, which doesn't pay for the check.
+
+    With upsert a chunk overwrites the customers that are in the table already. COPY can't do that by itself, so the
+    frame goes into a temporary staging table of the connection instead, and one INSERT ... SELECT ... ON CONFLICT
+    DO UPDATE moves it into the table; the fallback writer then has to upsert as well.
+
+    The target table is expected to have (id bigint, firstName varchar, lastName varchar, birthdate date).
+
+    A CustomerBlock is written the same way through write(CustomerBlock), its names go into the frame as the UTF-8
+    bytes they already are in the block, without becoming Strings; only the fallback turns it into Customers.
+*/
+public class CustomerCopyItemWriter implements ItemWriter<Customer>, InitializingBean {
+
+    private static final Log logger = LogFactory.getLog(CustomerCopyItemWriter.class);
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final long POSTGRES_EPOCH_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+    private static final int FIELD_COUNT = 4;
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private DataSource dataSource;
+    private String table = "new_customer";
+    private ItemWriter<Customer> fallbackWriter;
+    private ItemWriter<Customer> conflictWriter;
+    private boolean upsert;
+
+    private String sql;
+    private String stagingTable;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    public void setFallbackWriter(ItemWriter<Customer> fallbackWriter) {
+        this.fallbackWriter = fallbackWriter;
+    }
+
+    /*
+        Writes the chunks whose COPY failed on a duplicate key, in place of the fallback writer.
+    */
+    public void setConflictWriter(ItemWriter<Customer> conflictWriter) {
+        this.conflictWriter = conflictWriter;
+    }
+
+    public void setUpsert(boolean upsert) {
+        this.upsert = upsert;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(dataSource, "A DataSource is required");
+        Assert.hasText(table, "A table is required");
+        stagingTable = upsert ? table + "_staging" : null;
+        sql = "COPY " + (upsert ? stagingTable : table) + " (id, firstName, lastName, birthdate) FROM STDIN (FORMAT binary)";
+    }
+
+    @Override
+    public void write(List<? extends Customer> items) throws Exception {
+        if (items.isEmpty()) {
+            return;
+        }
+        copyOrFallBack(encode(items), () -> items);
+    }
+
+    public void write(CustomerBlock block) throws Exception {
+        if (block.size() == 0) {
+            return;
+        }
+        copyOrFallBack(encode(block), block::toCustomers);
+    }
+
+    private void copyOrFallBack(byte[] frame, Supplier<List<? extends Customer>> items) throws Exception {
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try {
+                if (upsert) {
+                    upsert(connection, frame);
+                } else {
+                    copy(connection, frame);
+                }
+                if (savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                }
+            } catch (SQLException e) {
+                boolean conflict = conflictWriter != null && UNIQUE_VIOLATION.equals(e.getSQLState());
+                if (!conflict && fallbackWriter == null) {
+                    throw e;
+                }
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+                if (conflict) {
+                    logger.info("COPY into " + table + " hit rows that are already written, inserting the chunk "
+                            + "without them: " + e.getMessage());
+                    conflictWriter.write(items.get());
+                } else {
+                    logger.warn("COPY into " + table + " failed, falling back to batched inserts: " + e.getMessage());
+                    fallbackWriter.write(items.get());
+                }
+            }
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /*
+        The staging table lives as long as the connection and is emptied before every COPY into it. A chunk that
+        failed on a connection in autocommit (a slave's, with no savepoint to go back to) leaves its rows behind, they
+        must not go into the table with the next chunk.
+    */
+    private void upsert(Connection connection, byte[] frame) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TEMPORARY TABLE IF NOT EXISTS " + stagingTable + " (LIKE " + table + ")");
+            statement.execute("TRUNCATE " + stagingTable);
+            copy(connection, frame);
+            statement.execute("INSERT INTO " + table + " (id, firstName, lastName, birthdate)"
+                    + " SELECT id, firstName, lastName, birthdate FROM " + stagingTable
+                    + " ON CONFLICT (id) DO UPDATE SET firstName = EXCLUDED.firstName, lastName = EXCLUDED.lastName,"
+                    + " birthdate = EXCLUDED.birthdate");
+        }
+    }
+
+    private void copy(Connection connection, byte[] frame) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+        try {
+            copyIn.writeToCopy(frame, 0, frame.length);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /*
+        Binary COPY layout: signature, flags, header extension length, then per row the field count followed by
+        (length, bytes) for every field with -1 as the length of a null, and a -1 field count as the trailer.
+        All integers are big endian, a date is the number of days since 2000-01-01.
+    */
+    byte[] encode(List<? extends Customer> items) {
+        WireWriter writer = new WireWriter(ByteBuffer.allocate(items.size() * 48 + 32));
+
+        putHeader(writer);
+        for (Customer customer : items) {
+            writer.putShort(FIELD_COUNT);
+
+            writer.putInt(8);
+            writer.putLong(customer.getId());
+
+            putText(writer, customer.getFirstName());
+            putText(writer, customer.getLastName());
+            putDate(writer, customer.getBirthEpochDay());
+        }
+        writer.putShort(-1);
+
+        return writer.toByteArray();
+    }
+
+    byte[] encode(CustomerBlock block) {
+        WireWriter writer = new WireWriter(ByteBuffer.allocate(block.byteSize() + block.size() * 32 + 32));
+
+        putHeader(writer);
+        CustomerBlock.Cursor cursor = block.cursor();
+        while (cursor.next()) {
+            writer.putShort(FIELD_COUNT);
+
+            writer.putInt(8);
+            writer.putLong(cursor.getId());
+
+            putText(writer, cursor.getFirstNameBytes());
+            putText(writer, cursor.getLastNameBytes());
+            putDate(writer, cursor.getBirthEpochDay());
+        }
+        writer.putShort(-1);
+
+        return writer.toByteArray();
+    }
+
+    private void putHeader(WireWriter writer) {
+        writer.putBytes(SIGNATURE, 0, SIGNATURE.length);
+        writer.putInt(0);
+        writer.putInt(0);
+    }
+
+    private void putText(WireWriter writer, ByteBuffer utf8) {
+        if (utf8 == null) {
+            writer.putInt(-1);
+            return;
+        }
+        writer.putInt(utf8.remaining());
+        writer.putBytes(utf8);
+    }
+
+    private void putText(WireWriter writer, String value) {
+        if (value == null) {
+            writer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writer.putInt(bytes.length);
+        writer.putBytes(bytes, 0, bytes.length);
+    }
+
+    private void putDate(WireWriter writer, int epochDay) {
+        if (epochDay == Customer.NO_BIRTHDATE) {
+            writer.putInt(-1);
+            return;
+        }
+        writer.putInt(4);
+        writer.putInt((int) (epochDay - POSTGRES_EPOCH_DAY));
+    }
+}
@@ -0,0 +1,318 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/*
+    The layout of a customer file, UTF-8, one customer per line ending in LF (a CR before it is ignored):
+
+        delimited      42,Leila,Petty,1972-06-11         any single-byte delimiter, no quoting
+        fixed width    every field padded with spaces up to its width in bytes
+
+    The birthdate is yyyy-MM-dd. An empty field is a name that is null or a customer without a birthdate; in fixed
+    width the trailing spaces of a field are padding, so a name read back has lost any spaces it ended with. A name
+    with a line break, or with the delimiter of a delimited file, can't be written: format fails rather than write a
+    line that doesn't read back as the same customer.
+
+    Both directions work on the bytes of a line, without a String for the line or an array of Strings for its
+    fields: the names are the only Strings made, the id and the date go straight between their digits and a long or
+    an epoch day. A format keeps no state, one instance serves any number of readers and writers at once.
+*/
+public final class CustomerFileFormat {
+
+    private static final int FIELDS = 4;
+    private static final int DATE_LENGTH = 10;
+    private static final int MAX_LONG_LENGTH = 20;
+
+    private final byte delimiter;
+    private final int[] widths;
+    private final int lineWidth;
+
+    private CustomerFileFormat(byte delimiter, int[] widths) {
+        this.delimiter = delimiter;
+        this.widths = widths;
+        int width = 0;
+        if (widths != null) {
+            for (int fieldWidth : widths) {
+                width += fieldWidth;
+            }
+        }
+        this.lineWidth = width;
+    }
+
+    public static CustomerFileFormat delimited(char delimiter) {
+        Assert.isTrue(delimiter > ' ' && delimiter < 0x7F && delimiter != '-' && (delimiter < '0' || delimiter > '9'),
+                "The delimiter must be a printable ASCII character that can't be part of an id or a date");
+        return new CustomerFileFormat((byte) delimiter, null);
+    }
+
+    public static CustomerFileFormat fixedWidth(int idWidth, int firstNameWidth, int lastNameWidth, int birthdateWidth) {
+        Assert.isTrue(idWidth > 0 && firstNameWidth > 0 && lastNameWidth > 0, "Every field needs a positive width");
+        Assert.isTrue(birthdateWidth >= DATE_LENGTH, "The birthdate needs at least " + DATE_LENGTH + " bytes");
+        return new CustomerFileFormat((byte) 0, new int[]{idWidth, firstNameWidth, lastNameWidth, birthdateWidth});
+    }
+
+    /*
+        An upper bound of the bytes format writes for the customer, line break included.
+    */
+    public int maxLength(Customer customer) {
+        int chars = length(customer.getFirstName()) + length(customer.getLastName());
+        int delimited = MAX_LONG_LENGTH + 3 * chars + DATE_LENGTH + FIELDS;
+        return widths == null ? delimited : lineWidth + delimited;
+    }
+
+    /*
+        Writes the line of the customer to the start of line, line break included, and returns its length; line must
+        have room for maxLength(customer) bytes.
+    */
+    public int format(Customer customer, byte[] line) {
+        if (widths == null) {
+            int position = putLong(line, 0, customer.getId());
+            line[position++] = delimiter;
+            position = putName(line, position, customer.getFirstName());
+            line[position++] = delimiter;
+            position = putName(line, position, customer.getLastName());
+            line[position++] = delimiter;
+            position = putDate(line, position, customer.getBirthEpochDay());
+            line[position++] = '\n';
+            return position;
+        }
+
+        int start = 0;
+        pad(line, putLong(line, start, customer.getId()), start, widths[0], "id");
+        start += widths[0];
+        pad(line, putName(line, start, customer.getFirstName()), start, widths[1], "firstName");
+        start += widths[1];
+        pad(line, putName(line, start, customer.getLastName()), start, widths[2], "lastName");
+        start += widths[2];
+        pad(line, putDate(line, start, customer.getBirthEpochDay()), start, widths[3], "birthdate");
+        line[lineWidth] = '\n';
+        return lineWidth + 1;
+    }
+
+    /*
+        The customer of the first length bytes of line, which don't include the line break.
+    */
+    public Customer parse(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        int[] bounds = new int[FIELDS + 1];
+        if (widths == null) {
+            int field = 1;
+            for (int i = 0; i < length; i++) {
+                if (line[i] == delimiter) {
+                    if (field == FIELDS) {
+                        throw new IllegalArgumentException("More than " + FIELDS + " fields");
+                    }
+                    bounds[field++] = i + 1;
+                }
+            }
+            if (field < FIELDS) {
+                throw new IllegalArgumentException("Only " + field + " of " + FIELDS + " fields");
+            }
+            bounds[FIELDS] = length + 1;
+        } else {
+            if (length > lineWidth) {
+                throw new IllegalArgumentException("The line is longer than the " + lineWidth + " bytes of the format");
+            }
+            for (int field = 0; field < FIELDS; field++) {
+                bounds[field + 1] = bounds[field] + widths[field];
+            }
+        }
+
+        long id = parseLong(line, bounds[0], end(line, bounds, 0, length));
+        String firstName = parseName(line, bounds[1], end(line, bounds, 1, length));
+        String lastName = parseName(line, bounds[2], end(line, bounds, 2, length));
+        int birthEpochDay = parseDate(line, bounds[3], end(line, bounds, 3, length));
+        return new Customer(id, firstName, lastName, birthEpochDay);
+    }
+
+    /*
+        Where the field ends: before its delimiter, or in fixed width before the padding, a line cut short counting as
+        padding.
+    */
+    private int end(byte[] line, int[] bounds, int field, int length) {
+        if (widths == null) {
+            return bounds[field + 1] - 1;
+        }
+        int end = Math.max(bounds[field], Math.min(bounds[field + 1], length));
+        while (end > bounds[field] && line[end - 1] == ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static long parseLong(byte[] line, int from, int to) {
+        while (from < to && line[from] == ' ') {
+            from++;
+        }
+        boolean negative = from < to && line[from] == '-';
+        int start = negative ? from + 1 : from;
+        if (start == to) {
+            throw new IllegalArgumentException("The id is missing");
+        }
+        if (to - start >= MAX_LONG_LENGTH - 1) {
+            return Long.parseLong(new String(line, from, to - from, StandardCharsets.US_ASCII));
+        }
+        long value = 0;
+        for (int i = start; i < to; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("The id isn't a number");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static String parseName(byte[] line, int from, int to) {
+        return from == to ? null : new String(line, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static int parseDate(byte[] line, int from, int to) {
+        if (from == to) {
+            return Customer.NO_BIRTHDATE;
+        }
+        int epochDay = to - from == DATE_LENGTH
+                ? CustomerRowMapper.parseEpochDay(new AsciiSequence(line, from, to))
+                : Customer.NO_BIRTHDATE;
+        if (epochDay == Customer.NO_BIRTHDATE) {
+            throw new IllegalArgumentException("The birthdate isn't a yyyy-MM-dd date");
+        }
+        return epochDay;
+    }
+
+    private static int putLong(byte[] line, int position, long value) {
+        if (value < 0) {
+            line[position++] = '-';
+        } else {
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            line[i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    private int putName(byte[] line, int position, String name) {
+        if (name == null) {
+            return position;
+        }
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                return putUtf8(line, position, name);
+            }
+            checkNameChar(c, name);
+            line[position + i] = (byte) c;
+        }
+        return position + length;
+    }
+
+    private int putUtf8(byte[] line, int position, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            checkNameChar(name.charAt(i), name);
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, line, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private void checkNameChar(char c, String name) {
+        if (c == '\n' || c == '\r' || (widths == null && c == delimiter)) {
+            throw new IllegalArgumentException("The name '" + name + "' can't be written to the file unchanged");
+        }
+    }
+
+    /*
+        yyyy-MM-dd from the epoch day without a LocalDate, the civil calendar computation of LocalDate.ofEpochDay.
+    */
+    private static int putDate(byte[] line, int position, int epochDay) {
+        if (epochDay == Customer.NO_BIRTHDATE) {
+            return position;
+        }
+        long zeroDay = epochDay + 719468L;
+        long era = Math.floorDiv(zeroDay, 146097);
+        long dayOfEra = zeroDay - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("The birthdate " + LocalDate.ofEpochDay(epochDay) + " has no yyyy-MM-dd form");
+        }
+        putDigits(line, position, (int) year, 4);
+        line[position + 4] = '-';
+        putDigits(line, position + 5, month, 2);
+        line[position + 7] = '-';
+        putDigits(line, position + 8, day, 2);
+        return position + DATE_LENGTH;
+    }
+
+    private static void putDigits(byte[] line, int position, int value, int digits) {
+        for (int i = position + digits - 1; i >= position; i--) {
+            line[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static void pad(byte[] line, int end, int start, int width, String field) {
+        if (end - start > width) {
+            throw new IllegalArgumentException("The " + field + " doesn't fit into " + width + " bytes");
+        }
+        for (int i = end; i < start + width; i++) {
+            line[i] = ' ';
+        }
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /*
+        The ASCII bytes of a date as the CharSequence CustomerRowMapper.parseEpochDay reads.
+    */
+    private static final class AsciiSequence implements CharSequence {
+
+        private final byte[] bytes;
+        private final int from;
+        private final int to;
+
+        AsciiSequence(byte[] bytes, int from, int to) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[from + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiSequence(bytes, from + start, from + end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
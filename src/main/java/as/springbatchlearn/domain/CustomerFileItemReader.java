@@ -0,0 +1,233 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ReaderNotOpenException;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Reads the customers of a file in a CustomerFileFormat through a memory mapping of it, mappedWindowSize bytes at a
+    time, so a file of any size is read without a read call per line or a buffer it is copied through first. The
+    bytes of a line are looked at in the mapping, copied once into a buffer the format parses, and the reader never
+    makes a String of the line itself. A line must fit into a window, a window is moved on to the start of the line
+    that doesn't fit into it anymore.
+
+    The only state saved for restart is the byte offset of the line after the last customer handed out, a restart
+    continues right there.
+
+    As the reader of a partitioned step (setPartitioned(true)) it reads the byte range [minValue, maxValue] that
+    FileRangePartitioner put into the step's ExecutionContext, like the partitioned KeysetPagingItemReader reads a key
+    range: the lines of a range are those that start in it, wherever the range was cut. The reader keeps its progress
+    by moving minValue past the lines of every chunk committed, publishes how far it has read as readValue and
+    re-reads maxValue as it goes, so the range can be cut short while the step is running (see
+    WorkStealingPartitionHandler). Both sides lock the ExecutionContext to do so.
+
+    Empty lines are skipped. A line the format can't parse fails the read with a FlatFileParseException that gives
+    the line and its byte offset.
+*/
+public class CustomerFileItemReader extends ItemStreamSupport implements ItemStreamReader<Customer>, InitializingBean {
+
+    private static final String OFFSET = "offset";
+
+    private Resource resource;
+    private CustomerFileFormat format;
+    private int mappedWindowSize = 64 << 20;
+    private boolean partitioned;
+
+    private FileChannel channel;
+    private long fileSize;
+    private MappedByteBuffer window;
+    private ByteBuffer windowView;
+    private long windowStart;
+    private long position;
+    private byte[] line = new byte[256];
+    private ExecutionContext rangeContext;
+
+    public CustomerFileItemReader() {
+        setName(CustomerFileItemReader.class.getSimpleName());
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setFormat(CustomerFileFormat format) {
+        this.format = format;
+    }
+
+    /*
+        Bytes of the file mapped at a time, no line can be longer.
+    */
+    public void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    public void setPartitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(resource, "A Resource is required");
+        Assert.notNull(format, "A CustomerFileFormat is required");
+        Assert.isTrue(mappedWindowSize > 0, "The mapped window size must be positive");
+    }
+
+    @Override
+    public synchronized Customer read() throws Exception {
+        if (channel == null) {
+            throw new ReaderNotOpenException("The reader must be open before it can be read");
+        }
+        while (position < fileSize) {
+            long start = position;
+            long end = lineEnd(start);
+            long next = Math.min(end + 1, fileSize);
+            if (rangeContext != null) {
+                synchronized (rangeContext) {
+                    if (start > rangeContext.getLong(ColumnRangePartitioner.MAX_VALUE)) {
+                        position = fileSize;
+                        return null;
+                    }
+                    rangeContext.putLong(ColumnRangePartitioner.READ_VALUE, next);
+                }
+            }
+            position = next;
+
+            int length = copyLine(start, end);
+            if (length == 0 || (length == 1 && line[0] == '\r')) {
+                continue;
+            }
+            try {
+                return format.parse(line, length);
+            } catch (RuntimeException e) {
+                throw new FlatFileParseException(e.getMessage() + " in the line at byte " + start + " of " + resource,
+                        new String(line, 0, length, StandardCharsets.UTF_8));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            fileSize = channel.size();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + resource, e);
+        }
+        window = null;
+        windowView = null;
+        if (partitioned) {
+            rangeContext = executionContext;
+            position = Math.min(executionContext.getLong(ColumnRangePartitioner.MIN_VALUE), fileSize);
+            if (position > 0 && position < fileSize && byteAt(position - 1) != '\n') {
+                position = Math.min(lineEnd(position) + 1, fileSize);
+            }
+            synchronized (executionContext) {
+                executionContext.putLong(ColumnRangePartitioner.READ_VALUE, position);
+            }
+        } else {
+            rangeContext = null;
+            position = Math.min(executionContext.getLong(getExecutionContextKey(OFFSET), 0L), fileSize);
+        }
+    }
+
+    /*
+        Called with the commit of a chunk only, a chunk rolled back leaves the saved position where it was.
+    */
+    @Override
+    public synchronized void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        if (rangeContext != null) {
+            synchronized (rangeContext) {
+                rangeContext.putLong(ColumnRangePartitioner.MIN_VALUE, position);
+            }
+        } else {
+            executionContext.putLong(getExecutionContextKey(OFFSET), position);
+        }
+    }
+
+    /*
+        The mapping itself goes when it is garbage collected, Java has no way to unmap a MappedByteBuffer before.
+    */
+    @Override
+    public synchronized void close() throws ItemStreamException {
+        window = null;
+        windowView = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to close " + resource, e);
+            } finally {
+                channel = null;
+            }
+        }
+    }
+
+    /*
+        The offset of the LF that ends the line starting at start, the file size for a last line without one.
+    */
+    private long lineEnd(long start) {
+        if (window == null || start < windowStart || start >= windowStart + window.limit()) {
+            map(start);
+        }
+        while (true) {
+            int limit = window.limit();
+            for (int i = (int) (start - windowStart); i < limit; i++) {
+                if (window.get(i) == '\n') {
+                    return windowStart + i;
+                }
+            }
+            if (windowStart + limit == fileSize) {
+                return fileSize;
+            }
+            if (windowStart == start) {
+                throw new FlatFileParseException("The line at byte " + start + " of " + resource
+                        + " is longer than the mapped window of " + mappedWindowSize + " bytes", "");
+            }
+            map(start);
+        }
+    }
+
+    private byte byteAt(long offset) {
+        if (window == null || offset < windowStart || offset >= windowStart + window.limit()) {
+            map(offset);
+        }
+        return window.get((int) (offset - windowStart));
+    }
+
+    private int copyLine(long start, long end) {
+        int length = (int) (end - start);
+        if (line.length < length) {
+            line = new byte[Math.max(length, 2 * line.length)];
+        }
+        windowView.position((int) (start - windowStart));
+        windowView.get(line, 0, length);
+        return length;
+    }
+
+    private void map(long start) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(mappedWindowSize, fileSize - start));
+            windowView = window.duplicate();
+            windowStart = start;
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to map " + resource + " at byte " + start, e);
+        }
+    }
+}
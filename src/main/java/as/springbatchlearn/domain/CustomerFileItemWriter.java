@@ -0,0 +1,181 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/*
+    Writes customers to a file in a CustomerFileFormat through a memory mapping of it: every line is formatted into
+    one reused buffer and copied into a window of mappedWindowSize bytes mapped at the end of what is written, the
+    next window is mapped where a line doesn't fit into the current one anymore. There is no write call per chunk,
+    the pages go to the file as the operating system sees fit, or with every commit with setForceSync(true), like
+    FlatFileItemWriter.setForceSync.
+
+    Mapping a window makes the file as long as the window, so the file is cut back to what is written when the writer
+    is closed. The byte offset it has written up to is saved for restart, a restart cuts the file back to that offset
+    and goes on from there; a run that isn't a restart overwrites the file.
+
+    The lines of a chunk whose transaction rolls back are taken back: the writer goes back to the offset of the last
+    update, the next chunk overwrites them and close cuts off whatever is left of them, so a failed run leaves only
+    the lines of the chunks that committed in the file.
+*/
+public class CustomerFileItemWriter extends ItemStreamSupport implements ItemStreamWriter<Customer>, InitializingBean {
+
+    private static final String WRITTEN = "written";
+
+    private Resource resource;
+    private CustomerFileFormat format;
+    private int mappedWindowSize = 16 << 20;
+    private boolean forceSync;
+
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long position;
+    private long committed;
+    private boolean rollbackRegistered;
+    private byte[] line = new byte[256];
+
+    public CustomerFileItemWriter() {
+        setName(CustomerFileItemWriter.class.getSimpleName());
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setFormat(CustomerFileFormat format) {
+        this.format = format;
+    }
+
+    public void setMappedWindowSize(int mappedWindowSize) {
+        this.mappedWindowSize = mappedWindowSize;
+    }
+
+    /*
+        Whether every commit waits for the lines written so far to be on the disk.
+    */
+    public void setForceSync(boolean forceSync) {
+        this.forceSync = forceSync;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(resource, "A Resource is required");
+        Assert.notNull(format, "A CustomerFileFormat is required");
+        Assert.isTrue(mappedWindowSize > 0, "The mapped window size must be positive");
+    }
+
+    @Override
+    public synchronized void write(List<? extends Customer> items) throws Exception {
+        if (channel == null) {
+            throw new IllegalStateException("The writer must be open before it can write");
+        }
+        registerRollback();
+        for (Customer customer : items) {
+            int maxLength = format.maxLength(customer);
+            if (line.length < maxLength) {
+                line = new byte[Math.max(maxLength, 2 * line.length)];
+            }
+            int length = format.format(customer, line);
+            if (window == null || window.remaining() < length) {
+                map(Math.max(mappedWindowSize, length));
+            }
+            window.put(line, 0, length);
+            position += length;
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        position = executionContext.getLong(getExecutionContextKey(WRITTEN), 0L);
+        committed = position;
+        window = null;
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < position) {
+                channel.close();
+                channel = null;
+                throw new ItemStreamException("Can't restart " + resource + " at byte " + position
+                        + ", the file has only " + size);
+            }
+            channel.truncate(position);
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + resource, e);
+        }
+    }
+
+    @Override
+    public synchronized void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        if (forceSync && window != null) {
+            window.force();
+        }
+        executionContext.putLong(getExecutionContextKey(WRITTEN), position);
+        committed = position;
+    }
+
+    @Override
+    public synchronized void close() throws ItemStreamException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            window = null;
+            channel.truncate(position);
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to close " + resource, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    /*
+        Once per transaction the writer writes in. The step updates the writer before it commits a chunk, so at the
+        end of the transaction the offset of the last update is the offset of the last chunk that committed.
+    */
+    private void registerRollback() {
+        if (rollbackRegistered || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                transactionCompleted(status == STATUS_COMMITTED);
+            }
+        });
+        rollbackRegistered = true;
+    }
+
+    private synchronized void transactionCompleted(boolean commit) {
+        rollbackRegistered = false;
+        if (!commit && channel != null) {
+            position = committed;
+            window = null;
+        }
+    }
+
+    private void map(int size) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to map " + resource + " at byte " + position, e);
+        }
+    }
+}
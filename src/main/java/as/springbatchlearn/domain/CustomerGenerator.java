@@ -0,0 +1,226 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/*
+    Synthetic customers for the customer table, as many as setRows says, each one computed from the seed and its row
+    number alone: the same seed gives the same rows whatever order, thread or partition they are generated in, so a
+    load can be cut into ranges of rows that run in parallel, and a benchmark run on one database is the run on
+    another.
+
+    The ids grow with the row number. The rows come in segments of SEGMENT_ROWS, within a segment consecutive ids are
+    a stride apart, with every id placed at random within its stride. With skew 0 the stride is id-gap everywhere
+    (id-gap 1 numbers the rows densely); a higher skew spreads the strides of the segments around id-gap, a few
+    segments of sparse ids among many dense ones, which is what makes ranges of equal width hold very different row
+    counts (see ColumnRangePartitioner.setSampleQuantiles). The skew also makes some names far more common than
+    others, with 0 every name is as likely as the next. Birthdates lie between 1950 and 1990, written the way the
+    seed data has them, 'yyyy-MM-dd HH:mm:ss'.
+*/
+public class CustomerGenerator implements InitializingBean {
+
+    public static final int SEGMENT_ROWS = 1 << 16;
+
+    static final int BIRTHDATE_LENGTH = 19;
+
+    private static final String[] FIRST_NAMES = {
+            "Aladdin", "Alden", "Amena", "Anastasia", "Aphrodite", "Baxter", "Belle", "Brynne", "Charissa", "Chava",
+            "Cherokee", "Clio", "Cody", "Constance", "Doris", "Fay", "Garrett", "Gary", "Geoffrey", "Hanna",
+            "Hannah", "Hermione", "Irene", "Justina", "Katelyn", "Kennedy", "Kevyn", "Laith", "Lamar", "Lareina",
+            "Lawrence", "Leigh", "Lionel", "Magee", "Mara", "Matthew", "Merritt", "Noah", "Noble", "Noelle", "Nola",
+            "Norman", "Paul", "Quynn", "Riley", "Roth", "Samantha", "Sasha", "Sean", "Shaine", "Sybill", "Tallulah",
+            "Tanner", "Tatiana", "Tatum", "Timothy", "Tobias", "Trevor", "Vance", "Veda", "Xantha", "Xanthus", "Yen",
+            "Yoshio"};
+    private static final String[] LAST_NAMES = {
+            "Allison", "Ayers", "Barrera", "Barton", "Baxter", "Bentley", "Best", "Bishop", "Branch", "Brock",
+            "Burnett", "Campos", "Cervantes", "Chang", "Chen", "Cole", "Conley", "Curtis", "Deleon", "Dillon",
+            "Duncan", "Fulton", "Gilmore", "Hampton", "Herring", "Hill", "Holman", "Holmes", "Horn", "Hubbard",
+            "Hughes", "Jordan", "Kaufman", "Kramer", "Lang", "Levine", "Lynch", "Matthews", "Mckee", "Mckenzie",
+            "Melendez", "Mosley", "Murray", "Nieves", "Ortega", "Potts", "Rios", "Robbins", "Sanders", "Short",
+            "Stephenson", "Strong", "Terry", "Tucker", "Vaughan", "Velasquez", "Vincent", "Watkins", "Wheeler",
+            "Wilcox", "William", "Williamson", "Wolfe", "Wooten"};
+    private static final byte[][] FIRST_NAME_BYTES = utf8(FIRST_NAMES);
+    private static final byte[][] LAST_NAME_BYTES = utf8(LAST_NAMES);
+
+    private static final long FIRST_BIRTH_DAY = LocalDate.of(1950, 1, 1).toEpochDay();
+    private static final long BIRTH_DAYS = LocalDate.of(1991, 1, 1).toEpochDay() - FIRST_BIRTH_DAY;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final int JITTER = 0;
+    private static final int FIRST_NAME = 1;
+    private static final int LAST_NAME = 2;
+    private static final int BIRTH_DAY = 3;
+    private static final int BIRTH_SECOND = 4;
+
+    private long seed;
+    private long rows;
+    private long firstId = 1;
+    private int idGap = 1;
+    private double skew;
+
+    private long[] segmentFirstIds;
+    private long[] segmentStrides;
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public void setFirstId(long firstId) {
+        this.firstId = firstId;
+    }
+
+    /*
+        The mean distance between consecutive ids, 1 for no gaps at all.
+    */
+    public void setIdGap(int idGap) {
+        this.idGap = idGap;
+    }
+
+    /*
+        0 for ids spread evenly and names equally likely, around 1 for a clearly uneven spread, 2 and more for a few
+        hot spots.
+    */
+    public void setSkew(double skew) {
+        this.skew = skew;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.isTrue(rows >= 0, "rows must not be negative");
+        Assert.isTrue(idGap >= 1, "idGap must be at least 1");
+        Assert.isTrue(skew >= 0, "skew must not be negative");
+
+        int segments = (int) ((rows + SEGMENT_ROWS - 1) / SEGMENT_ROWS);
+        double[] weights = new double[segments];
+        double totalWeight = 0;
+        for (int segment = 0; segment < segments; segment++) {
+            // a uniform draw out of (1/1024, 1], to the power of -skew: 1 for skew 0, heavy tailed above
+            double draw = 1 - unit(random(~segment, 0)) * (1 - 1.0 / 1024);
+            weights[segment] = Math.pow(draw, -skew);
+            totalWeight += weights[segment];
+        }
+
+        segmentFirstIds = new long[segments];
+        segmentStrides = new long[segments];
+        long nextId = firstId;
+        for (int segment = 0; segment < segments; segment++) {
+            segmentFirstIds[segment] = nextId;
+            segmentStrides[segment] = Math.max(1, Math.round(idGap * weights[segment] * segments / totalWeight));
+            nextId = Math.addExact(nextId, Math.multiplyExact(segmentStrides[segment], SEGMENT_ROWS));
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /*
+        No row gets an id above this one.
+    */
+    public long getMaxId() {
+        if (rows == 0) {
+            return firstId - 1;
+        }
+        int segment = segmentFirstIds.length - 1;
+        return segmentFirstIds[segment] + (rows - (long) segment * SEGMENT_ROWS) * segmentStrides[segment] - 1;
+    }
+
+    public long id(long row) {
+        int segment = (int) (row / SEGMENT_ROWS);
+        long stride = segmentStrides[segment];
+        long id = segmentFirstIds[segment] + (row - (long) segment * SEGMENT_ROWS) * stride;
+        return stride == 1 ? id : id + (random(row, JITTER) >>> 1) % stride;
+    }
+
+    public String firstName(long row) {
+        return FIRST_NAMES[pick(row, FIRST_NAME, FIRST_NAMES.length)];
+    }
+
+    public String lastName(long row) {
+        return LAST_NAMES[pick(row, LAST_NAME, LAST_NAMES.length)];
+    }
+
+    public String birthdate(long row) {
+        byte[] text = new byte[BIRTHDATE_LENGTH];
+        birthdate(row, text);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    byte[] firstNameBytes(long row) {
+        return FIRST_NAME_BYTES[pick(row, FIRST_NAME, FIRST_NAME_BYTES.length)];
+    }
+
+    byte[] lastNameBytes(long row) {
+        return LAST_NAME_BYTES[pick(row, LAST_NAME, LAST_NAME_BYTES.length)];
+    }
+
+    /*
+        Writes the birthdate of the row as 'yyyy-MM-dd HH:mm:ss' into the first BIRTHDATE_LENGTH bytes of text.
+    */
+    void birthdate(long row, byte[] text) {
+        LocalDate date = LocalDate.ofEpochDay(FIRST_BIRTH_DAY + (long) (unit(random(row, BIRTH_DAY)) * BIRTH_DAYS));
+        int second = (int) (unit(random(row, BIRTH_SECOND)) * 86400);
+
+        digits(text, 0, date.getYear(), 4);
+        text[4] = '-';
+        digits(text, 5, date.getMonthValue(), 2);
+        text[7] = '-';
+        digits(text, 8, date.getDayOfMonth(), 2);
+        text[10] = ' ';
+        digits(text, 11, second / 3600, 2);
+        text[13] = ':';
+        digits(text, 14, second / 60 % 60, 2);
+        text[16] = ':';
+        digits(text, 17, second % 60, 2);
+    }
+
+    /*
+        Index into a list of n names, the lower ones more likely the higher the skew.
+    */
+    private int pick(long row, int field, int n) {
+        double draw = unit(random(row, field));
+        return (int) (n * (skew == 0 ? draw : Math.pow(draw, 1 + skew)));
+    }
+
+    /*
+        A 64-bit value for a field of a row, SplitMix64's finalizer over the seed, the row and the field.
+    */
+    private long random(long row, int field) {
+        return mix(mix(seed + row * GOLDEN_GAMMA) + (field + 1) * GOLDEN_GAMMA);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+        [0, 1) out of the upper 53 bits.
+    */
+    private static double unit(long random) {
+        return (random >>> 11) * 0x1.0p-53;
+    }
+
+    private static void digits(byte[] text, int offset, int value, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            text[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static byte[][] utf8(String[] names) {
+        byte[][] bytes = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            bytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+}
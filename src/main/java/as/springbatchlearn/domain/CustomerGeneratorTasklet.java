@@ -0,0 +1,196 @@
+package as.springbatchlearn.domain;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Loads the rows [fromRow, toRow) of a CustomerGenerator, the range in the step's ExecutionContext (see partition),
+    into the customer table, rowsPerTransaction rows per transaction. Where it got to goes into the ExecutionContext
+    with every transaction, so a restart goes on with the first row that isn't in the table; the rows being the same
+    for the same seed, the table ends up the same as if the load had never stopped.
+
+    With copy (the default, PostgreSQL only) the rows of a transaction stream through one binary COPY, in pieces of
+    COPY_BUFFER_SIZE bytes: nothing but the piece being filled is held in memory, and no SQL text is parsed at all.
+    Without it they go in as batched INSERTs of batchSize rows, which works on any database.
+
+    The COPY writes the id as a PostgreSQL integer, the type of customer.id in schema-data-postgresql.sql.
+
+    The tasklet keeps no state of its own, one instance serves every partition of the load at once.
+*/
+public class CustomerGeneratorTasklet implements Tasklet, InitializingBean {
+
+    public static final String FROM_ROW = "fromRow";
+    public static final String TO_ROW = "toRow";
+    public static final String NEXT_ROW = "nextRow";
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final int FIELD_COUNT = 4;
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private DataSource dataSource;
+    private CustomerGenerator generator;
+    private String table = "customer";
+    private int rowsPerTransaction = 100_000;
+    private int batchSize = 5000;
+    private boolean copy = true;
+
+    private String copySql;
+    private String insertSql;
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setGenerator(CustomerGenerator generator) {
+        this.generator = generator;
+    }
+
+    public void setTable(String table) {
+        this.table = table;
+    }
+
+    public void setRowsPerTransaction(int rowsPerTransaction) {
+        this.rowsPerTransaction = rowsPerTransaction;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setCopy(boolean copy) {
+        this.copy = copy;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(dataSource, "A DataSource is required");
+        Assert.notNull(generator, "A CustomerGenerator is required");
+        Assert.hasText(table, "A table is required");
+        Assert.isTrue(rowsPerTransaction > 0, "rowsPerTransaction must be positive");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+        Assert.state(!copy || generator.getMaxId() <= Integer.MAX_VALUE,
+                "The generated ids go up to " + generator.getMaxId() + ", more than an integer id column holds");
+
+        copySql = "COPY " + table + " (id, firstName, lastName, birthdate) FROM STDIN (FORMAT binary)";
+        insertSql = "INSERT INTO " + table + " (id, firstName, lastName, birthdate) VALUES (?, ?, ?, ?)";
+    }
+
+    /*
+        Cuts all the rows of the generator into gridSize ranges of about the same size.
+    */
+    public static Map<String, ExecutionContext> partition(long rows, int gridSize) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        long fromRow = 0;
+        for (int i = 0; i < gridSize; i++) {
+            long toRow = rows * (i + 1) / gridSize;
+            ExecutionContext context = new ExecutionContext();
+            context.putLong(FROM_ROW, fromRow);
+            context.putLong(TO_ROW, toRow);
+            partitions.put("partition" + i, context);
+            fromRow = toRow;
+        }
+        return partitions;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+        long toRow = executionContext.getLong(TO_ROW);
+        long fromRow = executionContext.getLong(NEXT_ROW, executionContext.getLong(FROM_ROW));
+        long endRow = Math.min(toRow, fromRow + rowsPerTransaction);
+
+        if (fromRow < endRow) {
+            Connection connection = DataSourceUtils.getConnection(dataSource);
+            try {
+                if (copy) {
+                    copy(connection, fromRow, endRow);
+                } else {
+                    insert(connection, fromRow, endRow);
+                }
+            } finally {
+                DataSourceUtils.releaseConnection(connection, dataSource);
+            }
+            contribution.incrementWriteCount((int) (endRow - fromRow));
+        }
+        executionContext.putLong(NEXT_ROW, endRow);
+        return RepeatStatus.continueIf(endRow < toRow);
+    }
+
+    /*
+        Binary COPY layout as in CustomerCopyItemWriter, with the id as an int4 and the birthdate as varchar text.
+    */
+    private void copy(Connection connection, long fromRow, long endRow) throws SQLException {
+        WireWriter writer = new WireWriter(COPY_BUFFER_SIZE + 256);
+        byte[] birthdate = new byte[CustomerGenerator.BIRTHDATE_LENGTH];
+
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+        try {
+            writer.putBytes(SIGNATURE, 0, SIGNATURE.length);
+            writer.putInt(0);
+            writer.putInt(0);
+            for (long row = fromRow; row < endRow; row++) {
+                writer.putShort(FIELD_COUNT);
+
+                writer.putInt(4);
+                writer.putInt((int) generator.id(row));
+
+                byte[] firstName = generator.firstNameBytes(row);
+                writer.putInt(firstName.length);
+                writer.putBytes(firstName, 0, firstName.length);
+
+                byte[] lastName = generator.lastNameBytes(row);
+                writer.putInt(lastName.length);
+                writer.putBytes(lastName, 0, lastName.length);
+
+                generator.birthdate(row, birthdate);
+                writer.putInt(birthdate.length);
+                writer.putBytes(birthdate, 0, birthdate.length);
+
+                if (writer.position() >= COPY_BUFFER_SIZE) {
+                    copyIn.writeToCopy(writer.buffer().array(), 0, writer.position());
+                    writer.clear();
+                }
+            }
+            writer.putShort(-1);
+            copyIn.writeToCopy(writer.buffer().array(), 0, writer.position());
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void insert(Connection connection, long fromRow, long endRow) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+            for (long row = fromRow; row < endRow; row++) {
+                statement.setLong(1, generator.id(row));
+                statement.setString(2, generator.firstName(row));
+                statement.setString(3, generator.lastName(row));
+                statement.setString(4, generator.birthdate(row));
+                statement.addBatch();
+                if ((row - fromRow + 1) % batchSize == 0) {
+                    statement.executeBatch();
+                }
+            }
+            if ((endRow - fromRow) % batchSize != 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+}
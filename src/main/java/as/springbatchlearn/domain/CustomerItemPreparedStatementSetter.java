@@ -0,0 +1,39 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.database.ItemPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/*
+    Binds a Customer straight to the positional parameters of INSERT_SQL, without the BeanWrapper that
+    BeanPropertyItemSqlParameterSourceProvider creates for every item.
+*/
+public class CustomerItemPreparedStatementSetter implements ItemPreparedStatementSetter<Customer> {
+
+    public static final String INSERT_SQL = "INSERT INTO %s (id, firstName, lastName, birthdate) VALUES (?, ?, ?, ?)";
+
+    /*
+        INSERT_SQL for a table that may already hold some of the rows, they are left as they are.
+    */
+    public static final String INSERT_IF_ABSENT_SQL = INSERT_SQL + " ON CONFLICT (id) DO NOTHING";
+
+    /*
+        INSERT_SQL that overwrites the row of a customer that is in the table already.
+    */
+    public static final String UPSERT_SQL = INSERT_SQL + " ON CONFLICT (id) DO UPDATE SET firstName = EXCLUDED.firstName,"
+            + " lastName = EXCLUDED.lastName, birthdate = EXCLUDED.birthdate";
+
+    @Override
+    public void setValues(Customer item, PreparedStatement ps) throws SQLException {
+        ps.setLong(1, item.getId());
+        ps.setString(2, item.getFirstName());
+        ps.setString(3, item.getLastName());
+        if (item.hasBirthdate()) {
+            ps.setObject(4, item.getBirthdate(), Types.DATE);
+        } else {
+            ps.setNull(4, Types.DATE);
+        }
+    }
+}
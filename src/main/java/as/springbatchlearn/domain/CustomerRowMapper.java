@@ -2,16 +2,103 @@ package as.springbatchlearn.domain;
 
 import org.springframework.jdbc.core.RowMapper;
 
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
+/*
+    Maps by column position, which spares the driver a name lookup for every column of every row.
+    The select clause must therefore list the columns as SELECT_CLAUSE does.
+*/
 public class CustomerRowMapper implements RowMapper<Customer> {
 
+    public static final String SELECT_CLAUSE = "id, firstName, lastName, birthdate";
+
+    private static final int ID = 1;
+    private static final int FIRST_NAME = 2;
+    private static final int LAST_NAME = 3;
+    private static final int BIRTHDATE = 4;
+
+    private static final int DAYS_0000_TO_1970 = 719528;
+
     @Override
     public Customer mapRow(ResultSet resultSet, int i) throws SQLException {
-        return new Customer(resultSet.getLong("id"),
-                resultSet.getString("firstName"),
-                resultSet.getString("lastName"),
-                resultSet.getDate("birthdate"));
+        return new Customer(resultSet.getLong(ID),
+                resultSet.getString(FIRST_NAME),
+                resultSet.getString(LAST_NAME),
+                birthEpochDay(resultSet, BIRTHDATE));
+    }
+
+    /*
+        customer.birthdate is a varchar ('1952-08-16 12:34:53'), so getDate() has the driver parse the whole timestamp
+        into a Calendar only for us to throw the time away. The date part is read here from the String instead, and
+        only a value that doesn't start with yyyy-MM-dd goes through getDate().
+    */
+    static int birthEpochDay(ResultSet resultSet, int column) throws SQLException {
+        String value = resultSet.getString(column);
+        if (value == null) {
+            return Customer.NO_BIRTHDATE;
+        }
+        int epochDay = parseEpochDay(value);
+        if (epochDay != Customer.NO_BIRTHDATE) {
+            return epochDay;
+        }
+        Date date = resultSet.getDate(column);
+        return date == null ? Customer.NO_BIRTHDATE : (int) date.toLocalDate().toEpochDay();
+    }
+
+    /*
+        LocalDate.parse(value.substring(0, 10)).toEpochDay() without the LocalDate and the substring,
+        NO_BIRTHDATE when the value doesn't start with a valid yyyy-MM-dd.
+    */
+    static int parseEpochDay(CharSequence value) {
+        if (value.length() < 10 || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || (value.length() > 10 && value.charAt(10) != ' ' && value.charAt(10) != 'T')) {
+            return Customer.NO_BIRTHDATE;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return Customer.NO_BIRTHDATE;
+        }
+
+        long days = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        days += (367 * month - 362) / 12;
+        days += day - 1;
+        if (month > 2) {
+            days -= isLeapYear(year) ? 1 : 2;
+        }
+        return (int) (days - DAYS_0000_TO_1970);
+    }
+
+    private static int digits(CharSequence value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
     }
 }
@@ -0,0 +1,60 @@
+package as.springbatchlearn.domain;
+
+/*
+    Compact layout of a single Customer:
+
+        id          zig-zag varint, delta against the id of the previous item in the same block
+        firstName   varint length (+1, 0 = null) followed by UTF-8 bytes
+        lastName    varint length (+1, 0 = null) followed by UTF-8 bytes
+        birthdate   zig-zag varint epoch day (+1, 0 = null)
+
+    Items coming from the reader are ordered by id, so the delta is usually a single byte.
+*/
+public final class CustomerWireFormat {
+
+    private CustomerWireFormat() {
+    }
+
+    public static void write(WireWriter writer, Customer customer, long previousId) {
+        write(writer, customer.getId(), customer.getFirstName(), customer.getLastName(), customer.getBirthEpochDay(), previousId);
+    }
+
+    /*
+        The same layout from the column values, for rows that go into a CustomerBlock without becoming a Customer.
+    */
+    public static void write(WireWriter writer, long id, String firstName, String lastName, int birthEpochDay, long previousId) {
+        writer.putZigZagLong(id - previousId);
+        writer.putString(firstName);
+        writer.putString(lastName);
+        writeDate(writer, birthEpochDay);
+    }
+
+    public static Customer read(WireReader reader, long previousId) {
+        long id = previousId + reader.getZigZagLong();
+        String firstName = reader.getString();
+        String lastName = reader.getString();
+        int birthEpochDay = epochDay(reader.getVarLong());
+
+        return new Customer(id, firstName, lastName, birthEpochDay);
+    }
+
+    private static void writeDate(WireWriter writer, int birthEpochDay) {
+        if (birthEpochDay == Customer.NO_BIRTHDATE) {
+            writer.putVarLong(0);
+            return;
+        }
+        long epochDay = birthEpochDay;
+        writer.putVarLong(((epochDay << 1) ^ (epochDay >> 63)) + 1);
+    }
+
+    /*
+        The epoch day of a birthdate as it is on the wire, NO_BIRTHDATE for the 0 of a null date.
+    */
+    static int epochDay(long value) {
+        if (value == 0) {
+            return Customer.NO_BIRTHDATE;
+        }
+        value--;
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+}
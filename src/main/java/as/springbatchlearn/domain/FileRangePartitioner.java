@@ -0,0 +1,56 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    Cuts a file into byte ranges of about the same size and writes them as minValue/maxValue (inclusive, long) into
+    one ExecutionContext per partition, the keys ColumnRangePartitioner uses for its key ranges. The cuts don't have
+    to fall between lines: the partitioned CustomerFileItemReader reads the lines that start in its range, so a line
+    cut in two belongs to the range its first byte is in. Ranges are at least minRangeSize bytes, a small file makes
+    fewer partitions than the grid size.
+*/
+public class FileRangePartitioner implements Partitioner {
+
+    private Resource resource;
+    private long minRangeSize = 1 << 20;
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setMinRangeSize(long minRangeSize) {
+        this.minRangeSize = minRangeSize;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        long size;
+        try {
+            size = resource.contentLength();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the size of " + resource, e);
+        }
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+        if (size == 0) {
+            return result;
+        }
+        long partitions = Math.max(1, Math.min(gridSize, size / Math.max(1, minRangeSize)));
+        long rangeSize = (size + partitions - 1) / partitions;
+        int number = 0;
+        for (long start = 0; start < size; start += rangeSize) {
+            ExecutionContext value = new ExecutionContext();
+            result.put("partition" + number++, value);
+
+            value.putLong(ColumnRangePartitioner.MIN_VALUE, start);
+            value.putLong(ColumnRangePartitioner.MAX_VALUE, Math.min(size, start + rangeSize) - 1);
+        }
+        return result;
+    }
+}
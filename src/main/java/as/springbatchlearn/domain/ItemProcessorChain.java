@@ -0,0 +1,80 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.batch.item.support.PassThroughItemProcessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Puts processors together the way CompositeItemProcessor does, but leaves out the stages that do nothing (null,
+    a PassThroughItemProcessor or a CustomerBlockItemProcessor around one), so a chain of one stage is that stage and
+    a chain of none is a PassThroughItemProcessor. A step that is given a no-op processor should not call it at all:
+    unlessNoOp(processor) is null for one, and a chunk processor without a processor passes every item through
+    without the per-item call and the listener round trip around it.
+
+    A chain of several stages is chunk aware: it shows the items of a chunk to each of its ChunkAwareItemProcessor
+    stages, all of them the items as they come into the chain.
+*/
+public final class ItemProcessorChain {
+
+    private ItemProcessorChain() {
+    }
+
+    @SafeVarargs
+    public static <T> ItemProcessor<T, T> of(ItemProcessor<T, T>... stages) {
+        return of(Arrays.asList(stages));
+    }
+
+    public static <T> ItemProcessor<T, T> of(List<? extends ItemProcessor<T, T>> stages) {
+        List<ItemProcessor<T, T>> effective = new ArrayList<>(stages.size());
+        for (ItemProcessor<T, T> stage : stages) {
+            if (!isNoOp(stage)) {
+                effective.add(stage);
+            }
+        }
+        if (effective.isEmpty()) {
+            return new PassThroughItemProcessor<>();
+        }
+        if (effective.size() == 1) {
+            return effective.get(0);
+        }
+        return new Composite<>(effective);
+    }
+
+    public static boolean isNoOp(ItemProcessor<?, ?> processor) {
+        return processor == null || processor instanceof PassThroughItemProcessor
+                || processor instanceof CustomerBlockItemProcessor && ((CustomerBlockItemProcessor) processor).isNoOp();
+    }
+
+    /*
+        The processor, or null when it is a no-op, for the processor(..) of a step builder.
+    */
+    public static <I, O> ItemProcessor<I, O> unlessNoOp(ItemProcessor<I, O> processor) {
+        return isNoOp(processor) ? null : processor;
+    }
+
+    private static final class Composite<T> extends CompositeItemProcessor<T, T> implements ChunkAwareItemProcessor<T, T> {
+
+        private final List<ChunkAwareItemProcessor<T, ?>> chunkAwareStages = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        Composite(List<ItemProcessor<T, T>> stages) {
+            setDelegates(stages);
+            for (ItemProcessor<T, T> stage : stages) {
+                if (stage instanceof ChunkAwareItemProcessor) {
+                    chunkAwareStages.add((ChunkAwareItemProcessor<T, ?>) stage);
+                }
+            }
+        }
+
+        @Override
+        public void beforeChunk(List<? extends T> items) {
+            for (ChunkAwareItemProcessor<T, ?> stage : chunkAwareStages) {
+                stage.beforeChunk(items);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.integration.chunk.ChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    For slaves that process but don't write. The chunk processor of the delegate handler is given getItemWriter()
+    as its writer, which only keeps the items written on the current thread; once the delegate has handled the chunk
+    they are taken back and sent to the master with its successful response in a ProcessedChunkResponse.
+*/
+public class ItemReturningChunkHandler<T> implements ChunkHandler<T> {
+
+    private final ThreadLocal<List<T>> written = ThreadLocal.withInitial(ArrayList::new);
+
+    private ChunkHandler<T> delegate;
+
+    public void setDelegate(ChunkHandler<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    public ItemWriter<T> getItemWriter() {
+        return items -> written.get().addAll(items);
+    }
+
+    @Override
+    public ChunkResponse handleChunk(ChunkRequest<T> chunk) throws Exception {
+        ChunkResponse response;
+        try {
+            response = delegate.handleChunk(chunk);
+        } catch (Exception e) {
+            written.remove();
+            throw e;
+        }
+        List<T> items = written.get();
+        written.remove();
+
+        if (!response.isSuccessful()) {
+            return response;
+        }
+        return new ProcessedChunkResponse<>(response.getSequence(), response.getJobId(), response.getStepContribution(),
+                items.isEmpty() ? Collections.emptyList() : items);
+    }
+}
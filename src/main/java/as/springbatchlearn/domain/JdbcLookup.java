@@ -0,0 +1,119 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/*
+    Looks up rows of a table by key, any number of keys with one query per maxKeysPerQuery keys:
+
+        SELECT <selectClause> FROM <fromClause> WHERE <keyColumn> IN (?, ?, ...)
+
+    The number of placeholders is rounded up to the next power of two (the last key filling the rest), so however
+    many keys a chunk has the database sees only a handful of different statements and plans them once. The key of a
+    row is taken from what the row mapper makes of it, like the sort key of KeysetPagingItemReader.
+*/
+public class JdbcLookup<K, V> implements Function<Set<K>, Map<K, V>>, InitializingBean {
+
+    private static final int MIN_PLACEHOLDERS = 8;
+
+    private JdbcTemplate jdbcTemplate;
+    private String selectClause;
+    private String fromClause;
+    private String keyColumn;
+    private RowMapper<V> rowMapper;
+    private Function<V, K> keyExtractor;
+    private int maxKeysPerQuery = 1024;
+
+    public void setDataSource(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public void setSelectClause(String selectClause) {
+        this.selectClause = selectClause;
+    }
+
+    public void setFromClause(String fromClause) {
+        this.fromClause = fromClause;
+    }
+
+    public void setKeyColumn(String keyColumn) {
+        this.keyColumn = keyColumn;
+    }
+
+    public void setRowMapper(RowMapper<V> rowMapper) {
+        this.rowMapper = rowMapper;
+    }
+
+    public void setKeyExtractor(Function<V, K> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    public void setMaxKeysPerQuery(int maxKeysPerQuery) {
+        this.maxKeysPerQuery = maxKeysPerQuery;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(jdbcTemplate, "A DataSource is required");
+        Assert.hasText(selectClause, "A select clause is required");
+        Assert.hasText(fromClause, "A from clause is required");
+        Assert.hasText(keyColumn, "A key column is required");
+        Assert.notNull(rowMapper, "A RowMapper is required");
+        Assert.notNull(keyExtractor, "A key extractor is required");
+        Assert.isTrue(maxKeysPerQuery > 0, "maxKeysPerQuery must be positive");
+    }
+
+    @Override
+    public Map<K, V> apply(Set<K> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<K, V> values = new HashMap<>();
+        List<K> batch = new ArrayList<>(Math.min(keys.size(), maxKeysPerQuery));
+        for (K key : keys) {
+            batch.add(key);
+            if (batch.size() == maxKeysPerQuery) {
+                query(batch, values);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            query(batch, values);
+        }
+        return values;
+    }
+
+    private void query(List<K> keys, Map<K, V> values) {
+        int placeholders = Math.min(maxKeysPerQuery,
+                Math.max(MIN_PLACEHOLDERS, Integer.highestOneBit(keys.size() - 1) << 1));
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(selectClause)
+                .append(" FROM ").append(fromClause)
+                .append(" WHERE ").append(keyColumn).append(" IN (?");
+        for (int i = 1; i < placeholders; i++) {
+            sql.append(", ?");
+        }
+        sql.append(')');
+
+        K last = keys.get(keys.size() - 1);
+        jdbcTemplate.query(sql.toString(), statement -> {
+            for (int i = 0; i < placeholders; i++) {
+                statement.setObject(i + 1, i < keys.size() ? keys.get(i) : last);
+            }
+        }, resultSet -> {
+            V value = rowMapper.mapRow(resultSet, 0);
+            values.put(keyExtractor.apply(value), value);
+        });
+    }
+}
@@ -0,0 +1,404 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/*
+    Reads a table page by page with keyset pagination:
+
+        SELECT ... FROM ... WHERE sortKey > :lastKey AND sortKey <= :maxKey ORDER BY sortKey LIMIT :pageSize
+
+    Every page is an index range scan that starts where the previous one ended, no matter how deep into the table we
+    are. Pages are fetched on a background thread into a bounded buffer of prefetchPages pages, so the chunk loop
+    normally finds the next page already waiting. The only state saved for restart is the key of the last item
+    handed out, a restart continues right after it. A run that isn't a restart starts after startAfter, the whole
+    table by default.
+
+    As the reader of a partitioned step (setPartitioned(true)) it reads only the range [minValue, maxValue] that
+    ColumnRangePartitioner put into the step's ExecutionContext. It then keeps its progress in that range itself, by
+    moving minValue past the items of every chunk committed, and it re-reads maxValue as it goes, so the range can be
+    cut short while the step is running (see WorkStealingPartitionHandler). What it has read beyond minValue, the
+    items of the chunk in progress, it publishes as readValue, which a range is never cut below. Both sides lock the
+    ExecutionContext to do so.
+
+    With a PageAssembler instead of a RowMapper the rows of a page are handed to the assembler, which turns them into
+    the items of that page, e.g. a single CustomerBlock for the whole page. The key extractor then gives the key of
+    the last row an item stands for. A page that ends in the middle of an item can't be resumed inside it, so an
+    assembler can't be combined with a partitioned reader, whose range may be cut anywhere.
+
+    With a written table (setWrittenTable) a restart doesn't start right after the saved key but at the first row
+    that isn't in that table yet. The key is saved with the master's commit, while with remote chunking the slaves
+    commit the chunks they write on their own: the chunks still in flight at that commit hold keys at or below the
+    saved key, and may never have been written. So the search starts from a low-water mark instead, the highest key
+    up to which every chunk has been acknowledged, which the chunk writer saves next to the saved key under
+    acknowledgedKey (see WindowedChunkMessageChannelItemWriter.ACKNOWLEDGED). The first row after it that has no
+    row of the same key in the written table is looked up, and reading resumes there: the rows skipped are those
+    written for sure, what is read again is what may have been lost. Rows after that gap may be written as well,
+    which the writer has to tolerate (see CustomerCopyItemWriter.setConflictWriter). A partitioned reader doesn't
+    need this, its range moves with the commits of the step that writes it.
+*/
+public class KeysetPagingItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T>, InitializingBean {
+
+    private static final Log logger = LogFactory.getLog(KeysetPagingItemReader.class);
+
+    private static final String LAST_KEY = "lastId";
+
+    private DataSource dataSource;
+    private String selectClause;
+    private String fromClause;
+    private String whereClause;
+    private String sortKey;
+    private RowMapper<T> rowMapper;
+    private Supplier<? extends PageAssembler<T>> pageAssembler;
+    private ToLongFunction<T> keyExtractor;
+    private volatile int pageSize = 1000;
+    private int prefetchPages = 2;
+    private boolean partitioned;
+    private String writtenTable;
+    private String acknowledgedKey;
+    private long startAfter = Long.MIN_VALUE;
+
+    private String sql;
+    private String unwrittenSql;
+    private BlockingQueue<List<T>> pages;
+    private Iterator<T> currentPage = Collections.emptyIterator();
+    private Thread prefetcher;
+    private volatile boolean stopped;
+    private volatile Throwable failure;
+    private boolean exhausted;
+    private long lastKey;
+    private ExecutionContext rangeContext;
+
+    public KeysetPagingItemReader() {
+        setName(KeysetPagingItemReader.class.getSimpleName());
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public void setSelectClause(String selectClause) {
+        this.selectClause = selectClause;
+    }
+
+    public void setFromClause(String fromClause) {
+        this.fromClause = fromClause;
+    }
+
+    public void setWhereClause(String whereClause) {
+        this.whereClause = whereClause;
+    }
+
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    public void setRowMapper(RowMapper<T> rowMapper) {
+        this.rowMapper = rowMapper;
+    }
+
+    /*
+        Creates the assembler for every page fetched, in place of the RowMapper.
+    */
+    public void setPageAssembler(Supplier<? extends PageAssembler<T>> pageAssembler) {
+        this.pageAssembler = pageAssembler;
+    }
+
+    /*
+        Extracts the value of the sort key column from a mapped item, it is what gets saved for restart.
+    */
+    public void setKeyExtractor(ToLongFunction<T> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /*
+        Can be changed while the reader is open, it applies from the next page fetched.
+    */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public void setPrefetchPages(int prefetchPages) {
+        this.prefetchPages = prefetchPages;
+    }
+
+    public void setPartitioned(boolean partitioned) {
+        this.partitioned = partitioned;
+    }
+
+    /*
+        The table the items end up in, keyed by a column of the same name as the sort key, for a restart to skip
+        the rows already written to it.
+    */
+    public void setWrittenTable(String writtenTable) {
+        this.writtenTable = writtenTable;
+    }
+
+    /*
+        The ExecutionContext key the low-water mark a restart searches the written table from is saved under, by the
+        chunk writer. Without one, or before it is saved, the search starts from the saved key.
+    */
+    public void setAcknowledgedKey(String acknowledgedKey) {
+        this.acknowledgedKey = acknowledgedKey;
+    }
+
+    /*
+        The key a run that isn't a restart starts after, it may change between runs (see ChangeWatermarkListener).
+    */
+    public void setStartAfter(long startAfter) {
+        this.startAfter = startAfter;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(dataSource, "A DataSource is required");
+        Assert.hasText(selectClause, "A select clause is required");
+        Assert.hasText(fromClause, "A from clause is required");
+        Assert.hasText(sortKey, "A sort key is required");
+        Assert.isTrue(rowMapper != null || pageAssembler != null, "A RowMapper or a PageAssembler is required");
+        Assert.isTrue(pageAssembler == null || !partitioned, "A partitioned reader can't use a PageAssembler");
+        Assert.notNull(keyExtractor, "A key extractor is required");
+        Assert.isTrue(pageSize > 0, "The page size must be positive");
+        Assert.isTrue(prefetchPages > 0, "At least one page must be prefetched");
+
+        String from = fromClause.trim().toLowerCase().startsWith("from ") ? fromClause.trim().substring(5) : fromClause;
+        StringBuilder where = new StringBuilder(" FROM ").append(from).append(" WHERE ");
+        if (StringUtils.hasText(whereClause)) {
+            where.append("(").append(whereClause).append(") AND ");
+        }
+        sql = "SELECT " + selectClause + where + sortKey + " > ? AND " + sortKey + " <= ? ORDER BY " + sortKey
+                + " ASC LIMIT ?";
+
+        if (StringUtils.hasText(writtenTable)) {
+            // NOT EXISTS rather than NOT IN: PostgreSQL plans it as an anti-join, where NOT IN becomes a subplan
+            // that is scanned again for every row once the written rows don't fit in work_mem (and finds nothing at
+            // all if the subquery ever yields a NULL). The derived table lets the from clause carry an alias.
+            unwrittenSql = "SELECT t." + sortKey + " FROM (SELECT " + sortKey + where + sortKey + " > ?) t"
+                    + " WHERE NOT EXISTS (SELECT 1 FROM " + writtenTable + " w WHERE w." + sortKey + " = t." + sortKey
+                    + ") ORDER BY t." + sortKey + " ASC LIMIT 1";
+        }
+    }
+
+    @Override
+    public synchronized T read() throws Exception {
+        while (!currentPage.hasNext()) {
+            if (exhausted) {
+                return null;
+            }
+            List<T> page = pages.take();
+            if (page.isEmpty()) {
+                exhausted = true;
+                rethrowFailure();
+                return null;
+            }
+            currentPage = page.iterator();
+        }
+        T item = currentPage.next();
+        long key = keyExtractor.applyAsLong(item);
+        if (rangeContext != null) {
+            synchronized (rangeContext) {
+                if (key > rangeContext.getLong(ColumnRangePartitioner.MAX_VALUE)) {
+                    exhausted = true;
+                    currentPage = Collections.emptyIterator();
+                    return null;
+                }
+                rangeContext.putLong(ColumnRangePartitioner.READ_VALUE, key + 1);
+            }
+        }
+        lastKey = key;
+        return item;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        if (partitioned) {
+            rangeContext = executionContext;
+            synchronized (executionContext) {
+                lastKey = executionContext.getLong(ColumnRangePartitioner.MIN_VALUE) - 1;
+                executionContext.putLong(ColumnRangePartitioner.READ_VALUE, lastKey + 1);
+            }
+        } else {
+            rangeContext = null;
+            if (executionContext.containsKey(getExecutionContextKey(LAST_KEY))) {
+                lastKey = executionContext.getLong(getExecutionContextKey(LAST_KEY));
+                if (unwrittenSql != null) {
+                    long acknowledged = acknowledgedKey != null && executionContext.containsKey(acknowledgedKey)
+                            ? Math.min(executionContext.getLong(acknowledgedKey), lastKey) : lastKey;
+                    lastKey = skipWritten(acknowledged, lastKey);
+                }
+            } else {
+                lastKey = startAfter;
+            }
+        }
+        currentPage = Collections.emptyIterator();
+        exhausted = false;
+        stopped = false;
+        failure = null;
+        pages = new ArrayBlockingQueue<>(prefetchPages + 1);
+
+        long startAfter = lastKey;
+        prefetcher = new Thread(() -> prefetch(startAfter), "keyset-prefetch-" + getExecutionContextKey(LAST_KEY));
+        prefetcher.setDaemon(true);
+        prefetcher.start();
+    }
+
+    /*
+        Called with the commit of a chunk only, a chunk rolled back leaves the saved position where it was.
+    */
+    @Override
+    public synchronized void update(ExecutionContext executionContext) throws ItemStreamException {
+        if (rangeContext != null) {
+            synchronized (rangeContext) {
+                rangeContext.putLong(ColumnRangePartitioner.MIN_VALUE, lastKey + 1);
+            }
+        } else if (lastKey != Long.MIN_VALUE) {
+            executionContext.putLong(getExecutionContextKey(LAST_KEY), lastKey);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        stopped = true;
+        if (prefetcher != null) {
+            prefetcher.interrupt();
+            try {
+                prefetcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            prefetcher = null;
+        }
+    }
+
+    /*
+        The key to resume after: right before the first row after the low-water mark that isn't written yet, or the
+        last key written when there is no such row. The anti-join only looks at the rows after the low-water mark.
+    */
+    private long skipWritten(long acknowledged, long savedKey) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        List<Long> unwritten = jdbcTemplate.queryForList(unwrittenSql, Long.class, acknowledged);
+        long resumeAfter;
+        if (unwritten.isEmpty()) {
+            Long written = jdbcTemplate.queryForObject("SELECT max(" + sortKey + ") FROM " + writtenTable
+                    + " WHERE " + sortKey + " > ?", Long.class, acknowledged);
+            resumeAfter = written == null ? acknowledged : written;
+        } else {
+            resumeAfter = unwritten.get(0) - 1;
+        }
+        if (resumeAfter != savedKey && logger.isInfoEnabled()) {
+            logger.info("Restart of " + getExecutionContextKey(LAST_KEY) + " resumes after " + sortKey + " "
+                    + resumeAfter + " instead of " + savedKey + ", before the first row after " + acknowledged
+                    + " that isn't in " + writtenTable);
+        }
+        return resumeAfter;
+    }
+
+    private void prefetch(long startAfter) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        long after = startAfter;
+        try {
+            while (!stopped && after < upperKey()) {
+                int size = pageSize;
+                jdbcTemplate.setFetchSize(size);
+                List<T> page;
+                int rows;
+                if (pageAssembler == null) {
+                    page = jdbcTemplate.query(sql, rowMapper, after, upperKey(), size);
+                    rows = page.size();
+                } else {
+                    PageAssembler<T> assembler = pageAssembler.get();
+                    int[] count = {0};
+                    jdbcTemplate.query(sql, resultSet -> {
+                        assembler.addRow(resultSet);
+                        count[0]++;
+                    }, after, upperKey(), size);
+                    page = assembler.finish();
+                    rows = count[0];
+                }
+                if (!page.isEmpty()) {
+                    if (!enqueue(page)) {
+                        return;
+                    }
+                    after = keyExtractor.applyAsLong(page.get(page.size() - 1));
+                }
+                if (rows < size) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (Throwable e) {
+            failure = e;
+        }
+        try {
+            enqueue(Collections.emptyList());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+        Waits for room in the buffer but gives up as soon as the reader is closed, whatever the interrupt state.
+    */
+    private boolean enqueue(List<T> page) throws InterruptedException {
+        while (!stopped) {
+            if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long upperKey() {
+        ExecutionContext context = rangeContext;
+        if (context == null) {
+            return Long.MAX_VALUE;
+        }
+        synchronized (context) {
+            return context.getLong(ColumnRangePartitioner.MAX_VALUE);
+        }
+    }
+
+    private void rethrowFailure() throws Exception {
+        Throwable error = failure;
+        if (error instanceof Exception) {
+            throw (Exception) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    /*
+        Collects the rows of one page, positioned on each in turn, and makes the items of the page out of them.
+    */
+    public interface PageAssembler<T> {
+
+        void addRow(ResultSet resultSet) throws SQLException;
+
+        List<T> finish();
+    }
+}
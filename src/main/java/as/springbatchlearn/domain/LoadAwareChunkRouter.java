@@ -0,0 +1,299 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/*
+    Picks the slave every chunk request of the master goes to, from the heartbeats the slaves publish on the control
+    queue (SlaveHeartbeat) and the replies they send back.
+
+    Every slave takes chunks from a queue of its own besides the shared one. A chunk goes to the slave that is
+    expected to finish it first: the slave's average time to handle a chunk times the rounds of its consumers the
+    chunks already in its hands take, one round as long as one of its consumers is free. So a fast slave gets more
+    chunks than a slow one, and a slow slave is not handed a chunk while a fast one could start on it right away.
+    A slave that has not handled a chunk yet is taken to be as fast as the fastest one, so it gets tried. When no
+    slave has been heard from lately the chunk goes to the shared queue, as it would without the router.
+
+    A slave that has sent neither a heartbeat nor a reply for slaveTimeout milliseconds is taken to be gone: the
+    chunks routed to it that are not acknowledged yet are routed to the other slaves and sent again. A slave that was
+    only slow may still reply for them, so a redispatched chunk can be written twice, the writer has to tolerate
+    rows that are already there.
+*/
+public class LoadAwareChunkRouter implements MessageHandler, SmartLifecycle {
+
+    private static final Log logger = LogFactory.getLog(LoadAwareChunkRouter.class);
+
+    /*
+        The header carrying the routing key of the queue a request is sent to.
+    */
+    public static final String ROUTE = "chunking_route";
+
+    private static final double SMOOTHING = 0.3;
+
+    private final Map<String, Slave> slaves = new ConcurrentHashMap<>();
+    private final Map<Integer, Assignment> assignments = new ConcurrentHashMap<>();
+
+    private MessagingTemplate messagingGateway;
+    private TaskScheduler taskScheduler;
+    private String sharedQueue;
+    private long slaveTimeout = 5000;
+    private ChunkPipelineMetrics metrics = new ChunkPipelineMetrics();
+    private LongSupplier clock = System::currentTimeMillis;
+
+    private volatile ScheduledFuture<?> silenceCheck;
+
+    /*
+        Where redispatched requests are sent, the messaging template of the chunk writer.
+    */
+    public void setMessagingOperations(MessagingTemplate messagingGateway) {
+        this.messagingGateway = messagingGateway;
+    }
+
+    public void setTaskScheduler(TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    /*
+        The routing key of the queue all slaves take chunks from.
+    */
+    public void setSharedQueue(String sharedQueue) {
+        this.sharedQueue = sharedQueue;
+    }
+
+    /*
+        How long (in milliseconds) a slave may stay silent before its chunks are sent to the others.
+    */
+    public void setSlaveTimeout(long slaveTimeout) {
+        this.slaveTimeout = slaveTimeout;
+    }
+
+    public void setMetrics(ChunkPipelineMetrics metrics) {
+        this.metrics = metrics;
+        metrics.slaves(this, LoadAwareChunkRouter::getSlaveCount);
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public int getSlaveCount() {
+        return slaves.size();
+    }
+
+    /*
+        Takes the heartbeats of the control queue.
+    */
+    @Override
+    public void handleMessage(Message<?> message) {
+        Object payload = message.getPayload();
+        if (!(payload instanceof SlaveHeartbeat)) {
+            logger.warn("Ignoring unexpected control payload: " + payload);
+            return;
+        }
+        SlaveHeartbeat heartbeat = (SlaveHeartbeat) payload;
+        Slave slave = slaves.computeIfAbsent(heartbeat.getSlaveId(), id -> new Slave(id, clock.getAsLong()));
+        if (slave.queue == null) {
+            logger.info("Routing chunks to slave " + heartbeat.getSlaveId() + " with " + heartbeat.getConsumers() + " consumers");
+        }
+        slave.queue = heartbeat.getQueue();
+        slave.consumers = Math.max(1, heartbeat.getConsumers());
+        slave.active = heartbeat.getActive();
+        if (heartbeat.getChunks() > 0) {
+            double handleNanos = (double) heartbeat.getHandleNanos() / heartbeat.getChunks();
+            slave.handleNanos = slave.handleNanos == 0 ? handleNanos
+                    : slave.handleNanos + SMOOTHING * (handleNanos - slave.handleNanos);
+        }
+        slave.lastSeen = clock.getAsLong();
+    }
+
+    /*
+        The message to send a request in, with the routing key of the slave it is assigned to.
+    */
+    public Message<ChunkRequest<?>> route(ChunkRequest<?> request) {
+        Slave slave = choose();
+        if (slave == null) {
+            return message(request, sharedQueue);
+        }
+        slave.assigned.incrementAndGet();
+        Assignment previous = assignments.put(request.getSequence(), new Assignment(slave, request));
+        if (previous != null) {
+            previous.slave.assigned.decrementAndGet();
+        }
+        return message(request, slave.queue);
+    }
+
+    /*
+        The request with this sequence has been acknowledged.
+    */
+    public void completed(int sequence) {
+        Assignment assignment = assignments.remove(sequence);
+        if (assignment != null) {
+            assignment.slave.assigned.decrementAndGet();
+        }
+    }
+
+    /*
+        A slave that replies is alive, and its capacity is as recent as it gets.
+    */
+    public void replied(ChunkResponseBatch batch) {
+        Slave slave = slaves.get(batch.getSlaveId());
+        if (slave != null) {
+            slave.active = Math.max(0, batch.getConsumers() - batch.getCapacity());
+            slave.lastSeen = clock.getAsLong();
+        }
+    }
+
+    /*
+        Forgets the requests of a previous step execution, the slaves stay.
+    */
+    public void clear() {
+        assignments.clear();
+        slaves.values().forEach(slave -> slave.assigned.set(0));
+    }
+
+    public void checkSilence() {
+        long now = clock.getAsLong();
+        for (Slave slave : slaves.values()) {
+            if (now - slave.lastSeen > slaveTimeout && slaves.remove(slave.id, slave)) {
+                redispatch(slave);
+            }
+        }
+    }
+
+    private void redispatch(Slave silent) {
+        List<Integer> sequences = new ArrayList<>();
+        assignments.forEach((sequence, assignment) -> {
+            if (assignment.slave == silent) {
+                sequences.add(sequence);
+            }
+        });
+        logger.warn("Slave " + silent.id + " has been silent for more than " + slaveTimeout + " ms, sending its "
+                + sequences.size() + " chunks to the other slaves");
+
+        for (Integer sequence : sequences) {
+            Assignment assignment = assignments.get(sequence);
+            if (assignment == null || assignment.slave != silent) {
+                continue;
+            }
+            // Routed the same way as a new request, unless it has been acknowledged in the meantime
+            Slave slave = choose();
+            String queue = sharedQueue;
+            if (slave == null) {
+                if (!assignments.remove(sequence, assignment)) {
+                    continue;
+                }
+            } else {
+                slave.assigned.incrementAndGet();
+                if (!assignments.replace(sequence, assignment, new Assignment(slave, assignment.request))) {
+                    slave.assigned.decrementAndGet();
+                    continue;
+                }
+                queue = slave.queue;
+            }
+            try {
+                messagingGateway.send(message(assignment.request, queue));
+                metrics.redispatched().increment();
+            } catch (RuntimeException e) {
+                logger.error("Failed to redispatch chunk " + sequence, e);
+            }
+        }
+    }
+
+    private Slave choose() {
+        double fastest = 0;
+        for (Slave slave : slaves.values()) {
+            if (slave.handleNanos > 0 && (fastest == 0 || slave.handleNanos < fastest)) {
+                fastest = slave.handleNanos;
+            }
+        }
+
+        Slave best = null;
+        double bestFinish = 0;
+        int bestBusy = 0;
+        for (Slave slave : slaves.values()) {
+            if (slave.queue == null) {
+                continue;
+            }
+            int busy = Math.max(slave.assigned.get(), slave.active);
+            double handleNanos = slave.handleNanos > 0 ? slave.handleNanos : fastest;
+            double finish = handleNanos * (1 + busy / slave.consumers);
+            if (best == null || finish < bestFinish || (finish == bestFinish && busy < bestBusy)) {
+                best = slave;
+                bestFinish = finish;
+                bestBusy = busy;
+            }
+        }
+        return best;
+    }
+
+    private static Message<ChunkRequest<?>> message(ChunkRequest<?> request, String queue) {
+        MessageBuilder<ChunkRequest<?>> builder = MessageBuilder.withPayload(request);
+        if (queue != null) {
+            builder.setHeader(ROUTE, queue);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void start() {
+        if (taskScheduler != null && silenceCheck == null) {
+            silenceCheck = taskScheduler.scheduleWithFixedDelay(this::checkSilence, Math.max(1, slaveTimeout / 4));
+        }
+    }
+
+    @Override
+    public void stop() {
+        ScheduledFuture<?> check = silenceCheck;
+        if (check != null) {
+            check.cancel(false);
+            silenceCheck = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return silenceCheck != null;
+    }
+
+    private static class Slave {
+
+        private final String id;
+        private final AtomicInteger assigned = new AtomicInteger();
+        private volatile String queue;
+        private volatile int consumers = 1;
+        private volatile int active;
+        private volatile double handleNanos;
+        private volatile long lastSeen;
+
+        private Slave(String id, long lastSeen) {
+            this.id = id;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private static class Assignment {
+
+        private final Slave slave;
+        private final ChunkRequest<?> request;
+
+        private Assignment(Slave slave, ChunkRequest<?> request) {
+            this.slave = slave;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package as.springbatchlearn.domain;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+    Reference data by key, shared by every chunk and every thread of a JVM: at most maxSize entries, each for at
+    most ttl after it was loaded. A key the loader had no value for is cached as well, so it isn't looked up again
+    by every chunk that has it.
+
+    The entries are spread over stripes by the hash of their key, every stripe a LinkedHashMap in access order behind
+    a lock of its own, so threads only wait for each other when they hit the same stripe at the same time, and the
+    least recently used entries of a stripe go first when it is full. The loader is called outside of any lock,
+    with all the keys of a request that are missing at once.
+
+    The counts are exposed as meters by bindTo, tagged with the name of the cache:
+
+        lookup.cache.requests{result=hit|miss}   keys asked for one by one, found or not found in the cache
+        lookup.cache.loads                       keys the loader was asked for
+        lookup.cache.queries                     calls of the loader
+        lookup.cache.evictions{cause=size|expired}
+        lookup.cache.size
+*/
+public class LookupCache<K, V> {
+
+    private static final Object ABSENT = new Object();
+
+    private final Stripe<K>[] stripes;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder sizeEvictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public LookupCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public LookupCache(int maxSize, Duration ttl, int stripeCount) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.isTrue(!ttl.isNegative() && !ttl.isZero(), "ttl must be positive");
+        Assert.isTrue(stripeCount > 0, "stripeCount must be positive");
+
+        int count = Integer.highestOneBit(Math.min(stripeCount, maxSize));
+        int stripeSize = (maxSize + count - 1) / count;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>(stripeSize, sizeEvictions);
+        }
+        ttlNanos = ttl.toNanos();
+    }
+
+    /*
+        The value for the key, from the cache or else from the loader; null when there is none.
+    */
+    public V get(K key, Function<? super Set<K>, ? extends Map<K, V>> loader) {
+        Object cached = cached(key, System.nanoTime());
+        if (cached != null) {
+            hits.increment();
+            return unwrap(cached);
+        }
+        misses.increment();
+        Set<K> keys = new HashSet<>(1);
+        keys.add(key);
+        return load(keys, loader).get(key);
+    }
+
+    /*
+        Loads those of the keys that aren't cached, with a single call of the loader.
+    */
+    public void preload(Collection<? extends K> keys, Function<? super Set<K>, ? extends Map<K, V>> loader) {
+        long now = System.nanoTime();
+        Set<K> missing = new HashSet<>();
+        for (K key : keys) {
+            if (cached(key, now) == null) {
+                missing.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            load(missing, loader);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getEvictions() {
+        return sizeEvictions.sum() + expirations.sum();
+    }
+
+    public void bindTo(MeterRegistry registry, String name) {
+        counter("lookup.cache.requests", name, hits, "Keys found in the cache").tag("result", "hit").register(registry);
+        counter("lookup.cache.requests", name, misses, "Keys not found in the cache").tag("result", "miss").register(registry);
+        counter("lookup.cache.loads", name, loads, "Keys the loader was asked for").register(registry);
+        counter("lookup.cache.queries", name, queries, "Calls of the loader").register(registry);
+        counter("lookup.cache.evictions", name, sizeEvictions, "Entries evicted").tag("cause", "size").register(registry);
+        counter("lookup.cache.evictions", name, expirations, "Entries evicted").tag("cause", "expired").register(registry);
+        Gauge.builder("lookup.cache.size", this, LookupCache::size)
+                .description("Entries in the cache")
+                .tag("cache", name)
+                .register(registry);
+    }
+
+    private static FunctionCounter.Builder<LongAdder> counter(String meter, String name, LongAdder count, String description) {
+        return FunctionCounter.builder(meter, count, LongAdder::sum)
+                .description(description)
+                .tag("cache", name);
+    }
+
+    private Map<K, V> load(Set<K> keys, Function<? super Set<K>, ? extends Map<K, V>> loader) {
+        queries.increment();
+        loads.add(keys.size());
+        Map<K, V> values = loader.apply(keys);
+
+        long loadedAt = System.nanoTime();
+        for (K key : keys) {
+            V value = values.get(key);
+            Stripe<K> stripe = stripe(key);
+            synchronized (stripe) {
+                stripe.put(key, new Entry(value == null ? ABSENT : value, loadedAt));
+            }
+        }
+        return values;
+    }
+
+    /*
+        The cached value or ABSENT, null when the key isn't cached or its entry has expired.
+    */
+    private Object cached(K key, long now) {
+        Stripe<K> stripe = stripe(key);
+        synchronized (stripe) {
+            Entry entry = stripe.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.loadedAt >= ttlNanos) {
+                stripe.remove(key);
+                expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    private Stripe<K> stripe(K key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private V unwrap(Object cached) {
+        return cached == ABSENT ? null : (V) cached;
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long loadedAt;
+
+        Entry(Object value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Stripe<K> extends LinkedHashMap<K, Entry> {
+
+        private final int maxSize;
+        private final LongAdder evictions;
+
+        Stripe(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/*
+    A processor stage that enriches every item with reference data looked up by a key of the item. Looking it up item
+    by item is a query per item; this stage is shown the whole chunk first (ChunkAwareItemProcessor) and has the
+    keys of it that aren't cached yet looked up at once, typically by a JdbcLookup, so a chunk costs one query for
+    what the cache doesn't have and none at all once it has everything. The items are then enriched from the cache,
+    one by one as usual; an item whose key isn't there (the stage wasn't shown the chunk, or the entry was evicted
+    in between) has it looked up on its own.
+
+    The cache is meant to be shared: one LookupCache for all the chunks, threads and stages that look up the same
+    reference data. The enricher gets the item and the value for its key, null when there is none, and returns the
+    item to pass on, or null to filter it out.
+*/
+public class LookupItemProcessor<T, K, V> implements ChunkAwareItemProcessor<T, T>, InitializingBean {
+
+    private LookupCache<K, V> cache;
+    private Function<? super Set<K>, ? extends Map<K, V>> lookup;
+    private Function<? super T, ? extends K> keyExtractor;
+    private BiFunction<? super T, ? super V, ? extends T> enricher;
+
+    public void setCache(LookupCache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    /*
+        Gives the values of the keys it has one for, it is called with all the keys missing from the cache at once.
+    */
+    public void setLookup(Function<? super Set<K>, ? extends Map<K, V>> lookup) {
+        this.lookup = lookup;
+    }
+
+    /*
+        The key of an item, null for an item that has nothing to look up.
+    */
+    public void setKeyExtractor(Function<? super T, ? extends K> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    public void setEnricher(BiFunction<? super T, ? super V, ? extends T> enricher) {
+        this.enricher = enricher;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(cache, "A LookupCache is required");
+        Assert.notNull(lookup, "A lookup is required");
+        Assert.notNull(keyExtractor, "A key extractor is required");
+        Assert.notNull(enricher, "An enricher is required");
+    }
+
+    @Override
+    public void beforeChunk(List<? extends T> items) {
+        Set<K> keys = new HashSet<>();
+        for (T item : items) {
+            K key = keyExtractor.apply(item);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        cache.preload(keys, lookup);
+    }
+
+    @Override
+    public T process(T item) {
+        K key = keyExtractor.apply(item);
+        return enricher.apply(item, key == null ? null : cache.get(key, lookup));
+    }
+}
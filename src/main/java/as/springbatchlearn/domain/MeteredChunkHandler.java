@@ -0,0 +1,66 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.integration.chunk.ChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.integration.annotation.ServiceActivator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Times every chunk request the slave handles, from the arrival of the decoded request to the response,
+    and counts the requests being handled at any moment, as well as all the requests handled and the time they took
+    (see SlaveHeartbeatPublisher). The first chunk handled is the end of the slave's startup (see SlaveStartupTimer).
+*/
+public class MeteredChunkHandler<T> implements ChunkHandler<T> {
+
+    private final ChunkHandler<T> delegate;
+    private final ChunkPipelineMetrics metrics;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong handleNanos = new AtomicLong();
+
+    private SlaveStartupTimer startupTimer;
+
+    public MeteredChunkHandler(ChunkHandler<T> delegate, ChunkPipelineMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    public void setStartupTimer(SlaveStartupTimer startupTimer) {
+        this.startupTimer = startupTimer;
+    }
+
+    @Override
+    @ServiceActivator
+    public ChunkResponse handleChunk(ChunkRequest<T> chunk) throws Exception {
+        long start = System.nanoTime();
+        active.incrementAndGet();
+        try {
+            return delegate.handleChunk(chunk);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            handleNanos.addAndGet(nanos);
+            handled.incrementAndGet();
+            active.decrementAndGet();
+            metrics.handle().record(nanos, TimeUnit.NANOSECONDS);
+            if (startupTimer != null) {
+                startupTimer.chunkHandled();
+            }
+        }
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getHandled() {
+        return handled.get();
+    }
+
+    public long getHandleNanos() {
+        return handleNanos.get();
+    }
+}
@@ -0,0 +1,103 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/*
+    A SimpleChunkProcessor that processes the items of one chunk in slices on a bounded executor and then writes
+    them in their original order on the calling thread, in one go as before. Worth it when processing an item costs
+    much more than handing a slice to another thread; chunks smaller than two slices, and every chunk when the
+    processor is a no-op, are processed in place.
+
+    A ChunkAwareItemProcessor is shown the items of every chunk before any of them is processed.
+*/
+public class ParallelChunkProcessor<I, O> extends SimpleChunkProcessor<I, O> {
+
+    private Executor executor;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int minSliceSize = 64;
+    private final boolean noOpProcessor;
+    private final ChunkAwareItemProcessor<? super I, ?> chunkAwareProcessor;
+
+    @SuppressWarnings("unchecked")
+    public ParallelChunkProcessor(ItemProcessor<? super I, ? extends O> itemProcessor, ItemWriter<? super O> itemWriter) {
+        super(itemProcessor, itemWriter);
+        this.noOpProcessor = ItemProcessorChain.isNoOp(itemProcessor);
+        this.chunkAwareProcessor = itemProcessor instanceof ChunkAwareItemProcessor
+                ? (ChunkAwareItemProcessor<? super I, ?>) itemProcessor : null;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /*
+        The maximum number of slices a chunk is cut into, i.e. of threads working on one chunk.
+    */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public void setMinSliceSize(int minSliceSize) {
+        this.minSliceSize = minSliceSize;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Chunk<O> transform(StepContribution contribution, Chunk<I> inputs) throws Exception {
+        List<I> items = inputs.getItems();
+        if (chunkAwareProcessor != null && !items.isEmpty()) {
+            chunkAwareProcessor.beforeChunk(items);
+        }
+        int slices = Math.min(parallelism, items.size() / minSliceSize);
+        if (executor == null || slices < 2 || noOpProcessor) {
+            return super.transform(contribution, inputs);
+        }
+
+        Object[] results = new Object[items.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(slices);
+        int sliceSize = (items.size() + slices - 1) / slices;
+        for (int from = 0; from < items.size(); from += sliceSize) {
+            int start = from;
+            int end = Math.min(items.size(), from + sliceSize);
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int i = start; i < end; i++) {
+                    try {
+                        results[i] = doProcess(items.get(i));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, executor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            inputs.clear();
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+
+        // the items left out are counted as filtered by process(), from the size of the chunk before and after
+        Chunk<O> outputs = new Chunk<>();
+        for (Object result : results) {
+            if (result != null) {
+                outputs.add((O) result);
+            }
+        }
+        return outputs;
+    }
+}
@@ -0,0 +1,30 @@
+package as.springbatchlearn.domain;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+
+import java.util.List;
+
+/*
+    A ChunkResponse that carries the processed items of its chunk back to the master, for slaves that don't write.
+*/
+public class ProcessedChunkResponse<T> extends ChunkResponse {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> items;
+
+    public ProcessedChunkResponse(int sequence, Long jobId, StepContribution stepContribution, List<T> items) {
+        super(sequence, jobId, stepContribution);
+        this.items = items;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + ", items=" + items.size();
+    }
+}
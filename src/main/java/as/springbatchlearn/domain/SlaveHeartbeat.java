@@ -0,0 +1,61 @@
+package as.springbatchlearn.domain;
+
+/*
+    What a slave tells the master about itself on the control queue every few seconds, whether it is busy or not:
+    the queue of its own it takes chunks from besides the shared one, how many consumers it has and how many of them
+    are busy with a chunk, and the chunks it handled since its previous heartbeat together with the time they took.
+*/
+public class SlaveHeartbeat {
+
+    private final String slaveId;
+    private final String queue;
+    private final int consumers;
+    private final int active;
+    private final long chunks;
+    private final long handleNanos;
+
+    public SlaveHeartbeat(String slaveId, String queue, int consumers, int active, long chunks, long handleNanos) {
+        this.slaveId = slaveId;
+        this.queue = queue;
+        this.consumers = consumers;
+        this.active = active;
+        this.chunks = chunks;
+        this.handleNanos = handleNanos;
+    }
+
+    public String getSlaveId() {
+        return slaveId;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public long getChunks() {
+        return chunks;
+    }
+
+    public long getHandleNanos() {
+        return handleNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SlaveHeartbeat{" +
+                "slaveId='" + slaveId + '\'' +
+                ", queue='" + queue + '\'' +
+                ", consumers=" + consumers +
+                ", active=" + active +
+                ", chunks=" + chunks +
+                ", handleNanos=" + handleNanos +
+                '}';
+    }
+}
@@ -0,0 +1,104 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.concurrent.ScheduledFuture;
+
+/*
+    Sends a SlaveHeartbeat every interval milliseconds while the slave runs, for the master to route chunks by
+    (see LoadAwareChunkRouter). A heartbeat that can't be sent is logged and the next one tried, a slave keeps
+    handling chunks while the broker is out of reach for its heartbeats.
+*/
+public class SlaveHeartbeatPublisher implements SmartLifecycle {
+
+    private static final Log logger = LogFactory.getLog(SlaveHeartbeatPublisher.class);
+
+    private MessageChannel outputChannel;
+    private TaskScheduler taskScheduler;
+    private MeteredChunkHandler<?> chunkHandler;
+    private String slaveId;
+    private String queue;
+    private int consumers = 1;
+    private long interval = 1000;
+
+    private long lastHandled;
+    private long lastHandleNanos;
+    private volatile ScheduledFuture<?> task;
+
+    public void setOutputChannel(MessageChannel outputChannel) {
+        this.outputChannel = outputChannel;
+    }
+
+    public void setTaskScheduler(TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    /*
+        Where the chunks being handled, the chunks handled and the time they took are counted.
+    */
+    public void setChunkHandler(MeteredChunkHandler<?> chunkHandler) {
+        this.chunkHandler = chunkHandler;
+    }
+
+    public void setSlaveId(String slaveId) {
+        this.slaveId = slaveId;
+    }
+
+    /*
+        The routing key of the queue only this slave takes chunks from.
+    */
+    public void setQueue(String queue) {
+        this.queue = queue;
+    }
+
+    public void setConsumers(int consumers) {
+        this.consumers = consumers;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /*
+        Sends the chunks handled since the previous heartbeat, whatever thread calls it.
+    */
+    public synchronized void publish() {
+        long handled = chunkHandler.getHandled();
+        long handleNanos = chunkHandler.getHandleNanos();
+        SlaveHeartbeat heartbeat = new SlaveHeartbeat(slaveId, queue, consumers, chunkHandler.getActive(),
+                handled - lastHandled, handleNanos - lastHandleNanos);
+        try {
+            outputChannel.send(new GenericMessage<>(heartbeat));
+            lastHandled = handled;
+            lastHandleNanos = handleNanos;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to send heartbeat " + heartbeat, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (task == null) {
+            task = taskScheduler.scheduleWithFixedDelay(this::publish, interval);
+        }
+    }
+
+    @Override
+    public void stop() {
+        ScheduledFuture<?> scheduled = task;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            task = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return task != null;
+    }
+}
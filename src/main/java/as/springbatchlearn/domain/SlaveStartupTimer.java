@@ -0,0 +1,69 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/*
+    How long a slave takes from the start of its JVM until it takes chunks (the application is ready and its request
+    container consuming) and until it has handled its first chunk. Both are recorded as slave.startup, tagged with
+    the phase, and logged, so a slave started to scale out shows when it actually started to help.
+
+    With exitWhenReady the slave stops as soon as it is ready, which is what the run that lists the classes for the
+    slave's class data sharing archive needs (see the cds profile of the pom).
+*/
+public class SlaveStartupTimer implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Log logger = LogFactory.getLog(SlaveStartupTimer.class);
+
+    private final AtomicBoolean chunkHandled = new AtomicBoolean();
+
+    private ChunkPipelineMetrics metrics = new ChunkPipelineMetrics();
+    private boolean exitWhenReady;
+    private LongSupplier uptime = () -> ManagementFactory.getRuntimeMXBean().getUptime();
+
+    public void setMetrics(ChunkPipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setExitWhenReady(boolean exitWhenReady) {
+        this.exitWhenReady = exitWhenReady;
+    }
+
+    /*
+        Milliseconds since the JVM started.
+    */
+    void setUptime(LongSupplier uptime) {
+        this.uptime = uptime;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        long ready = uptime.getAsLong();
+        metrics.startup("ready").record(ready, TimeUnit.MILLISECONDS);
+        logger.info("Slave ready to take chunks " + ready + " ms after the JVM started");
+
+        if (exitWhenReady) {
+            logger.info("Exiting now that the slave is ready (slave.exit-when-ready)");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
+        }
+    }
+
+    /*
+        Called after every chunk handled, records the first one.
+    */
+    public void chunkHandled() {
+        if (!chunkHandled.get() && chunkHandled.compareAndSet(false, true)) {
+            long firstChunk = uptime.getAsLong();
+            metrics.startup("first-chunk").record(firstChunk, TimeUnit.MILLISECONDS);
+            logger.info("Slave handled its first chunk " + firstChunk + " ms after the JVM started");
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
+import org.springframework.batch.integration.chunk.AsynchronousFailureException;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.integration.chunk.StepContributionSource;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+
+/*
+    A drop-in replacement for ChunkMessageChannelItemWriter on the master.
+    The stock writer only looks at the reply channel when its throttle limit is exceeded or at the end of the step,
+    and then it blocks on a receive. Here the writer is also the MessageHandler of the reply channel, so replies are
+    matched by job id and chunk sequence on whatever thread delivers them. Every chunk in flight holds one credit;
+    write() only blocks when all credits are taken, i.e. when the slave pool is saturated.
+    Slaves that don't write send their processed items back in a ProcessedChunkResponse; those are written with the
+    item writer on the thread that delivers the reply, in a transaction of their own, and the chunk only counts as
+    acknowledged once that transaction has committed. A write that fails is a failed reply, which fails the step.
+    With a LoadAwareChunkRouter every chunk is sent to the slave the router picks instead of the queue all slaves
+    share, and the router is told about every reply.
+    With a key extractor the writer also saves the highest key up to which every chunk has been acknowledged as
+    ACKNOWLEDGED, which a restart of the reader can resume from (see KeysetPagingItemReader.setAcknowledgedKey).
+    The chunks must then be written in key order, by a single thread.
+*/
+public class WindowedChunkMessageChannelItemWriter<T> extends StepExecutionListenerSupport
+        implements ItemWriter<T>, ItemStream, StepContributionSource, MessageHandler {
+
+    private static final Log logger = LogFactory.getLog(WindowedChunkMessageChannelItemWriter.class);
+
+    static final String EXPECTED = WindowedChunkMessageChannelItemWriter.class.getName() + ".EXPECTED";
+    static final String ACTUAL = WindowedChunkMessageChannelItemWriter.class.getName() + ".ACTUAL";
+    public static final String ACKNOWLEDGED = WindowedChunkMessageChannelItemWriter.class.getName() + ".ACKNOWLEDGED";
+
+    private MessagingTemplate messagingGateway;
+    private int maxInFlight = 6;
+    private long replyTimeout = 60000;
+
+    private volatile Semaphore credits = new Semaphore(maxInFlight);
+    private final Map<Integer, Long> inFlight = new ConcurrentHashMap<>();
+    private final Set<Integer> acknowledging = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Long> unacknowledgedAfter = new ConcurrentHashMap<>();
+    private final Queue<StepContribution> contributions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicLong expected = new AtomicLong();
+    private final AtomicLong actual = new AtomicLong();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Object monitor = new Object();
+    private final Map<String, ChunkResponseBatch> slaveCapacities = new ConcurrentHashMap<>();
+
+    private ItemWriter<? super T> itemWriter;
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+    private LoadAwareChunkRouter router;
+    private ToLongFunction<? super T> keyExtractor;
+    private volatile long lastSentKey = Long.MIN_VALUE;
+    private volatile boolean sentKeys;
+
+    private volatile StepExecution stepExecution;
+    private ChunkPipelineMetrics metrics = new ChunkPipelineMetrics();
+
+    public void setMessagingOperations(MessagingTemplate messagingGateway) {
+        this.messagingGateway = messagingGateway;
+    }
+
+    /*
+        The maximum number of chunks that may be sent and not yet acknowledged at any time.
+    */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.credits = new Semaphore(maxInFlight);
+    }
+
+    /*
+        How long (in milliseconds) to wait for a reply before giving up, either for a free credit while writing
+        or for the next outstanding reply at the end of the step.
+    */
+    public void setReplyTimeout(long replyTimeout) {
+        this.replyTimeout = replyTimeout;
+    }
+
+    /*
+        Writes the items of chunks the slaves send back processed instead of writing them, see ChunkWriteMode.
+    */
+    public void setItemWriter(ItemWriter<? super T> itemWriter) {
+        this.itemWriter = itemWriter;
+    }
+
+    /*
+        The transaction the items of every ProcessedChunkResponse are written in, the one of the step by default.
+    */
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void setRouter(LoadAwareChunkRouter router) {
+        this.router = router;
+    }
+
+    /*
+        Extracts the key of the last row an item stands for, the items of a chunk come in key order.
+    */
+    public void setKeyExtractor(ToLongFunction<? super T> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    /*
+        Where the credit waits, sends, reply round trips and the number of chunks in flight are recorded.
+    */
+    public void setMetrics(ChunkPipelineMetrics metrics) {
+        this.metrics = metrics;
+        metrics.inFlight(this, WindowedChunkMessageChannelItemWriter::getInFlight);
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        rethrowFailure();
+        if (items.isEmpty()) {
+            return;
+        }
+        long waitStart = System.nanoTime();
+        if (!credits.tryAcquire(replyTimeout, TimeUnit.MILLISECONDS)) {
+            rethrowFailure();
+            throw new AsynchronousFailureException("Timed out waiting for a free slot, " + inFlight.size() + " chunks in flight");
+        }
+        long sendStart = System.nanoTime();
+        metrics.creditWait().record(sendStart - waitStart, TimeUnit.NANOSECONDS);
+
+        int next = sequence.getAndIncrement();
+        ChunkRequest<T> request = new ChunkRequest<>(next, new ArrayList<>(items), getJobId(), stepExecution.createStepContribution());
+        inFlight.put(next, sendStart);
+        expected.incrementAndGet();
+        long previousKey = lastSentKey;
+        if (keyExtractor != null) {
+            unacknowledgedAfter.put(next, previousKey);
+            lastSentKey = keyExtractor.applyAsLong(items.get(items.size() - 1));
+            sentKeys = true;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Dispatching chunk: " + request);
+        }
+        try {
+            messagingGateway.send(router == null ? new GenericMessage<>(request) : router.route(request));
+        } catch (RuntimeException e) {
+            if (router != null) {
+                router.completed(next);
+            }
+            inFlight.remove(next);
+            unacknowledgedAfter.remove(next);
+            lastSentKey = previousKey;
+            expected.decrementAndGet();
+            credits.release();
+            throw e;
+        }
+        metrics.send().record(System.nanoTime() - sendStart, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+        Takes a single ChunkResponse as well as a ChunkResponseBatch, whose slave capacity is remembered.
+    */
+    @Override
+    public void handleMessage(Message<?> message) {
+        Object payload = message.getPayload();
+        boolean handled;
+        if (payload instanceof ChunkResponse) {
+            handled = handleResponse((ChunkResponse) payload);
+        } else if (payload instanceof ChunkResponseBatch) {
+            ChunkResponseBatch batch = (ChunkResponseBatch) payload;
+            slaveCapacities.put(batch.getSlaveId(), batch);
+            if (router != null) {
+                router.replied(batch);
+            }
+            handled = false;
+            for (ChunkResponse response : batch.getResponses()) {
+                handled |= handleResponse(response);
+            }
+        } else {
+            logger.warn("Ignoring unexpected reply payload: " + payload);
+            return;
+        }
+
+        if (handled) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /*
+        The last capacity every slave reported with its replies, by slave id.
+    */
+    public Map<String, Integer> getSlaveCapacities() {
+        Map<String, Integer> capacities = new HashMap<>();
+        slaveCapacities.forEach((slaveId, batch) -> capacities.put(slaveId, batch.getCapacity()));
+        return capacities;
+    }
+
+    /*
+        A reply for a chunk that isn't in flight (one a redispatched chunk has already been acknowledged for) is
+        ignored altogether, a failure in it included. A chunk stays in flight while the items of its reply are
+        written, so the end of the step waits for them, and a second reply for it meanwhile is a duplicate too.
+    */
+    private boolean handleResponse(ChunkResponse response) {
+        StepExecution current = stepExecution;
+        if (current == null || !current.getJobExecution().getJobId().equals(response.getJobId())) {
+            logger.debug("Ignoring reply for another job: " + response);
+            return false;
+        }
+
+        int replied = response.getSequence();
+        if (claim(replied)) {
+            long arrived = System.nanoTime();
+            boolean successful = writeReturned(response);
+            Long sent = inFlight.remove(replied);
+            acknowledging.remove(replied);
+            if (router != null) {
+                router.completed(replied);
+            }
+            credits.release();
+            metrics.reply().record(arrived - sent, TimeUnit.NANOSECONDS);
+            acknowledged(response, successful);
+        } else if (!inFlight.containsKey(replied) && backlog.get() > 0) {
+            boolean successful = writeReturned(response);
+            backlog.decrementAndGet();
+            acknowledged(response, successful);
+        } else {
+            logger.debug("Ignoring duplicate reply: " + response);
+            return false;
+        }
+        return true;
+    }
+
+    /*
+        True for the one reply of a chunk in flight that gets to acknowledge it. A chunk leaves inFlight before it
+        leaves acknowledging, so a chunk added to acknowledging that is still in flight is ours.
+    */
+    private boolean claim(int sequence) {
+        if (!inFlight.containsKey(sequence) || !acknowledging.add(sequence)) {
+            return false;
+        }
+        if (!inFlight.containsKey(sequence)) {
+            acknowledging.remove(sequence);
+            return false;
+        }
+        return true;
+    }
+
+    private void acknowledged(ChunkResponse response, boolean successful) {
+        if (successful) {
+            unacknowledgedAfter.remove(response.getSequence());
+            contributions.add(response.getStepContribution());
+        }
+        actual.incrementAndGet();
+    }
+
+    /*
+        Writes the items a slave returned with a successful reply in a transaction of their own, false when the
+        reply or the write failed.
+    */
+    @SuppressWarnings("unchecked")
+    private boolean writeReturned(ChunkResponse response) {
+        if (!response.isSuccessful()) {
+            failure.compareAndSet(null, new AsynchronousFailureException(
+                    "Failure or interrupt detected in handler: " + response.getMessage()));
+            return false;
+        }
+        if (!(response instanceof ProcessedChunkResponse)) {
+            return true;
+        }
+        if (itemWriter == null) {
+            failure.compareAndSet(null, new AsynchronousFailureException(
+                    "Slave returned the items of chunk " + response.getSequence() + " but there is no item writer"));
+            return false;
+        }
+        List<T> items = ((ProcessedChunkResponse<T>) response).getItems();
+        if (items.isEmpty()) {
+            return true;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    itemWriter.write(items);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Failed to write the items of chunk " + response.getSequence(), e);
+            failure.compareAndSet(null, new AsynchronousFailureException(
+                    "Failed to write the items of chunk " + response.getSequence(), e));
+            return false;
+        }
+    }
+
+    @Override
+    public Collection<StepContribution> getStepContributions() {
+        List<StepContribution> drained = new ArrayList<>();
+        StepContribution contribution;
+        while ((contribution = contributions.poll()) != null) {
+            drained.add(contribution);
+        }
+        return drained;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        this.stepExecution = stepExecution;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED) {
+            return null;
+        }
+        boolean drained = waitForReplies();
+        for (StepContribution contribution : getStepContributions()) {
+            stepExecution.apply(contribution);
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            stepExecution.setStatus(BatchStatus.FAILED);
+            return ExitStatus.FAILED.addExitDescription(error.getClass().getName() + ": " + error.getMessage());
+        }
+        if (!drained) {
+            stepExecution.setStatus(BatchStatus.FAILED);
+            return ExitStatus.FAILED.addExitDescription("Timed out waiting for " + inFlight.size() + " backlog at end of step");
+        }
+        return ExitStatus.COMPLETED.addExitDescription("Waited for " + expected.get() + " results.");
+    }
+
+    /*
+        On a restart replies for chunks the previous execution sent may still be arriving, they carry the same job
+        id but sequences we no longer know about. They are counted down as backlog before anything new is sent.
+    */
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        inFlight.clear();
+        acknowledging.clear();
+        unacknowledgedAfter.clear();
+        contributions.clear();
+        failure.set(null);
+        sequence.set(0);
+        credits = new Semaphore(maxInFlight);
+        if (router != null) {
+            router.clear();
+        }
+
+        long previouslyExpected = executionContext.getLong(EXPECTED, 0);
+        long previouslyActual = executionContext.getLong(ACTUAL, 0);
+        expected.set(previouslyExpected);
+        actual.set(previouslyActual);
+        backlog.set(previouslyExpected - previouslyActual);
+        lastSentKey = executionContext.getLong(ACKNOWLEDGED, Long.MIN_VALUE);
+        sentKeys = false;
+
+        if (backlog.get() > 0 && !waitForReplies()) {
+            throw new ItemStreamException("Timed out waiting for back log on open");
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putLong(EXPECTED, expected.get());
+        executionContext.putLong(ACTUAL, actual.get());
+        if (sentKeys) {
+            executionContext.putLong(ACKNOWLEDGED, getAcknowledgedKey());
+        }
+    }
+
+    /*
+        The highest key up to which every chunk sent has been acknowledged: right before the first chunk that is
+        still in flight or has failed, the last key sent when there is none.
+    */
+    long getAcknowledgedKey() {
+        long acknowledged = lastSentKey;
+        for (Long after : unacknowledgedAfter.values()) {
+            acknowledged = Math.min(acknowledged, after);
+        }
+        return acknowledged;
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        stepExecution = null;
+    }
+
+    private boolean waitForReplies() {
+        long outstanding = inFlight.size() + backlog.get();
+        long deadline = System.currentTimeMillis() + replyTimeout;
+
+        synchronized (monitor) {
+            while (inFlight.size() + backlog.get() > 0 && failure.get() == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    monitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                long now = inFlight.size() + backlog.get();
+                if (now < outstanding) {
+                    outstanding = now;
+                    deadline = System.currentTimeMillis() + replyTimeout;
+                }
+            }
+        }
+        return true;
+    }
+
+    private Long getJobId() {
+        return stepExecution.getJobExecution().getJobId();
+    }
+
+    private void rethrowFailure() {
+        Throwable error = failure.get();
+        if (error instanceof AsynchronousFailureException) {
+            throw (AsynchronousFailureException) error;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package as.springbatchlearn.domain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class WireReader {
+
+    private final ByteBuffer buffer;
+
+    public WireReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    public WireReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public int getByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    public long getVarLong() {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IllegalStateException("Malformed varint at position " + buffer.position());
+            }
+        }
+    }
+
+    public int getVarInt() {
+        return (int) getVarLong();
+    }
+
+    public long getZigZagLong() {
+        long value = getVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public Long getNullableVarLong() {
+        long value = getVarLong();
+        return value == 0 ? null : value - 1;
+    }
+
+    public String getString() {
+        int length = getVarInt();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    public void position(int position) {
+        buffer.position(position);
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+}
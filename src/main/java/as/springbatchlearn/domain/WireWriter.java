@@ -0,0 +1,115 @@
+package as.springbatchlearn.domain;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class WireWriter {
+
+    private ByteBuffer buffer;
+
+    public WireWriter(int initialCapacity) {
+        this(ByteBuffer.allocate(initialCapacity));
+    }
+
+    public WireWriter(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public void putByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    public void putBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /*
+        Copies the remaining bytes of the source, without moving its position.
+    */
+    public void putBytes(ByteBuffer source) {
+        ensureCapacity(source.remaining());
+        buffer.put(source.duplicate());
+    }
+
+    public void putShort(int value) {
+        ensureCapacity(2);
+        buffer.putShort((short) value);
+    }
+
+    public void putInt(int value) {
+        ensureCapacity(4);
+        buffer.putInt(value);
+    }
+
+    public void putLong(long value) {
+        ensureCapacity(8);
+        buffer.putLong(value);
+    }
+
+    public void putVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    public void putVarInt(int value) {
+        putVarLong(value & 0xFFFFFFFFL);
+    }
+
+    public void putZigZagLong(long value) {
+        putVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /*
+        Nullable values are written with a +1 offset so that a single zero byte can stand for null.
+    */
+    public void putNullableVarLong(Long value) {
+        putVarLong(value == null ? 0 : value + 1);
+    }
+
+    public void putString(String value) {
+        if (value == null) {
+            putVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length + 1);
+        putBytes(bytes, 0, bytes.length);
+    }
+
+    public int position() {
+        return buffer.position();
+    }
+
+    public void clear() {
+        buffer.clear();
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void ensureCapacity(int required) {
+        if (buffer.remaining() >= required) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + required);
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
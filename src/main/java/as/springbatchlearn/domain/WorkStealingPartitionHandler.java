@@ -0,0 +1,256 @@
+package as.springbatchlearn.domain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    A PartitionHandler for many small partitions (micro-ranges) and a fixed number of local workers.
+
+    All partitions go into one shared queue, largest range first, and every worker takes the next one as soon as it
+    is done with its own, so a slow range only holds up the worker that runs it. When the queue is empty an idle
+    worker steals from the running partition with the widest range left: it cuts what that partition's reader hasn't
+    read yet (readValue to maxValue) in half and runs the upper half as a new partition of its own. The cut goes
+    through the running step's ExecutionContext, which its reader (a partitioned KeysetPagingItemReader) keeps
+    re-reading, and is saved with that step's next commit, so a restart of either half starts from the right range.
+
+    The names of the partitions created by stealing are kept in the manager step's ExecutionContext, so that on
+    a restart the unfinished ones are picked up again next to the ones the partitioner knows about.
+*/
+public class WorkStealingPartitionHandler implements PartitionHandler, InitializingBean {
+
+    private static final Log logger = LogFactory.getLog(WorkStealingPartitionHandler.class);
+
+    static final String SPLITS = WorkStealingPartitionHandler.class.getSimpleName() + ".splits";
+
+    private Step step;
+    private TaskExecutor taskExecutor;
+    private JobRepository jobRepository;
+    private int workers = 4;
+    private int partitionsPerWorker = 8;
+    private long minSplitSize = 1000;
+
+    public void setStep(Step step) {
+        this.step = step;
+    }
+
+    public void setTaskExecutor(TaskExecutor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    public void setJobRepository(JobRepository jobRepository) {
+        this.jobRepository = jobRepository;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    /*
+        The partitioner is asked for workers * partitionsPerWorker partitions.
+    */
+    public void setPartitionsPerWorker(int partitionsPerWorker) {
+        this.partitionsPerWorker = partitionsPerWorker;
+    }
+
+    /*
+        A running partition is only split while both halves would still be at least this wide.
+    */
+    public void setMinSplitSize(long minSplitSize) {
+        this.minSplitSize = minSplitSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.notNull(step, "A Step is required");
+        Assert.notNull(taskExecutor, "A TaskExecutor is required");
+        Assert.notNull(jobRepository, "A JobRepository is required");
+        Assert.isTrue(workers > 0, "At least one worker is required");
+        Assert.isTrue(partitionsPerWorker > 0, "At least one partition per worker is required");
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution managerStepExecution) throws Exception {
+        Set<StepExecution> partitions = new LinkedHashSet<>(stepSplitter.split(managerStepExecution, workers * partitionsPerWorker));
+        partitions.addAll(restartableSplits(managerStepExecution));
+
+        List<StepExecution> ordered = new ArrayList<>(partitions);
+        ordered.sort(Comparator.comparingLong(WorkStealingPartitionHandler::remaining).reversed());
+
+        Run run = new Run(managerStepExecution, ordered);
+        CountDownLatch done = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            taskExecutor.execute(() -> {
+                try {
+                    run.work();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+
+        return run.executed;
+    }
+
+    private Collection<StepExecution> restartableSplits(StepExecution managerStepExecution) {
+        List<StepExecution> restartable = new ArrayList<>();
+        String splits = managerStepExecution.getExecutionContext().getString(SPLITS, "");
+        JobExecution jobExecution = managerStepExecution.getJobExecution();
+
+        for (String name : StringUtils.commaDelimitedListToSet(splits)) {
+            StepExecution last = jobRepository.getLastStepExecution(jobExecution.getJobInstance(), name);
+            if (last == null || last.getStatus() == BatchStatus.COMPLETED) {
+                continue;
+            }
+            StepExecution execution = jobExecution.createStepExecution(name);
+            execution.setExecutionContext(new ExecutionContext(last.getExecutionContext()));
+            jobRepository.add(execution);
+            restartable.add(execution);
+        }
+        return restartable;
+    }
+
+    private static long remaining(StepExecution execution) {
+        ExecutionContext context = execution.getExecutionContext();
+        synchronized (context) {
+            if (!context.containsKey(ColumnRangePartitioner.MIN_VALUE) || !context.containsKey(ColumnRangePartitioner.MAX_VALUE)) {
+                return 0;
+            }
+            return context.getLong(ColumnRangePartitioner.MAX_VALUE) - unread(context) + 1;
+        }
+    }
+
+    /*
+        The first value of a range its reader hasn't handed out yet, minValue only moves when a chunk is committed.
+    */
+    private static long unread(ExecutionContext context) {
+        long min = context.getLong(ColumnRangePartitioner.MIN_VALUE);
+        return Math.max(min, context.getLong(ColumnRangePartitioner.READ_VALUE, min));
+    }
+
+    private class Run {
+
+        private final StepExecution managerStepExecution;
+        private final BlockingDeque<StepExecution> queue;
+        private final Set<StepExecution> running = ConcurrentHashMap.newKeySet();
+        private final List<StepExecution> executed = new ArrayList<>();
+        private final AtomicInteger splitCount = new AtomicInteger();
+
+        Run(StepExecution managerStepExecution, List<StepExecution> partitions) {
+            this.managerStepExecution = managerStepExecution;
+            this.queue = new LinkedBlockingDeque<>(partitions);
+            this.splitCount.set(StringUtils.commaDelimitedListToSet(
+                    managerStepExecution.getExecutionContext().getString(SPLITS, "")).size());
+        }
+
+        void work() {
+            StepExecution next;
+            while ((next = take()) != null) {
+                running.add(next);
+                try {
+                    step.execute(next);
+                } catch (Throwable e) {
+                    logger.error("Partition " + next.getStepName() + " failed", e);
+                    next.addFailureException(e);
+                    next.setStatus(BatchStatus.FAILED);
+                } finally {
+                    running.remove(next);
+                }
+            }
+        }
+
+        private StepExecution take() {
+            StepExecution next = queue.poll();
+            if (next == null) {
+                next = steal();
+            }
+            if (next != null) {
+                synchronized (executed) {
+                    executed.add(next);
+                }
+            }
+            return next;
+        }
+
+        /*
+            Takes the upper half of the widest running range. The new partition is saved before the running one is
+            cut, so a crash in between can lead to a range being read twice, but never to one being skipped.
+            The cut itself is left for the running step to save: it updates its ExecutionContext after every chunk,
+            and saving it from here as well competes with that update for the same row while the chunk transaction
+            holds it.
+        */
+        private StepExecution steal() {
+            while (true) {
+                StepExecution victim = running.stream()
+                        .max(Comparator.comparingLong(WorkStealingPartitionHandler::remaining))
+                        .orElse(null);
+                if (victim == null || remaining(victim) < 2 * minSplitSize) {
+                    return null;
+                }
+
+                ExecutionContext victimContext = victim.getExecutionContext();
+                StepExecution split;
+                synchronized (victimContext) {
+                    long min = unread(victimContext);
+                    long max = victimContext.getLong(ColumnRangePartitioner.MAX_VALUE);
+                    if (max - min + 1 < 2 * minSplitSize || !running.contains(victim)) {
+                        continue;
+                    }
+                    long middle = min + (max - min) / 2;
+
+                    split = createSplit(middle + 1, max);
+                    victimContext.putLong(ColumnRangePartitioner.MAX_VALUE, middle);
+                }
+                logger.info("Split " + victim.getStepName() + ", " + split.getStepName() + " takes over "
+                        + split.getExecutionContext().getLong(ColumnRangePartitioner.MIN_VALUE) + ".."
+                        + split.getExecutionContext().getLong(ColumnRangePartitioner.MAX_VALUE));
+                return split;
+            }
+        }
+
+        private StepExecution createSplit(long min, long max) {
+            String name = step.getName() + ":split" + splitCount.incrementAndGet();
+
+            ExecutionContext context = new ExecutionContext();
+            context.putLong(ColumnRangePartitioner.MIN_VALUE, min);
+            context.putLong(ColumnRangePartitioner.MAX_VALUE, max);
+
+            StepExecution split;
+            synchronized (managerStepExecution) {
+                split = managerStepExecution.getJobExecution().createStepExecution(name);
+                split.setExecutionContext(context);
+                jobRepository.add(split);
+
+                ExecutionContext managerContext = managerStepExecution.getExecutionContext();
+                String splits = managerContext.getString(SPLITS, "");
+                managerContext.putString(SPLITS, splits.isEmpty() ? name : splits + "," + name);
+                jobRepository.updateExecutionContext(managerStepExecution);
+            }
+            return split;
+        }
+    }
+}
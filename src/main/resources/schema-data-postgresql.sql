@@ -8,4 +8,12 @@ CREATE TABLE customer (
   PRIMARY KEY (id)
 ) ;
 
-ALTER SEQUENCE customer_seq RESTART WITH 1;
\ No newline at end of file
+ALTER SEQUENCE customer_seq RESTART WITH 1;
+
+CREATE TABLE new_customer (
+  id bigint NOT NULL,
+  firstName varchar(255) default NULL,
+  lastName varchar(255) default NULL,
+  birthdate date,
+  PRIMARY KEY (id)
+) ;
\ No newline at end of file
@@ -0,0 +1,69 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveChunkSizeCompletionPolicyTests {
+
+    private final AdaptiveChunkSizeCompletionPolicy policy = new AdaptiveChunkSizeCompletionPolicy(1000);
+    private final AtomicInteger fetchSize = new AtomicInteger();
+    private final ChunkContext chunkContext = new ChunkContext(new StepContext(MetaDataInstanceFactory.createStepExecution()));
+
+    @Test
+    void growsAtMostHalfwayToDoubleWhenChunksAreFast() {
+        policy.setTargetLatency(60000);
+        policy.setFetchSizeConsumer(fetchSize::set);
+        policy.open(new ExecutionContext());
+
+        runChunk(1000);
+
+        assertThat(policy.getChunkSize()).isEqualTo(1500);
+        assertThat(fetchSize.get()).isEqualTo(1500);
+    }
+
+    @Test
+    void staysWithinTheBytesBudgetAndTheMinimum() {
+        policy.setTargetLatency(60000);
+        policy.setMinChunkSize(700);
+        policy.setMaxChunkBytes(20000);
+        policy.setItemSizeEstimator(item -> 100);
+        policy.open(new ExecutionContext());
+
+        runChunk(1000);
+        assertThat(policy.getChunkSize()).isEqualTo(750);
+
+        runChunk(750);
+        assertThat(policy.getChunkSize()).isEqualTo(700);
+    }
+
+    @Test
+    void restartsFromTheSavedChunkSize() {
+        ExecutionContext executionContext = new ExecutionContext();
+        policy.setTargetLatency(60000);
+        policy.open(executionContext);
+        runChunk(1000);
+        policy.update(executionContext);
+
+        AdaptiveChunkSizeCompletionPolicy restarted = new AdaptiveChunkSizeCompletionPolicy(1000);
+        restarted.setFetchSizeConsumer(fetchSize::set);
+        restarted.open(executionContext);
+
+        assertThat(restarted.getChunkSize()).isEqualTo(1500);
+        assertThat(fetchSize.get()).isEqualTo(1500);
+    }
+
+    private void runChunk(int items) {
+        policy.beforeChunk(chunkContext);
+        for (int i = 0; i < items; i++) {
+            policy.afterRead(i);
+        }
+        policy.afterChunk(chunkContext);
+    }
+}
@@ -0,0 +1,131 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChangeWatermarkListenerTests {
+
+    private final EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("/org/springframework/batch/core/schema-h2.sql")
+            .build();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
+    private final ChangeWatermarkListener listener = new ChangeWatermarkListener();
+    private final JobRepository jobRepository;
+
+    ChangeWatermarkListenerTests() throws Exception {
+        jdbcTemplate.execute("CREATE TABLE customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate varchar(255))");
+
+        JobRepositoryFactoryBean jobRepositoryFactory = new JobRepositoryFactoryBean();
+        jobRepositoryFactory.setDataSource(dataSource);
+        jobRepositoryFactory.setTransactionManager(new DataSourceTransactionManager(dataSource));
+        jobRepositoryFactory.afterPropertiesSet();
+        jobRepository = jobRepositoryFactory.getObject();
+
+        JobExplorerFactoryBean jobExplorerFactory = new JobExplorerFactoryBean();
+        jobExplorerFactory.setDataSource(dataSource);
+        jobExplorerFactory.afterPropertiesSet();
+        JobExplorer jobExplorer = jobExplorerFactory.getObject();
+
+        reader.setDataSource(dataSource);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("customer");
+        reader.setSortKey("id");
+        reader.setRowMapper(new CustomerRowMapper());
+        reader.setKeyExtractor(Customer::getId);
+        reader.afterPropertiesSet();
+
+        listener.setDataSource(dataSource);
+        listener.setJobExplorer(jobExplorer);
+        listener.setTable("customer");
+        listener.setColumn("id");
+        listener.setReader(reader);
+        listener.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void shutDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void nextRunReadsOnlyTheCustomersAddedSinceTheLastOne() throws Exception {
+        customers(1, 10);
+        assertThat(run(1, false)).hasSize(10);
+
+        customers(11, 15);
+        assertThat(run(2, false)).containsExactly(11L, 12L, 13L, 14L, 15L);
+        assertThat(run(3, false)).isEmpty();
+    }
+
+    @Test
+    void fullRefreshReadsEverything() throws Exception {
+        customers(1, 10);
+        run(1, false);
+
+        assertThat(run(2, true)).hasSize(10);
+    }
+
+    private List<Long> run(long runId, boolean fullRefresh) throws Exception {
+        JobParameters parameters = new JobParametersBuilder()
+                .addLong("run.id", runId)
+                .addString(ChangeWatermarkListener.FULL_REFRESH, String.valueOf(fullRefresh))
+                .toJobParameters();
+        JobExecution jobExecution = jobRepository.createJobExecution("job", parameters);
+        StepExecution stepExecution = jobExecution.createStepExecution("step1");
+        jobRepository.add(stepExecution);
+
+        listener.beforeStep(stepExecution);
+        List<Long> ids = readAll(stepExecution.getExecutionContext());
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        listener.afterStep(stepExecution);
+
+        jobRepository.updateExecutionContext(jobExecution);
+        jobExecution.setStatus(BatchStatus.COMPLETED);
+        jobExecution.setEndTime(new Date());
+        jobRepository.update(jobExecution);
+        return ids;
+    }
+
+    private List<Long> readAll(ExecutionContext executionContext) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        reader.open(executionContext);
+        try {
+            for (Customer customer = reader.read(); customer != null; customer = reader.read()) {
+                ids.add(customer.getId());
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    private void customers(long from, long to) {
+        for (long id = from; id <= to; id++) {
+            jdbcTemplate.update("INSERT INTO customer VALUES (?, ?, ?, ?)", id, "First" + id, "Last" + id, "1980-01-01");
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package as.springbatchlearn.domain;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkPipelineMetricsListenerTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ChunkPipelineMetrics metrics = new ChunkPipelineMetrics(registry);
+    private final ChunkPipelineMetricsListener listener = new ChunkPipelineMetricsListener(metrics);
+
+    @Test
+    void recordsEveryStageOfAChunk() {
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+        List<String> items = Arrays.asList("a", "b", "c");
+
+        listener.beforeChunk(chunkContext);
+        for (String item : items) {
+            listener.beforeRead();
+            listener.afterRead(item);
+        }
+        for (String item : items) {
+            listener.beforeProcess(item);
+            listener.afterProcess(item, item);
+        }
+        listener.beforeWrite(items);
+        listener.afterWrite(items);
+        listener.afterChunk(chunkContext);
+
+        assertThat(metrics.read().count()).isEqualTo(3);
+        assertThat(metrics.process().count()).isEqualTo(3);
+        assertThat(metrics.write().count()).isEqualTo(1);
+        assertThat(metrics.chunk().count()).isEqualTo(1);
+        assertThat(metrics.commit().count()).isEqualTo(1);
+        assertThat(registry.get("pipeline.items").tag("stage", "write").counter().count()).isEqualTo(3);
+        assertThat(metrics.report()).contains("pipeline.read", "pipeline.commit", "p95=").doesNotContain("chunking.reply");
+    }
+
+    @Test
+    void aChunkWithoutWriteRecordsNoCommit() {
+        ChunkContext chunkContext = new ChunkContext(new StepContext(MetaDataInstanceFactory.createStepExecution()));
+
+        listener.beforeChunk(chunkContext);
+        listener.beforeRead();
+        listener.onReadError(new IllegalStateException());
+        listener.afterChunk(chunkContext);
+
+        assertThat(metrics.read().count()).isZero();
+        assertThat(metrics.chunk().count()).isEqualTo(1);
+        assertThat(metrics.commit().count()).isZero();
+    }
+}
@@ -0,0 +1,159 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkResponseBatcherTests {
+
+    private final QueueChannel replies = new QueueChannel();
+    private final AtomicInteger active = new AtomicInteger();
+    private final ChunkResponseBatcher batcher = new ChunkResponseBatcher();
+    private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+    // the listener threads of the other consumers
+    private final ExecutorService consumers = Executors.newFixedThreadPool(2);
+
+    ChunkResponseBatcherTests() {
+        taskScheduler.initialize();
+
+        batcher.setOutputChannel(replies);
+        batcher.setTaskScheduler(taskScheduler);
+        batcher.setSlaveId("slave-1");
+        batcher.setConsumers(4);
+        batcher.setActive(active::get);
+        batcher.setMaxBatchSize(3);
+        batcher.setLinger(60000);
+    }
+
+    @AfterEach
+    void shutDown() {
+        consumers.shutdownNow();
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    void sendsAtOnceWhenNothingElseIsInHand() {
+        batcher.handleMessage(reply(0));
+
+        ChunkResponseBatch batch = (ChunkResponseBatch) replies.receive(0).getPayload();
+        assertThat(batch.getResponses()).hasSize(1);
+        assertThat(batch.getCapacity()).isEqualTo(4);
+    }
+
+    @Test
+    void waitsForTheOtherConsumersUntilTheBatchIsFull() throws Exception {
+        active.set(2);
+
+        CompletableFuture<Void> first = handOver(0);
+        CompletableFuture<Void> second = handOver(1);
+        awaitPending(2);
+        assertThat(replies.receive(0)).isNull();
+        assertThat(first).isNotDone();
+        assertThat(second).isNotDone();
+
+        batcher.handleMessage(reply(2));
+        ChunkResponseBatch batch = (ChunkResponseBatch) replies.receive(0).getPayload();
+        assertThat(batch.getResponses()).extracting(ChunkResponse::getSequence).containsExactlyInAnyOrder(0, 1, 2);
+        assertThat(batch.getCapacity()).isEqualTo(2);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void lingersAtMostTheConfiguredTime() {
+        batcher.setLinger(10);
+        active.set(1);
+
+        batcher.handleMessage(reply(0));
+
+        Message<?> message = replies.receive(0);
+        assertThat(message).isNotNull();
+        assertThat(((ChunkResponseBatch) message.getPayload()).getResponses()).hasSize(1);
+    }
+
+    @Test
+    void aFailedSendIsThrownBackAtEveryConsumerInTheBatch() throws Exception {
+        batcher.setOutputChannel((message, timeout) -> {
+            throw new MessageDeliveryException(message, "connection closed");
+        });
+        batcher.setLinger(100);
+        active.set(2);
+
+        CompletableFuture<Void> other = handOver(0);
+        awaitPending(1);
+
+        assertThatThrownBy(() -> batcher.handleMessage(reply(1))).isInstanceOf(MessageDeliveryException.class)
+                .hasMessageContaining("connection closed");
+        assertThatThrownBy(() -> other.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(MessageDeliveryException.class);
+    }
+
+    @Test
+    void aFailedSendOfASingleReplyIsThrownBackAtOnce() {
+        batcher.setOutputChannel((message, timeout) -> {
+            throw new MessageDeliveryException(message, "connection closed");
+        });
+
+        assertThatThrownBy(() -> batcher.handleMessage(reply(0))).isInstanceOf(MessageDeliveryException.class);
+
+        batcher.setOutputChannel(replies);
+        batcher.handleMessage(reply(1));
+        assertThat(((ChunkResponseBatch) replies.receive(0).getPayload()).getResponses())
+                .extracting(ChunkResponse::getSequence).containsExactly(1);
+    }
+
+    @Test
+    void aBatchSurvivesTheWireFormat() throws Exception {
+        CustomerChunkMessageConverter converter = new CustomerChunkMessageConverter();
+        active.set(1);
+        handOver(0);
+        handOver(1);
+        awaitPending(2);
+        batcher.handleMessage(reply(2));
+        ChunkResponseBatch batch = (ChunkResponseBatch) replies.receive(0).getPayload();
+
+        ChunkResponseBatch decoded = (ChunkResponseBatch) converter.decode(converter.encodeResponseBatch(batch));
+
+        assertThat(decoded.getSlaveId()).isEqualTo("slave-1");
+        assertThat(decoded.getConsumers()).isEqualTo(4);
+        assertThat(decoded.getCapacity()).isEqualTo(3);
+        assertThat(decoded.getResponses()).extracting(ChunkResponse::getSequence).containsExactlyInAnyOrder(0, 1, 2);
+        assertThat(decoded.getResponses()).extracting(response -> response.getStepContribution().getWriteCount())
+                .containsOnly(10);
+    }
+
+    private CompletableFuture<Void> handOver(int sequence) {
+        return CompletableFuture.runAsync(() -> batcher.handleMessage(reply(sequence)), consumers);
+    }
+
+    private void awaitPending(int pending) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (batcher.getPending() < pending && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(batcher.getPending()).isEqualTo(pending);
+    }
+
+    private GenericMessage<ChunkResponse> reply(int sequence) {
+        StepContribution contribution = MetaDataInstanceFactory.createStepExecution().createStepContribution();
+        contribution.incrementWriteCount(10);
+        return new GenericMessage<>(new ChunkResponse(sequence, 1L, contribution));
+    }
+}
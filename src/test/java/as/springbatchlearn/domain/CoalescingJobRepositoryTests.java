@@ -0,0 +1,117 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoalescingJobRepositoryTests {
+
+    private final EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .addScript("/org/springframework/batch/core/schema-h2.sql")
+            .build();
+    private final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    private final CoalescingJobRepository jobRepository;
+    private final JobExplorer jobExplorer;
+
+    CoalescingJobRepositoryTests() throws Exception {
+        JobRepositoryFactoryBean jobRepositoryFactory = new JobRepositoryFactoryBean();
+        jobRepositoryFactory.setDataSource(dataSource);
+        jobRepositoryFactory.setTransactionManager(transactionManager);
+        jobRepositoryFactory.setSerializer(new CompactExecutionContextSerializer());
+        jobRepositoryFactory.afterPropertiesSet();
+        jobRepository = new CoalescingJobRepository(jobRepositoryFactory.getObject());
+        jobRepository.setFlushChunks(3);
+        jobRepository.setFlushInterval(Long.MAX_VALUE);
+
+        JobExplorerFactoryBean jobExplorerFactory = new JobExplorerFactoryBean();
+        jobExplorerFactory.setDataSource(dataSource);
+        jobExplorerFactory.setSerializer(new CompactExecutionContextSerializer());
+        jobExplorerFactory.afterPropertiesSet();
+        jobExplorer = jobExplorerFactory.getObject();
+    }
+
+    @AfterEach
+    void shutDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void savesTheChunksEveryFlushChunks() throws Exception {
+        StepExecution stepExecution = start();
+
+        chunk(stepExecution, 1);
+        chunk(stepExecution, 2);
+        assertThat(saved(stepExecution).getCommitCount()).isZero();
+        assertThat(saved(stepExecution).getExecutionContext().containsKey("lastId")).isFalse();
+
+        chunk(stepExecution, 3);
+        assertThat(saved(stepExecution).getCommitCount()).isEqualTo(3);
+        assertThat(saved(stepExecution).getExecutionContext().getLong("lastId")).isEqualTo(3);
+
+        chunk(stepExecution, 4);
+        assertThat(saved(stepExecution).getExecutionContext().getLong("lastId")).isEqualTo(3);
+    }
+
+    @Test
+    void savesEverythingWhenTheStepEnds() throws Exception {
+        StepExecution stepExecution = start();
+        chunk(stepExecution, 1);
+        chunk(stepExecution, 2);
+
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        stepExecution.setEndTime(new Date());
+        jobRepository.updateExecutionContext(stepExecution);
+        jobRepository.update(stepExecution);
+
+        StepExecution saved = saved(stepExecution);
+        assertThat(saved.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(saved.getCommitCount()).isEqualTo(2);
+        assertThat(saved.getExecutionContext().getLong("lastId")).isEqualTo(2);
+    }
+
+    /*
+        What AbstractStep does before the first chunk, outside of any transaction.
+    */
+    private StepExecution start() throws Exception {
+        JobExecution jobExecution = jobRepository.createJobExecution("job", new JobParameters());
+        StepExecution stepExecution = jobExecution.createStepExecution("step1");
+        jobRepository.add(stepExecution);
+        stepExecution.setStartTime(new Date());
+        stepExecution.setStatus(BatchStatus.STARTED);
+        jobRepository.update(stepExecution);
+        return stepExecution;
+    }
+
+    /*
+        What TaskletStep does at the end of every chunk, in the chunk's transaction.
+    */
+    private void chunk(StepExecution stepExecution, long lastId) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            stepExecution.getExecutionContext().putLong("lastId", lastId);
+            jobRepository.updateExecutionContext(stepExecution);
+            stepExecution.incrementCommitCount();
+            jobRepository.update(stepExecution);
+        });
+    }
+
+    private StepExecution saved(StepExecution stepExecution) {
+        return jobExplorer.getStepExecution(stepExecution.getJobExecutionId(), stepExecution.getId());
+    }
+}
@@ -0,0 +1,130 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnRangePartitionerTests {
+
+    private final EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final ColumnRangePartitioner partitioner = new ColumnRangePartitioner();
+
+    ColumnRangePartitionerTests() {
+        jdbcTemplate.execute("CREATE TABLE customer (id bigint PRIMARY KEY)");
+
+        partitioner.setDataSource(dataSource);
+        partitioner.setTable("customer");
+        partitioner.setColumn("id");
+    }
+
+    @AfterEach
+    void shutDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void equalWidthRangesSpanTheWholeBigintRange() {
+        insert(LongStream.of(Long.MIN_VALUE + 1, 0, Long.MAX_VALUE));
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(4);
+
+        assertThat(bounds(partitions)).containsExactly(
+                new long[]{Long.MIN_VALUE + 1, -(1L << 62)},
+                new long[]{-(1L << 62) + 1, 0},
+                new long[]{1, 1L << 62},
+                new long[]{(1L << 62) + 1, Long.MAX_VALUE});
+    }
+
+    @Test
+    void equalWidthRangesEndAtTheLargestKey() {
+        insert(LongStream.rangeClosed(Long.MAX_VALUE - 9, Long.MAX_VALUE - 1));
+        insert(LongStream.of(Long.MAX_VALUE));
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(3);
+
+        assertThat(bounds(partitions)).containsExactly(
+                new long[]{Long.MAX_VALUE - 9, Long.MAX_VALUE - 6},
+                new long[]{Long.MAX_VALUE - 5, Long.MAX_VALUE - 2},
+                new long[]{Long.MAX_VALUE - 1, Long.MAX_VALUE});
+    }
+
+    @Test
+    void quantilesGiveEveryPartitionTheSameNumberOfRows() {
+        // 900 dense ids, then 100 ids a thousand apart: equal widths would put 925 of the rows into the first range
+        insert(LongStream.rangeClosed(1, 900));
+        insert(LongStream.rangeClosed(1, 100).map(i -> i * 1000));
+        partitioner.setSampleQuantiles(true);
+
+        Map<String, ExecutionContext> partitions = partitioner.partition(4);
+
+        List<long[]> bounds = bounds(partitions);
+        assertThat(bounds).hasSize(4);
+        assertThat(bounds.get(0)[0]).isEqualTo(1);
+        assertThat(bounds.get(3)[1]).isEqualTo(100_000);
+        for (int i = 1; i < bounds.size(); i++) {
+            assertThat(bounds.get(i)[0]).isEqualTo(bounds.get(i - 1)[1] + 1);
+        }
+        assertThat(bounds).extracting(range -> rows(range[0], range[1])).containsOnly(250L);
+    }
+
+    @Test
+    void repeatedQuantilesCollapse() {
+        insert(LongStream.rangeClosed(1, 3));
+        partitioner.setSampleQuantiles(true);
+
+        assertThat(bounds(partitioner.partition(8))).containsExactly(
+                new long[]{1, 1}, new long[]{2, 2}, new long[]{3, 3});
+    }
+
+    @Test
+    void theTargetRowCountDecidesTheNumberOfPartitions() {
+        insert(LongStream.rangeClosed(1, 1000));
+        partitioner.setTargetRowsPerPartition(300);
+
+        assertThat(partitioner.partition(10)).hasSize(4);
+
+        partitioner.setTargetRowsPerPartition(5000);
+        assertThat(bounds(partitioner.partition(10))).containsExactly(new long[]{1, 1000});
+    }
+
+    @Test
+    void anEmptyTableHasNoPartitions() {
+        partitioner.setSampleQuantiles(true);
+
+        assertThat(partitioner.partition(4)).isEmpty();
+    }
+
+    private void insert(LongStream ids) {
+        jdbcTemplate.batchUpdate("INSERT INTO customer VALUES (?)",
+                ids.mapToObj(id -> new Object[]{id}).collect(Collectors.toList()));
+    }
+
+    private long rows(long from, long to) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM customer WHERE id BETWEEN ? AND ?", Long.class, from, to);
+    }
+
+    // the [minValue, maxValue] of every partition, in partition order
+    private static List<long[]> bounds(Map<String, ExecutionContext> partitions) {
+        return IntStream.range(0, partitions.size())
+                .mapToObj(i -> partitions.get("partition" + i))
+                .map(context -> new long[]{context.getLong(ColumnRangePartitioner.MIN_VALUE),
+                        context.getLong(ColumnRangePartitioner.MAX_VALUE)})
+                .collect(Collectors.toList());
+    }
+}
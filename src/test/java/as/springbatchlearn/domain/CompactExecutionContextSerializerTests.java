@@ -0,0 +1,67 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.repository.dao.Jackson2ExecutionContextStringSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactExecutionContextSerializerTests {
+
+    private final CompactExecutionContextSerializer serializer = new CompactExecutionContextSerializer();
+
+    @Test
+    void roundTripsTheTypesOfOurContexts() throws Exception {
+        Map<String, Object> context = new HashMap<>();
+        context.put("KeysetPagingItemReader.lastId", 123456L);
+        context.put("chunk.size", 1000);
+        context.put("ratio", 0.25);
+        context.put("done", true);
+        context.put("batch.taskletType", "org.springframework.batch.core.step.item.ChunkOrientedTasklet");
+        context.put("multi\nline\\key", "a\\nb\nc\\");
+        context.put("", "");
+
+        byte[] bytes = serialize(context);
+
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).startsWith("#compact\n");
+        assertThat(deserialize(bytes)).isEqualTo(context);
+    }
+
+    @Test
+    void writesOtherTypesAsJson() throws Exception {
+        Map<String, Object> context = new HashMap<>();
+        context.put("lastId", 1L);
+        context.put("startedAt", new Date(1600000000000L));
+
+        byte[] bytes = serialize(context);
+
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).startsWith("{");
+        assertThat(deserialize(bytes)).isEqualTo(context);
+    }
+
+    @Test
+    void readsContextsSavedAsJson() throws Exception {
+        Map<String, Object> context = new HashMap<>();
+        context.put("lastId", 42L);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Jackson2ExecutionContextStringSerializer().serialize(context, out);
+
+        assertThat(deserialize(out.toByteArray())).isEqualTo(context);
+    }
+
+    private byte[] serialize(Map<String, Object> context) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(context, out);
+        return out.toByteArray();
+    }
+
+    private Map<String, Object> deserialize(byte[] bytes) throws Exception {
+        return serializer.deserialize(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,85 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerBlockTests {
+
+    private final CustomerBlockPool pool = new CustomerBlockPool();
+
+    @Test
+    void cursorReadsBackEveryRow() {
+        CustomerBlock block = block(customer(3, "Zo\u00eb", "Smith"), new Customer(7, null, "Doe", null), customer(1000, "Al", null));
+
+        CustomerBlock.Cursor cursor = block.cursor();
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getId()).isEqualTo(3);
+        assertThat(cursor.getFirstName()).isEqualTo("Zo\u00eb");
+        assertThat(cursor.getBirthdate()).isEqualTo(LocalDate.parse("1980-02-29"));
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getFirstName()).isNull();
+        assertThat(cursor.getFirstNameBytes()).isNull();
+        assertThat(cursor.hasBirthdate()).isFalse();
+        assertThat(cursor.next()).isTrue();
+        assertThat(cursor.getId()).isEqualTo(1000);
+        assertThat(cursor.getLastName()).isNull();
+        assertThat(cursor.next()).isFalse();
+
+        assertThat(block.getFirstId()).isEqualTo(3);
+        assertThat(block.getLastId()).isEqualTo(1000);
+        assertThat(block.toCustomers()).extracting("id").containsExactly(3L, 7L, 1000L);
+    }
+
+    @Test
+    void releasedBuffersAreReused() {
+        CustomerBlock block = block(customer(1, "a", "b"));
+        block.release();
+        block.release();
+
+        assertThat(pool.getPooled()).isEqualTo(1);
+        block(customer(2, "c", "d"));
+        assertThat(pool.getPooled()).isZero();
+    }
+
+    @Test
+    void blocksGoOnTheWireAsAChunkOfCustomers() {
+        CustomerChunkMessageConverter converter = new CustomerChunkMessageConverter();
+        List<CustomerBlock> blocks = Arrays.asList(block(customer(5, "a", "b"), customer(6, "c", "d")),
+                block(customer(9, "e", "f")));
+        ChunkRequest<CustomerBlock> request = new ChunkRequest<>(4, blocks, 11L,
+                MetaDataInstanceFactory.createStepExecution().createStepContribution());
+
+        ChunkRequest<?> decoded = (ChunkRequest<?>) converter.decode(converter.encodeRequest(request));
+
+        assertThat(decoded.getSequence()).isEqualTo(4);
+        assertThat(decoded.getItems()).extracting("id").containsExactly(5L, 6L, 9L);
+        assertThat(decoded.getItems()).extracting("lastName").containsExactly("b", "d", "f");
+    }
+
+    @Test
+    void copyFrameOfABlockIsTheFrameOfItsCustomers() {
+        CustomerCopyItemWriter writer = new CustomerCopyItemWriter();
+        List<Customer> customers = Arrays.asList(customer(1, "Zo\u00eb", "Smith"), new Customer(2, null, "Doe", null));
+
+        assertThat(writer.encode(block(customers.toArray(new Customer[0])))).isEqualTo(writer.encode(customers));
+    }
+
+    private CustomerBlock block(Customer... customers) {
+        CustomerBlock.Builder builder = CustomerBlock.builder(pool);
+        for (Customer customer : customers) {
+            builder.add(customer);
+        }
+        return builder.build();
+    }
+
+    private static Customer customer(long id, String firstName, String lastName) {
+        return new Customer(id, firstName, lastName, LocalDate.parse("1980-02-29"));
+    }
+}
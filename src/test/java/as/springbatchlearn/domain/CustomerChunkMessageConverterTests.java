@@ -0,0 +1,161 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerChunkMessageConverterTests {
+
+    private final CustomerChunkMessageConverter converter = new CustomerChunkMessageConverter();
+
+    // nulls, names beyond ASCII (two, three and four UTF-8 bytes), ids out of order and far apart, dates on both
+    // sides of the epoch
+    private final List<Customer> customers = Arrays.asList(
+            new Customer(1, "Leila", "Petty", LocalDate.of(1972, 6, 11)),
+            new Customer(2, null, "M\u00fcller", Customer.NO_BIRTHDATE),
+            new Customer(3, "Jos\u00e9", null, LocalDate.of(1900, 1, 1)),
+            new Customer(5_000_000_000L, "\u5f20\u4f1f", "\ud83d\ude00", LocalDate.of(2100, 12, 31)),
+            new Customer(4, "", "", LocalDate.ofEpochDay(0)),
+            new Customer(-7, null, null, Customer.NO_BIRTHDATE));
+
+    @Test
+    void requestsRoundTrip() {
+        ChunkRequest<?> decoded = (ChunkRequest<?>) converter.decode(converter.encodeRequest(
+                new ChunkRequest<>(12, customers, 11L, contribution())));
+
+        assertThat(decoded.getSequence()).isEqualTo(12);
+        assertThat(decoded.getJobId()).isEqualTo(11L);
+        assertThat(items(decoded.getItems())).containsExactlyElementsOf(customers);
+
+        StepContribution contribution = decoded.getStepContribution();
+        assertThat(contribution.getStepExecution().getStepName()).isEqualTo("step1");
+        assertThat(contribution.getStepExecution().getId()).isEqualTo(3L);
+        assertThat(contribution.getStepExecution().getJobExecution().getId()).isEqualTo(11L);
+        assertThat(contribution.getStepExecution().getJobExecution().getJobInstance().getJobName()).isEqualTo("job");
+        assertThat(contribution.getReadCount()).isEqualTo(2);
+        assertThat(contribution.getWriteCount()).isEqualTo(6);
+        assertThat(contribution.getFilterCount()).isEqualTo(1);
+        assertThat(contribution.getExitStatus().getExitCode()).isEqualTo(ExitStatus.EXECUTING.getExitCode());
+    }
+
+    @Test
+    void skipsAlreadyRecordedOnTheStepSurviveTheRoundTrip() {
+        JobExecution jobExecution = new JobExecution(new JobInstance(7L, "job"), 11L, null, null);
+        StepExecution stepExecution = new StepExecution("step1", jobExecution, 3L);
+        stepExecution.setReadSkipCount(2);
+        stepExecution.setProcessSkipCount(1);
+        StepContribution contribution = stepExecution.createStepContribution();
+        contribution.incrementReadSkipCount();
+
+        StepContribution decoded = ((ChunkRequest<?>) converter.decode(converter.encodeRequest(
+                new ChunkRequest<>(0, customers, 11L, contribution)))).getStepContribution();
+
+        assertThat(decoded.getSkipCount()).isEqualTo(1);
+        assertThat(decoded.getReadSkipCount()).isEqualTo(1);
+        assertThat(decoded.getStepSkipCount()).isEqualTo(4);
+    }
+
+    @Test
+    void compressedRequestsRoundTrip() {
+        converter.setCompressionThreshold(0);
+
+        byte[] bytes = converter.encodeRequest(new ChunkRequest<>(0, customers, 11L, contribution()));
+        ChunkRequest<?> decoded = (ChunkRequest<?>) converter.decode(bytes);
+
+        assertThat(bytes[2] & 1).isEqualTo(1);
+        assertThat(items(decoded.getItems())).containsExactlyElementsOf(customers);
+    }
+
+    @Test
+    void emptyChunksRoundTrip() {
+        ChunkRequest<?> request = (ChunkRequest<?>) converter.decode(converter.encodeRequest(
+                new ChunkRequest<>(0, Collections.<Customer>emptyList(), 11L, contribution())));
+        ProcessedChunkResponse<?> response = (ProcessedChunkResponse<?>) converter.decode(converter.encodeResponse(
+                new ProcessedChunkResponse<>(1, 11L, contribution(), Collections.<Customer>emptyList())));
+
+        assertThat(request.getItems()).isEmpty();
+        assertThat(response.getItems()).isEmpty();
+        assertThat(response.getSequence()).isEqualTo(1);
+    }
+
+    @Test
+    void failedResponsesKeepTheirMessageAndExitStatus() {
+        StepContribution contribution = contribution();
+        contribution.setExitStatus(ExitStatus.FAILED.addExitDescription("slave gone"));
+
+        ChunkResponse decoded = (ChunkResponse) converter.decode(converter.encodeResponse(
+                new ChunkResponse(false, 4, 11L, contribution, "Broken: M\u00fcller", true)));
+
+        assertThat(decoded.isSuccessful()).isFalse();
+        assertThat(decoded.isRedelivered()).isTrue();
+        assertThat(decoded.getSequence()).isEqualTo(4);
+        assertThat(decoded.getMessage()).isEqualTo("Broken: M\u00fcller");
+        assertThat(decoded.getStepContribution().getExitStatus().getExitCode()).isEqualTo(ExitStatus.FAILED.getExitCode());
+        assertThat(decoded.getStepContribution().getExitStatus().getExitDescription()).isEqualTo("slave gone");
+        assertThat(decoded.getStepContribution().getWriteCount()).isEqualTo(6);
+    }
+
+    @Test
+    void responseBatchesRoundTrip() {
+        ChunkResponseBatch batch = new ChunkResponseBatch("slave-\u00fc", 4, 3, Arrays.asList(
+                new ChunkResponse(0, 11L, contribution()),
+                new ProcessedChunkResponse<>(1, 11L, contribution(), customers),
+                new ChunkResponse(false, 2, null, contribution(), "failed", false)));
+
+        ChunkResponseBatch decoded = (ChunkResponseBatch) converter.decode(converter.encodeResponseBatch(batch));
+
+        assertThat(decoded.getSlaveId()).isEqualTo("slave-\u00fc");
+        assertThat(decoded.getConsumers()).isEqualTo(4);
+        assertThat(decoded.getCapacity()).isEqualTo(3);
+        assertThat(decoded.getResponses()).extracting(ChunkResponse::getSequence).containsExactly(0, 1, 2);
+        assertThat(decoded.getResponses()).extracting(ChunkResponse::isSuccessful).containsExactly(true, true, false);
+        assertThat(items(((ProcessedChunkResponse<?>) decoded.getResponses().get(1)).getItems())).containsExactlyElementsOf(customers);
+        assertThat(decoded.getResponses().get(2).getJobId()).isNull();
+    }
+
+    @Test
+    void otherPayloadsAreSerialized() {
+        Message message = converter.toMessage("not a chunk", new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentType()).isNotEqualTo(CustomerChunkMessageConverter.CONTENT_TYPE);
+        assertThat(converter.fromMessage(message)).isEqualTo("not a chunk");
+    }
+
+    @Test
+    void chunksGoThroughTheMessageConverter() {
+        Message message = converter.toMessage(new ChunkRequest<>(3, customers, 11L, contribution()), new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(CustomerChunkMessageConverter.CONTENT_TYPE);
+        assertThat(items(((ChunkRequest<?>) converter.fromMessage(message)).getItems())).containsExactlyElementsOf(customers);
+    }
+
+    private static List<Object> items(Collection<?> items) {
+        return new ArrayList<>(items);
+    }
+
+    private static StepContribution contribution() {
+        JobExecution jobExecution = new JobExecution(new JobInstance(7L, "job"), 11L, null, null);
+        StepContribution contribution = new StepExecution("step1", jobExecution, 3L).createStepContribution();
+        contribution.incrementReadCount();
+        contribution.incrementReadCount();
+        contribution.incrementWriteCount(6);
+        contribution.incrementFilterCount(1);
+        return contribution;
+    }
+}
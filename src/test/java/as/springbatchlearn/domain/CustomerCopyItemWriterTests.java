@@ -0,0 +1,191 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/*
+    H2 has no COPY, so the connection, the COPY API and the copy underneath it are mocks.
+*/
+class CustomerCopyItemWriterTests {
+
+    private static final String COPY_SQL = "COPY new_customer (id, firstName, lastName, birthdate) FROM STDIN (FORMAT binary)";
+
+    private final DataSource dataSource = mock(DataSource.class);
+    private final Connection connection = mock(Connection.class);
+    private final Savepoint savepoint = mock(Savepoint.class);
+    private final CopyIn copyIn = mock(CopyIn.class);
+    private final List<Customer> fallenBack = new ArrayList<>();
+    private final List<Customer> conflicting = new ArrayList<>();
+    private final CustomerCopyItemWriter writer = new CustomerCopyItemWriter();
+
+    private final List<Customer> customers = Arrays.asList(
+            new Customer(7, "Zo\u00eb", "Smith", LocalDate.of(2000, 1, 2)),
+            new Customer(5_000_000_000L, null, "Doe", LocalDate.of(1999, 12, 31)),
+            new Customer(9, "Al", null, Customer.NO_BIRTHDATE));
+
+    CustomerCopyItemWriterTests() throws SQLException {
+        PGConnection pgConnection = mock(PGConnection.class);
+        CopyManager copyManager = mock(CopyManager.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(false);
+        when(connection.setSavepoint()).thenReturn(savepoint);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+
+        writer.setDataSource(dataSource);
+        writer.setFallbackWriter(fallenBack::addAll);
+        writer.setConflictWriter(conflicting::addAll);
+        writer.afterPropertiesSet();
+    }
+
+    @Test
+    void aChunkIsEncodedAsOneBinaryCopyFrame() {
+        ByteBuffer expected = ByteBuffer.allocate(256);
+        expected.put(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0});
+        expected.putInt(0).putInt(0);
+
+        expected.putShort((short) 4);
+        expected.putInt(8).putLong(7);
+        expected.putInt(4).put("Zo\u00eb".getBytes(StandardCharsets.UTF_8));
+        expected.putInt(5).put("Smith".getBytes(StandardCharsets.UTF_8));
+        expected.putInt(4).putInt(1);
+
+        expected.putShort((short) 4);
+        expected.putInt(8).putLong(5_000_000_000L);
+        expected.putInt(-1);
+        expected.putInt(3).put("Doe".getBytes(StandardCharsets.UTF_8));
+        expected.putInt(4).putInt(-1);
+
+        expected.putShort((short) 4);
+        expected.putInt(8).putLong(9);
+        expected.putInt(2).put("Al".getBytes(StandardCharsets.UTF_8));
+        expected.putInt(-1);
+        expected.putInt(-1);
+
+        expected.putShort((short) -1);
+        expected.flip();
+        byte[] bytes = new byte[expected.remaining()];
+        expected.get(bytes);
+
+        assertThat(writer.encode(customers)).isEqualTo(bytes);
+    }
+
+    @Test
+    void aBlockIsEncodedLikeItsCustomers() {
+        CustomerBlock.Builder builder = CustomerBlock.builder(new CustomerBlockPool());
+        customers.forEach(builder::add);
+
+        assertThat(writer.encode(builder.build())).isEqualTo(writer.encode(customers));
+    }
+
+    @Test
+    void aCopyThatSucceedsReleasesItsSavepoint() throws Exception {
+        writer.write(customers);
+
+        verify(copyIn).writeToCopy(any(byte[].class), eq(0), anyInt());
+        verify(copyIn).endCopy();
+        verify(connection).releaseSavepoint(savepoint);
+        verify(connection, never()).rollback(savepoint);
+        verify(connection).close();
+        assertThat(fallenBack).isEmpty();
+        assertThat(conflicting).isEmpty();
+    }
+
+    @Test
+    void aFailedCopyRollsBackToTheSavepointAndFallsBack() throws Exception {
+        when(copyIn.isActive()).thenReturn(true);
+        doThrow(new SQLException("value too long for type character varying(255)", "22001"))
+                .when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+
+        writer.write(customers);
+
+        verify(copyIn).cancelCopy();
+        verify(connection).rollback(savepoint);
+        verify(connection, never()).releaseSavepoint(savepoint);
+        assertThat(fallenBack).containsExactlyElementsOf(customers);
+        assertThat(conflicting).isEmpty();
+    }
+
+    @Test
+    void aDuplicateKeyGoesToTheConflictWriter() throws Exception {
+        when(copyIn.endCopy()).thenThrow(new SQLException("duplicate key value violates unique constraint", "23505"));
+
+        writer.write(customers);
+
+        verify(connection).rollback(savepoint);
+        assertThat(conflicting).containsExactlyElementsOf(customers);
+        assertThat(fallenBack).isEmpty();
+    }
+
+    @Test
+    void aDuplicateKeyFallsBackWithoutAConflictWriter() throws Exception {
+        when(copyIn.endCopy()).thenThrow(new SQLException("duplicate key value violates unique constraint", "23505"));
+        writer.setConflictWriter(null);
+
+        writer.write(customers);
+
+        assertThat(fallenBack).containsExactlyElementsOf(customers);
+    }
+
+    @Test
+    void withoutAFallbackTheFailureIsThrown() throws Exception {
+        writer.setFallbackWriter(null);
+        when(copyIn.endCopy()).thenThrow(new SQLException("connection reset", "08006"));
+
+        assertThatThrownBy(() -> writer.write(customers)).isInstanceOf(SQLException.class);
+        verify(connection, never()).rollback(savepoint);
+        verify(connection).close();
+    }
+
+    @Test
+    void theCopyGoesIntoTheTable() throws Exception {
+        writer.write(customers);
+
+        verify(connection.unwrap(PGConnection.class).getCopyAPI()).copyIn(COPY_SQL);
+    }
+
+    @Test
+    void anUpsertEmptiesTheStagingTableBeforeItsCopy() throws Exception {
+        Statement statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        writer.setUpsert(true);
+        writer.afterPropertiesSet();
+
+        writer.write(customers);
+
+        InOrder inOrder = inOrder(statement, copyIn);
+        inOrder.verify(statement).execute("TRUNCATE new_customer_staging");
+        inOrder.verify(copyIn).endCopy();
+        inOrder.verify(statement).execute(startsWith("INSERT INTO new_customer "));
+    }
+}
@@ -0,0 +1,190 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerFileItemReaderTests {
+
+    @TempDir
+    Path directory;
+
+    private final List<Customer> customers = LongStream.rangeClosed(1, 500)
+            .mapToObj(id -> new Customer(id * 7, id % 50 == 0 ? null : "First" + id, id % 3 == 0 ? "M\u00fcller" : "Last" + id,
+                    id % 40 == 0 ? Customer.NO_BIRTHDATE : (int) (-7000 + id * 37)))
+            .collect(Collectors.toList());
+
+    @Test
+    void readsBackWhatWasWritten() throws Exception {
+        for (CustomerFileFormat format : Arrays.asList(CustomerFileFormat.delimited(','),
+                CustomerFileFormat.fixedWidth(8, 12, 12, 10))) {
+            Path file = directory.resolve("customers-" + format.hashCode());
+            write(file, format, new ExecutionContext());
+
+            assertThat(readAll(reader(file, format, 64), new ExecutionContext())).isEqualTo(customers);
+        }
+    }
+
+    @Test
+    void linesAreParsedFromTheirBytes() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        Files.write(file, "42,Leila,Petty,1972-06-11\r\n\n43,,M\u00fcller,\n44,Ann,Lee,2000-02-29".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(readAll(reader(file, CustomerFileFormat.delimited(','), 1 << 20), new ExecutionContext()))
+                .containsExactly(new Customer(42, "Leila", "Petty", LocalDate.of(1972, 6, 11)),
+                        new Customer(43, null, "M\u00fcller", Customer.NO_BIRTHDATE),
+                        new Customer(44, "Ann", "Lee", LocalDate.of(2000, 2, 29)));
+    }
+
+    @Test
+    void aBadLineFailsWithItsOffset() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        Files.write(file, "42,Leila,Petty,1972-06-11\n43,Ann,Lee,1972-13-01\n".getBytes(StandardCharsets.UTF_8));
+        CustomerFileItemReader reader = reader(file, CustomerFileFormat.delimited(','), 1 << 20);
+        reader.open(new ExecutionContext());
+
+        reader.read();
+        assertThatThrownBy(reader::read)
+                .isInstanceOf(FlatFileParseException.class)
+                .hasMessageContaining("byte 26")
+                .extracting(e -> ((FlatFileParseException) e).getInput()).isEqualTo("43,Ann,Lee,1972-13-01");
+        reader.close();
+    }
+
+    @Test
+    void restartContinuesAtTheSavedOffset() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        CustomerFileFormat format = CustomerFileFormat.delimited('|');
+        write(file, format, new ExecutionContext());
+
+        CustomerFileItemReader reader = reader(file, format, 256);
+        ExecutionContext executionContext = new ExecutionContext();
+        reader.open(executionContext);
+        for (int i = 0; i < 123; i++) {
+            reader.read();
+        }
+        reader.update(executionContext);
+        reader.close();
+
+        assertThat(readAll(reader(file, format, 256), executionContext)).isEqualTo(customers.subList(123, 500));
+    }
+
+    @Test
+    void rangesReadEveryLineOnce() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        CustomerFileFormat format = CustomerFileFormat.delimited(',');
+        write(file, format, new ExecutionContext());
+
+        FileRangePartitioner partitioner = new FileRangePartitioner();
+        partitioner.setResource(new FileSystemResource(file));
+        partitioner.setMinRangeSize(100);
+
+        List<Customer> read = new ArrayList<>();
+        for (ExecutionContext range : partitioner.partition(7).values()) {
+            CustomerFileItemReader reader = reader(file, format, 300);
+            reader.setPartitioned(true);
+            read.addAll(readAll(reader, range));
+            assertThat(range.getLong(ColumnRangePartitioner.MIN_VALUE))
+                    .isGreaterThan(range.getLong(ColumnRangePartitioner.MAX_VALUE));
+        }
+        read.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+
+        assertThat(read).isEqualTo(customers);
+    }
+
+    @Test
+    void aRangeRestartsAfterTheLastUpdateOnly() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        CustomerFileFormat format = CustomerFileFormat.delimited(',');
+        write(file, format, new ExecutionContext());
+        ExecutionContext range = new ExecutionContext();
+        range.putLong(ColumnRangePartitioner.MIN_VALUE, 0);
+        range.putLong(ColumnRangePartitioner.MAX_VALUE, Files.size(file) - 1);
+
+        CustomerFileItemReader reader = reader(file, format, 300);
+        reader.setPartitioned(true);
+        reader.open(range);
+        for (int i = 0; i < 100; i++) {
+            reader.read();
+        }
+        reader.update(range);
+        // a chunk read but rolled back
+        for (int i = 0; i < 10; i++) {
+            reader.read();
+        }
+        reader.close();
+
+        reader = reader(file, format, 300);
+        reader.setPartitioned(true);
+        assertThat(readAll(reader, range)).isEqualTo(customers.subList(100, 500));
+    }
+
+    @Test
+    void namesThatWouldNotReadBackAreRejected() {
+        byte[] line = new byte[128];
+        Customer customer = new Customer(1, "Smith, John", "Doe", Customer.NO_BIRTHDATE);
+
+        assertThatThrownBy(() -> CustomerFileFormat.delimited(',').format(customer, line))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(CustomerFileFormat.delimited(';').format(customer, line)).isEqualTo(19);
+        assertThatThrownBy(() -> CustomerFileFormat.fixedWidth(4, 8, 8, 10).format(customer, new byte[256]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void write(Path file, CustomerFileFormat format, ExecutionContext executionContext) throws Exception {
+        CustomerFileItemWriter writer = writer(file, format);
+        writer.open(executionContext);
+        for (int from = 0; from < customers.size(); from += 64) {
+            writer.write(customers.subList(from, Math.min(customers.size(), from + 64)));
+            writer.update(executionContext);
+        }
+        writer.close();
+    }
+
+    private static CustomerFileItemWriter writer(Path file, CustomerFileFormat format) {
+        CustomerFileItemWriter writer = new CustomerFileItemWriter();
+        writer.setResource(new FileSystemResource(file));
+        writer.setFormat(format);
+        writer.setMappedWindowSize(1000);
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    private static CustomerFileItemReader reader(Path file, CustomerFileFormat format, int mappedWindowSize) {
+        CustomerFileItemReader reader = new CustomerFileItemReader();
+        reader.setResource(new FileSystemResource(file));
+        reader.setFormat(format);
+        reader.setMappedWindowSize(mappedWindowSize);
+        reader.afterPropertiesSet();
+        return reader;
+    }
+
+    private static List<Customer> readAll(CustomerFileItemReader reader, ExecutionContext executionContext) throws Exception {
+        List<Customer> read = new ArrayList<>();
+        reader.open(executionContext);
+        try {
+            for (Customer customer = reader.read(); customer != null; customer = reader.read()) {
+                read.add(customer);
+            }
+            reader.update(executionContext);
+        } finally {
+            reader.close();
+        }
+        return read;
+    }
+}
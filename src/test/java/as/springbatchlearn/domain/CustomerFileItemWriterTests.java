@@ -0,0 +1,153 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CustomerFileItemWriterTests {
+
+    @TempDir
+    Path directory;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    private final List<Customer> customers = LongStream.rangeClosed(1, 500)
+            .mapToObj(id -> new Customer(id * 7, id % 50 == 0 ? null : "First" + id, id % 3 == 0 ? "M\u00fcller" : "Last" + id,
+                    id % 40 == 0 ? Customer.NO_BIRTHDATE : (int) (-7000 + id * 37)))
+            .collect(Collectors.toList());
+
+    @Test
+    void restartCutsTheFileBackToTheSavedOffset() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        CustomerFileFormat format = CustomerFileFormat.delimited(',');
+        ExecutionContext executionContext = new ExecutionContext();
+
+        CustomerFileItemWriter writer = writer(file, format, 1000);
+        writer.open(executionContext);
+        writer.write(customers.subList(0, 200));
+        writer.update(executionContext);
+        writer.write(customers.subList(200, 300));
+        writer.close();
+
+        writer = writer(file, format, 1000);
+        writer.open(executionContext);
+        writer.write(customers.subList(200, 500));
+        writer.close();
+
+        assertThat(readAll(file, format)).isEqualTo(customers);
+    }
+
+    @Test
+    void aChunkThatRollsBackLeavesNoLinesInTheFile() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        CustomerFileFormat format = CustomerFileFormat.delimited(',');
+        ExecutionContext executionContext = new ExecutionContext();
+        CustomerFileItemWriter writer = writer(file, format, 1000);
+        writer.open(executionContext);
+
+        chunk(writer, customers.subList(0, 100), executionContext);
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            write(writer, customers.subList(100, 150));
+            throw new IllegalStateException("the chunk fails after its write");
+        })).isInstanceOf(IllegalStateException.class);
+        writer.close();
+
+        assertThat(readAll(file, format)).isEqualTo(customers.subList(0, 100));
+        assertThat(executionContext.getLong("CustomerFileItemWriter.written")).isEqualTo(Files.size(file));
+    }
+
+    @Test
+    void theChunkAfterARollbackTakesThePlaceOfItsLines() throws Exception {
+        Path file = directory.resolve("customers.csv");
+        CustomerFileFormat format = CustomerFileFormat.fixedWidth(8, 12, 12, 10);
+        ExecutionContext executionContext = new ExecutionContext();
+        CustomerFileItemWriter writer = writer(file, format, 300);
+        writer.open(executionContext);
+
+        chunk(writer, customers.subList(0, 100), executionContext);
+        assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+            write(writer, customers.subList(100, 200));
+            throw new IllegalStateException("the chunk fails after its write");
+        })).isInstanceOf(IllegalStateException.class);
+        chunk(writer, customers.subList(100, 150), executionContext);
+        writer.close();
+
+        assertThat(readAll(file, format)).isEqualTo(customers.subList(0, 150));
+    }
+
+    @Test
+    void linesRollOverIntoTheNextWindow() throws Exception {
+        // 40 bytes hold one line at most, a fixed width line (43 bytes) doesn't fit into any window of that size
+        for (CustomerFileFormat format : Arrays.asList(CustomerFileFormat.delimited(','),
+                CustomerFileFormat.fixedWidth(8, 12, 12, 10))) {
+            for (int mappedWindowSize : new int[]{1, 40, 4096}) {
+                Path file = directory.resolve("customers-" + format.hashCode() + "-" + mappedWindowSize);
+                ExecutionContext executionContext = new ExecutionContext();
+                CustomerFileItemWriter writer = writer(file, format, mappedWindowSize);
+                writer.open(executionContext);
+                for (int from = 0; from < customers.size(); from += 64) {
+                    writer.write(customers.subList(from, Math.min(customers.size(), from + 64)));
+                    writer.update(executionContext);
+                }
+                writer.close();
+
+                assertThat(readAll(file, format)).isEqualTo(customers);
+                assertThat(Files.size(file)).isEqualTo(executionContext.getLong("CustomerFileItemWriter.written"));
+            }
+        }
+    }
+
+    // a chunk that commits: written, then the update of the step, both in the transaction of the chunk
+    private void chunk(CustomerFileItemWriter writer, List<Customer> items, ExecutionContext executionContext) {
+        transactionTemplate.executeWithoutResult(status -> {
+            write(writer, items);
+            writer.update(executionContext);
+        });
+    }
+
+    private static void write(CustomerFileItemWriter writer, List<Customer> items) {
+        try {
+            writer.write(items);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CustomerFileItemWriter writer(Path file, CustomerFileFormat format, int mappedWindowSize) {
+        CustomerFileItemWriter writer = new CustomerFileItemWriter();
+        writer.setResource(new FileSystemResource(file));
+        writer.setFormat(format);
+        writer.setMappedWindowSize(mappedWindowSize);
+        writer.afterPropertiesSet();
+        return writer;
+    }
+
+    private static List<Customer> readAll(Path file, CustomerFileFormat format) throws Exception {
+        CustomerFileItemReader reader = new CustomerFileItemReader();
+        reader.setResource(new FileSystemResource(file));
+        reader.setFormat(format);
+        reader.afterPropertiesSet();
+
+        List<Customer> read = new ArrayList<>();
+        reader.open(new ExecutionContext());
+        for (Customer customer = reader.read(); customer != null; customer = reader.read()) {
+            read.add(customer);
+        }
+        reader.close();
+        return read;
+    }
+}
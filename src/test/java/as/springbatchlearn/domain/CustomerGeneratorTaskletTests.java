@@ -0,0 +1,95 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerGeneratorTaskletTests {
+
+    private final EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+    private final CustomerGenerator generator = new CustomerGenerator();
+    private final CustomerGeneratorTasklet tasklet = new CustomerGeneratorTasklet();
+
+    CustomerGeneratorTaskletTests() {
+        jdbcTemplate.execute("CREATE TABLE customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate varchar(255))");
+
+        generator.setSeed(42);
+        generator.setRows(2500);
+        generator.setIdGap(3);
+        generator.afterPropertiesSet();
+
+        tasklet.setDataSource(dataSource);
+        tasklet.setGenerator(generator);
+        tasklet.setRowsPerTransaction(400);
+        tasklet.setBatchSize(150);
+        tasklet.setCopy(false);
+        tasklet.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void shutDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void partitionsLoadEveryRowOnce() throws Exception {
+        Map<String, ExecutionContext> partitions = CustomerGeneratorTasklet.partition(generator.getRows(), 3);
+        for (ExecutionContext partition : partitions.values()) {
+            executeToEnd(MetaDataInstanceFactory.createStepExecution(partition));
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM customer ORDER BY id", Long.class);
+        assertThat(ids).hasSize(2500);
+        assertThat(ids.get(0)).isEqualTo(generator.id(0));
+        assertThat(ids.get(2499)).isEqualTo(generator.id(2499));
+        assertThat(jdbcTemplate.queryForObject("SELECT birthdate FROM customer WHERE id = ?", String.class,
+                generator.id(1234))).isEqualTo(generator.birthdate(1234));
+    }
+
+    @Test
+    void restartGoesOnWithTheNextRow() throws Exception {
+        ExecutionContext partition = CustomerGeneratorTasklet.partition(generator.getRows(), 1).get("partition0");
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution(partition);
+        execute(stepExecution);
+        execute(stepExecution);
+
+        StepExecution restarted = MetaDataInstanceFactory.createStepExecution(stepExecution.getExecutionContext());
+        executeToEnd(restarted);
+
+        assertThat(stepExecution.getWriteCount() + restarted.getWriteCount()).isEqualTo(2500);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM customer", Integer.class)).isEqualTo(2500);
+    }
+
+    private void executeToEnd(StepExecution stepExecution) throws Exception {
+        while (execute(stepExecution) == RepeatStatus.CONTINUABLE) {
+            assertThat(stepExecution.getExecutionContext().getLong(CustomerGeneratorTasklet.NEXT_ROW))
+                    .isLessThan(stepExecution.getExecutionContext().getLong(CustomerGeneratorTasklet.TO_ROW));
+        }
+    }
+
+    private RepeatStatus execute(StepExecution stepExecution) throws Exception {
+        StepContribution contribution = stepExecution.createStepContribution();
+        RepeatStatus status = tasklet.execute(contribution, new ChunkContext(new StepContext(stepExecution)));
+        stepExecution.apply(contribution);
+        return status;
+    }
+}
@@ -0,0 +1,65 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerGeneratorTests {
+
+    @Test
+    void sameSeedGivesTheSameCustomers() {
+        CustomerGenerator one = generator(7, 200_000, 10, 1.5);
+        CustomerGenerator other = generator(7, 200_000, 10, 1.5);
+
+        for (long row = 0; row < 200_000; row += 997) {
+            assertThat(other.id(row)).isEqualTo(one.id(row));
+            assertThat(other.firstName(row)).isEqualTo(one.firstName(row));
+            assertThat(other.lastName(row)).isEqualTo(one.lastName(row));
+            assertThat(other.birthdate(row)).isEqualTo(one.birthdate(row));
+        }
+        assertThat(generator(8, 200_000, 10, 1.5).birthdate(0)).isNotEqualTo(one.birthdate(0));
+    }
+
+    @Test
+    void withoutGapsTheIdsNumberTheRows() {
+        CustomerGenerator generator = generator(1, 100_000, 1, 0);
+
+        assertThat(generator.id(0)).isEqualTo(1001);
+        assertThat(generator.id(99_999)).isEqualTo(101_000);
+        assertThat(generator.getMaxId()).isEqualTo(101_000);
+    }
+
+    @Test
+    void idsGrowWithTheRowsUpToTheMaxId() {
+        CustomerGenerator generator = generator(3, 300_000, 25, 2);
+
+        long previous = 0;
+        for (long row = 0; row < 300_000; row++) {
+            long id = generator.id(row);
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+        assertThat(previous).isLessThanOrEqualTo(generator.getMaxId());
+        assertThat(previous).isGreaterThan(300_000L * 5);
+    }
+
+    @Test
+    void birthdatesLookLikeTheSeedData() {
+        CustomerGenerator generator = generator(5, 1000, 1, 0);
+
+        for (long row = 0; row < 1000; row++) {
+            assertThat(generator.birthdate(row)).matches("19[5-9]\\d-[01]\\d-[0-3]\\d [0-2]\\d:[0-5]\\d:[0-5]\\d");
+        }
+    }
+
+    private CustomerGenerator generator(long seed, long rows, int idGap, double skew) {
+        CustomerGenerator generator = new CustomerGenerator();
+        generator.setSeed(seed);
+        generator.setRows(rows);
+        generator.setFirstId(1001);
+        generator.setIdGap(idGap);
+        generator.setSkew(skew);
+        generator.afterPropertiesSet();
+        return generator;
+    }
+}
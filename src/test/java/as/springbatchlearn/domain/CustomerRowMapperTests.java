@@ -0,0 +1,29 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerRowMapperTests {
+
+    @Test
+    void parsesTheDateOfATimestamp() {
+        for (LocalDate date = LocalDate.of(1899, 12, 1); date.getYear() < 2101; date = date.plusDays(1)) {
+            assertThat(CustomerRowMapper.parseEpochDay(date + " 12:34:53")).isEqualTo((int) date.toEpochDay());
+        }
+        assertThat(CustomerRowMapper.parseEpochDay("1980-02-29")).isEqualTo((int) LocalDate.of(1980, 2, 29).toEpochDay());
+        assertThat(CustomerRowMapper.parseEpochDay("1980-02-29T00:00")).isEqualTo((int) LocalDate.of(1980, 2, 29).toEpochDay());
+    }
+
+    @Test
+    void rejectsWhatIsNotADate() {
+        assertThat(CustomerRowMapper.parseEpochDay("1981-02-29")).isEqualTo(Customer.NO_BIRTHDATE);
+        assertThat(CustomerRowMapper.parseEpochDay("1981-13-01")).isEqualTo(Customer.NO_BIRTHDATE);
+        assertThat(CustomerRowMapper.parseEpochDay("1981-04-31")).isEqualTo(Customer.NO_BIRTHDATE);
+        assertThat(CustomerRowMapper.parseEpochDay("81-4-3")).isEqualTo(Customer.NO_BIRTHDATE);
+        assertThat(CustomerRowMapper.parseEpochDay("1981-04-3x")).isEqualTo(Customer.NO_BIRTHDATE);
+        assertThat(CustomerRowMapper.parseEpochDay("1981-04-030")).isEqualTo(Customer.NO_BIRTHDATE);
+    }
+}
@@ -0,0 +1,48 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.batch.item.support.PassThroughItemProcessor;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ItemProcessorChainTests {
+
+    private final ItemProcessor<Customer, Customer> upperCase = item -> new Customer(item.getId(),
+            item.getFirstName().toUpperCase(), item.getLastName(), item.getBirthEpochDay());
+    private final ItemProcessor<Customer, Customer> dropOdd = item -> item.getId() % 2 == 1 ? null : item;
+
+    @Test
+    void chainWithoutStagesIsANoOp() {
+        ItemProcessor<Customer, Customer> chain = ItemProcessorChain.of(null, new PassThroughItemProcessor<>());
+
+        assertThat(chain).isInstanceOf(PassThroughItemProcessor.class);
+        assertThat(ItemProcessorChain.isNoOp(chain)).isTrue();
+        assertThat(ItemProcessorChain.unlessNoOp(chain)).isNull();
+        assertThat(ItemProcessorChain.isNoOp(new CustomerBlockItemProcessor(chain, null))).isTrue();
+    }
+
+    @Test
+    void singleStageIsUsedAsItIs() {
+        ItemProcessor<Customer, Customer> chain = ItemProcessorChain.of(new PassThroughItemProcessor<>(), upperCase);
+
+        assertThat(chain).isSameAs(upperCase);
+        assertThat(ItemProcessorChain.unlessNoOp(chain)).isSameAs(upperCase);
+    }
+
+    @Test
+    void stagesRunInOrder() throws Exception {
+        ItemProcessor<Customer, Customer> chain = ItemProcessorChain.of(dropOdd, new PassThroughItemProcessor<>(), upperCase);
+
+        assertThat(chain).isInstanceOf(CompositeItemProcessor.class);
+        assertThat(chain.process(customer(1))).isNull();
+        assertThat(chain.process(customer(2)).getFirstName()).isEqualTo("FIRST2");
+    }
+
+    private static Customer customer(long id) {
+        return new Customer(id, "first" + id, "last" + id, LocalDate.ofEpochDay(id));
+    }
+}
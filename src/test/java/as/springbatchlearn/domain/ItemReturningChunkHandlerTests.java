@@ -0,0 +1,83 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.integration.chunk.ChunkProcessorChunkHandler;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ItemReturningChunkHandlerTests {
+
+    private final CustomerChunkMessageConverter converter = new CustomerChunkMessageConverter();
+
+    @Test
+    void returnsTheProcessedItemsInsteadOfWritingThem() throws Exception {
+        ItemReturningChunkHandler<Customer> handler = new ItemReturningChunkHandler<>();
+        ItemProcessor<Customer, Customer> upperCase = item -> item.getId() == 2 ? null
+                : new Customer(item.getId(), item.getFirstName().toUpperCase(), item.getLastName(), item.getBirthdate());
+        SimpleChunkProcessor<Customer, Customer> chunkProcessor = new SimpleChunkProcessor<>(upperCase, handler.getItemWriter());
+        ChunkProcessorChunkHandler<Customer> chunkHandler = new ChunkProcessorChunkHandler<>();
+        chunkHandler.setChunkProcessor(chunkProcessor);
+        handler.setDelegate(chunkHandler);
+
+        ChunkResponse response = handler.handleChunk(request(customer(1), customer(2), customer(3)));
+
+        assertThat(response).isInstanceOf(ProcessedChunkResponse.class);
+        List<?> items = ((ProcessedChunkResponse<?>) response).getItems();
+        assertThat(items).extracting("firstName").containsExactly("FIRST1", "FIRST3");
+        assertThat(response.getStepContribution().getFilterCount()).isEqualTo(1);
+        assertThat(response.getStepContribution().getWriteCount()).isEqualTo(2);
+    }
+
+    @Test
+    void acknowledgementsCarryTheCountsOnly() {
+        StepContribution contribution = MetaDataInstanceFactory.createStepExecution().createStepContribution();
+        contribution.incrementWriteCount(1000);
+        contribution.incrementFilterCount(3);
+        contribution.incrementProcessSkipCount();
+
+        byte[] bytes = converter.encodeResponse(new ChunkResponse(7, 11L, contribution));
+        ChunkResponse decoded = (ChunkResponse) converter.decode(bytes);
+
+        assertThat(bytes.length).isLessThan(20);
+        assertThat(decoded.isSuccessful()).isTrue();
+        assertThat(decoded.getSequence()).isEqualTo(7);
+        assertThat(decoded.getJobId()).isEqualTo(11L);
+        assertThat(decoded.getStepContribution().getWriteCount()).isEqualTo(1000);
+        assertThat(decoded.getStepContribution().getFilterCount()).isEqualTo(3);
+        assertThat(decoded.getStepContribution().getProcessSkipCount()).isEqualTo(1);
+    }
+
+    @Test
+    void processedItemsTravelBackWithTheResponse() {
+        StepContribution contribution = MetaDataInstanceFactory.createStepExecution().createStepContribution();
+        contribution.incrementWriteCount(2);
+        List<Customer> items = Arrays.asList(customer(5), customer(9));
+
+        Object decoded = converter.decode(converter.encodeResponse(new ProcessedChunkResponse<>(3, 11L, contribution, items)));
+
+        assertThat(decoded).isInstanceOf(ProcessedChunkResponse.class);
+        ProcessedChunkResponse<?> response = (ProcessedChunkResponse<?>) decoded;
+        assertThat(response.getSequence()).isEqualTo(3);
+        assertThat(response.getItems()).extracting("id").containsExactly(5L, 9L);
+        assertThat(response.getStepContribution().getWriteCount()).isEqualTo(2);
+    }
+
+    private static ChunkRequest<Customer> request(Customer... customers) {
+        return new ChunkRequest<>(0, Arrays.asList(customers), 11L,
+                MetaDataInstanceFactory.createStepExecution().createStepContribution());
+    }
+
+    private static Customer customer(long id) {
+        return new Customer(id, "first" + id, "last" + id, LocalDate.ofEpochDay(0));
+    }
+}
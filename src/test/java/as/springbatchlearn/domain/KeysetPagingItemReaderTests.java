@@ -0,0 +1,139 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeysetPagingItemReaderTests {
+
+    private static final String LAST_KEY = "KeysetPagingItemReader.lastId";
+    private static final String ACKNOWLEDGED = "acknowledged";
+
+    private final EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+    KeysetPagingItemReaderTests() {
+        jdbcTemplate.execute("CREATE TABLE customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate varchar(255))");
+        jdbcTemplate.execute("CREATE TABLE new_customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate date)");
+        // every third id is missing
+        jdbcTemplate.batchUpdate("INSERT INTO customer VALUES (?, ?, ?, ?)",
+                LongStream.rangeClosed(1, 150)
+                        .filter(id -> id % 3 != 0)
+                        .mapToObj(id -> new Object[]{id, "First" + id, "Last" + id, "1980-01-01 12:00:00"})
+                        .collect(Collectors.toList()));
+    }
+
+    @AfterEach
+    void shutDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void restartResumesAtTheFirstCustomerThatIsNotWritten() throws Exception {
+        written(1, 40);
+        written(61, 70);
+
+        assertThat(readAfter(20)).first().isEqualTo(41L);
+    }
+
+    @Test
+    void restartAfterEverythingWasWrittenReadsNothing() throws Exception {
+        written(1, 150);
+
+        assertThat(readAfter(20)).isEmpty();
+    }
+
+    @Test
+    void restartReadsTheChunkThatWasInFlightAtTheSavedKey() throws Exception {
+        // the chunk of 31..40 was sent before the commit that saved 60 and never acknowledged, later ones were
+        written(1, 30);
+        written(41, 60);
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putLong(LAST_KEY, 60);
+        executionContext.putLong(ACKNOWLEDGED, 30);
+
+        KeysetPagingItemReader<Customer> reader = reader();
+        reader.open(executionContext);
+
+        assertThat(readAll(reader)).first().isEqualTo(31L);
+    }
+
+    @Test
+    void restartSkipsWhatWasWrittenAfterTheSavedKey() throws Exception {
+        // the chunk of 61..70 was sent and written, but the master failed before it committed past 60
+        written(1, 70);
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putLong(LAST_KEY, 60);
+        executionContext.putLong(ACKNOWLEDGED, 60);
+
+        KeysetPagingItemReader<Customer> reader = reader();
+        reader.open(executionContext);
+
+        assertThat(readAll(reader)).first().isEqualTo(71L);
+    }
+
+    @Test
+    void firstRunReadsEverything() throws Exception {
+        written(1, 40);
+
+        KeysetPagingItemReader<Customer> reader = reader();
+        reader.open(new ExecutionContext());
+        assertThat(readAll(reader)).hasSize(100).first().isEqualTo(1L);
+    }
+
+    private List<Long> readAfter(long savedKey) throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.putLong(LAST_KEY, savedKey);
+
+        KeysetPagingItemReader<Customer> reader = reader();
+        reader.open(executionContext);
+        return readAll(reader);
+    }
+
+    private List<Long> readAll(KeysetPagingItemReader<Customer> reader) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        try {
+            for (Customer customer = reader.read(); customer != null; customer = reader.read()) {
+                ids.add(customer.getId());
+            }
+        } finally {
+            reader.close();
+        }
+        return ids;
+    }
+
+    private void written(long from, long to) {
+        jdbcTemplate.update("INSERT INTO new_customer (id, firstName, lastName) SELECT id, firstName, lastName FROM customer WHERE id BETWEEN ? AND ?", from, to);
+    }
+
+    private KeysetPagingItemReader<Customer> reader() {
+        KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
+
+        reader.setDataSource(dataSource);
+        reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+        reader.setFromClause("customer");
+        reader.setSortKey("id");
+        reader.setRowMapper(new CustomerRowMapper());
+        reader.setKeyExtractor(Customer::getId);
+        reader.setPageSize(16);
+        reader.setWrittenTable("new_customer");
+        reader.setAcknowledgedKey(ACKNOWLEDGED);
+        reader.afterPropertiesSet();
+
+        return reader;
+    }
+}
@@ -0,0 +1,114 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadAwareChunkRouterTests {
+
+    private final QueueChannel requests = new QueueChannel();
+    private final LoadAwareChunkRouter router = new LoadAwareChunkRouter();
+    private final AtomicLong now = new AtomicLong();
+
+    LoadAwareChunkRouterTests() {
+        router.setClock(now::get);
+        router.setMessagingOperations(new MessagingTemplate(requests));
+        router.setSharedQueue("chunking.requests");
+        router.setSlaveTimeout(5000);
+    }
+
+    @Test
+    void goesToTheSharedQueueUntilASlaveIsHeardFrom() {
+        assertThat(router.route(request(0)).getHeaders().get(LoadAwareChunkRouter.ROUTE)).isEqualTo("chunking.requests");
+
+        heartbeat("fast", 2, 0, 0);
+
+        assertThat(route(1)).isEqualTo("chunking.requests.fast");
+    }
+
+    @Test
+    void theFastSlaveGetsMoreChunksThanTheSlowOne() {
+        heartbeat("fast", 2, 10, 10_000_000);
+        heartbeat("slow", 2, 10, 40_000_000);
+
+        int fast = 0;
+        for (int sequence = 0; sequence < 10; sequence++) {
+            if ("chunking.requests.fast".equals(route(sequence))) {
+                fast++;
+            }
+        }
+
+        // The fast slave finishes 4 rounds of its 2 consumers in the time the slow one finishes 1
+        assertThat(fast).isEqualTo(8);
+    }
+
+    @Test
+    void aFreeConsumerOfASlowSlaveIsNotTakenWhileAFastOneHasOne() {
+        heartbeat("fast", 2, 10, 10_000_000);
+        heartbeat("slow", 8, 10, 40_000_000);
+
+        assertThat(route(0)).isEqualTo("chunking.requests.fast");
+        assertThat(route(1)).isEqualTo("chunking.requests.fast");
+
+        router.completed(0);
+        assertThat(route(2)).isEqualTo("chunking.requests.fast");
+    }
+
+    @Test
+    void theChunksOfASilentSlaveAreSentToTheOthers() {
+        heartbeat("fast", 1, 10, 10_000_000);
+        heartbeat("slow", 1, 10, 12_000_000);
+        assertThat(route(0)).isEqualTo("chunking.requests.fast");
+        assertThat(route(1)).isEqualTo("chunking.requests.slow");
+        assertThat(route(2)).isEqualTo("chunking.requests.fast");
+        assertThat(route(3)).isEqualTo("chunking.requests.slow");
+        router.completed(3);
+
+        now.addAndGet(4000);
+        heartbeat("fast", 1, 0, 0);
+        now.addAndGet(2000);
+        router.checkSilence();
+
+        assertThat(router.getSlaveCount()).isEqualTo(1);
+        Message<?> redispatched = requests.receive(0);
+        assertThat(redispatched.getHeaders().get(LoadAwareChunkRouter.ROUTE)).isEqualTo("chunking.requests.fast");
+        assertThat(((ChunkRequest<?>) redispatched.getPayload()).getSequence()).isEqualTo(1);
+        assertThat(requests.receive(0)).isNull();
+    }
+
+    @Test
+    void withoutSlavesLeftTheChunksGoToTheSharedQueue() {
+        heartbeat("slow", 1, 10, 10_000_000);
+        route(0);
+
+        now.addAndGet(6000);
+        router.checkSilence();
+
+        assertThat(router.getSlaveCount()).isZero();
+        assertThat(requests.receive(0).getHeaders().get(LoadAwareChunkRouter.ROUTE)).isEqualTo("chunking.requests");
+        assertThat(route(1)).isEqualTo("chunking.requests");
+    }
+
+    private String route(int sequence) {
+        return (String) router.route(request(sequence)).getHeaders().get(LoadAwareChunkRouter.ROUTE);
+    }
+
+    private void heartbeat(String slaveId, int consumers, long chunks, long handleNanos) {
+        router.handleMessage(new GenericMessage<>(new SlaveHeartbeat(slaveId, "chunking.requests." + slaveId,
+                consumers, 0, chunks, chunks * handleNanos)));
+    }
+
+    private static ChunkRequest<Customer> request(int sequence) {
+        return new ChunkRequest<>(sequence, Collections.emptyList(), 1L,
+                MetaDataInstanceFactory.createStepExecution().createStepContribution());
+    }
+}
@@ -0,0 +1,100 @@
+package as.springbatchlearn.domain;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LookupCacheTests {
+
+    private final List<Set<Integer>> queries = new ArrayList<>();
+    private final Function<Set<Integer>, Map<Integer, String>> loader = keys -> {
+        queries.add(keys);
+        Map<Integer, String> values = new HashMap<>();
+        for (Integer key : keys) {
+            if (key % 10 != 0) {
+                values.put(key, "value" + key);
+            }
+        }
+        return values;
+    };
+
+    @Test
+    void preloadAsksForTheMissingKeysAtOnce() {
+        LookupCache<Integer, String> cache = new LookupCache<>(100, Duration.ofMinutes(1));
+
+        cache.preload(Arrays.asList(1, 2, 3), loader);
+        cache.preload(Arrays.asList(2, 3, 4, 5), loader);
+
+        assertThat(queries).containsExactly(Set.of(1, 2, 3), Set.of(4, 5));
+        assertThat(cache.get(4, loader)).isEqualTo("value4");
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isZero();
+        assertThat(cache.getLoads()).isEqualTo(5);
+    }
+
+    @Test
+    void keysWithoutAValueAreCachedToo() {
+        LookupCache<Integer, String> cache = new LookupCache<>(100, Duration.ofMinutes(1));
+
+        assertThat(cache.get(10, loader)).isNull();
+        assertThat(cache.get(10, loader)).isNull();
+
+        assertThat(queries).hasSize(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedBeyondMaxSize() {
+        LookupCache<Integer, String> cache = new LookupCache<>(2, Duration.ofMinutes(1), 1);
+
+        cache.get(1, loader);
+        cache.get(2, loader);
+        cache.get(1, loader);
+        cache.get(3, loader);
+        cache.get(1, loader);
+        cache.get(2, loader);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getEvictions()).isEqualTo(2);
+        assertThat(queries).containsExactly(Set.of(1), Set.of(2), Set.of(3), Set.of(2));
+    }
+
+    @Test
+    void expiredEntriesAreLoadedAgain() {
+        LookupCache<Integer, String> cache = new LookupCache<>(100, Duration.ofNanos(1));
+
+        cache.get(1, loader);
+        cache.get(1, loader);
+
+        assertThat(queries).hasSize(2);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void exposesItsCountsAsMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        LookupCache<Integer, String> cache = new LookupCache<>(100, Duration.ofMinutes(1));
+        cache.bindTo(registry, "alias");
+
+        cache.preload(Arrays.asList(1, 2), loader);
+        cache.get(1, loader);
+        cache.get(7, loader);
+
+        assertThat(registry.get("lookup.cache.requests").tag("cache", "alias").tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("lookup.cache.requests").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("lookup.cache.queries").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("lookup.cache.loads").functionCounter().count()).isEqualTo(3);
+        assertThat(registry.get("lookup.cache.size").gauge().value()).isEqualTo(3);
+    }
+}
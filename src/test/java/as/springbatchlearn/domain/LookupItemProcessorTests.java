@@ -0,0 +1,103 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LookupItemProcessorTests {
+
+    private final EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+    private final LookupCache<String, String[]> cache = new LookupCache<>(1000, Duration.ofMinutes(5));
+    private final LookupItemProcessor<Customer, String, String[]> processor = new LookupItemProcessor<>();
+
+    LookupItemProcessorTests() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE name_alias (name varchar(255) PRIMARY KEY, canonical varchar(255))");
+        jdbcTemplate.update("INSERT INTO name_alias VALUES ('Bob', 'Robert'), ('Liz', 'Elizabeth'), ('Kate', 'Katherine')");
+
+        JdbcLookup<String, String[]> lookup = new JdbcLookup<>();
+        lookup.setDataSource(dataSource);
+        lookup.setSelectClause("name, canonical");
+        lookup.setFromClause("name_alias");
+        lookup.setKeyColumn("name");
+        lookup.setRowMapper((resultSet, i) -> new String[]{resultSet.getString(1), resultSet.getString(2)});
+        lookup.setKeyExtractor(row -> row[0]);
+        lookup.setMaxKeysPerQuery(2);
+        lookup.afterPropertiesSet();
+
+        processor.setCache(cache);
+        processor.setLookup(lookup);
+        processor.setKeyExtractor(Customer::getFirstName);
+        processor.setEnricher((customer, alias) -> alias == null ? customer
+                : new Customer(customer.getId(), alias[1], customer.getLastName(), customer.getBirthEpochDay()));
+        processor.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void shutDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void looksUpTheKeysOfAChunkTogether() {
+        List<Customer> chunk = Arrays.asList(customer(1, "Bob"), customer(2, "Liz"), customer(3, "Bob"),
+                customer(4, "Ann"), customer(5, "Kate"));
+
+        processor.beforeChunk(chunk);
+        List<String> firstNames = new ArrayList<>();
+        for (Customer customer : chunk) {
+            firstNames.add(processor.process(customer).getFirstName());
+        }
+
+        assertThat(firstNames).containsExactly("Robert", "Elizabeth", "Robert", "Ann", "Katherine");
+        assertThat(cache.getQueries()).isEqualTo(1);
+        assertThat(cache.getLoads()).isEqualTo(4);
+        assertThat(cache.getMisses()).isZero();
+    }
+
+    @Test
+    void nextChunkOnlyLooksUpWhatIsNew() {
+        processor.beforeChunk(Arrays.asList(customer(1, "Bob"), customer(2, "Ann")));
+        processor.beforeChunk(Arrays.asList(customer(3, "Bob"), customer(4, "Ann"), customer(5, "Liz")));
+
+        assertThat(cache.getQueries()).isEqualTo(2);
+        assertThat(cache.getLoads()).isEqualTo(3);
+    }
+
+    @Test
+    void chainShowsTheChunkToItsChunkAwareStages() throws Exception {
+        ItemProcessor<Customer, Customer> upperCase = item -> new Customer(item.getId(),
+                item.getFirstName().toUpperCase(), item.getLastName(), item.getBirthEpochDay());
+        ItemProcessor<Customer, Customer> chain = ItemProcessorChain.of(processor, upperCase);
+        List<Customer> chunk = Arrays.asList(customer(1, "Bob"), customer(2, "Liz"));
+
+        ChunkAwareProcessorListener listener = new ChunkAwareProcessorListener((ChunkAwareItemProcessor<?, ?>) chain);
+        for (Customer customer : chunk) {
+            listener.afterRead(customer);
+        }
+        listener.beforeProcess(chunk.get(0));
+
+        assertThat(cache.getQueries()).isEqualTo(1);
+        assertThat(chain.process(chunk.get(1)).getFirstName()).isEqualTo("ELIZABETH");
+        assertThat(cache.getQueries()).isEqualTo(1);
+    }
+
+    private static Customer customer(long id, String firstName) {
+        return new Customer(id, firstName, "Last" + id, LocalDate.of(1980, 1, 1));
+    }
+}
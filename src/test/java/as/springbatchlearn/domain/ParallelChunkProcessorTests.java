@@ -0,0 +1,70 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.step.item.Chunk;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelChunkProcessorTests {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final List<Customer> written = new ArrayList<>();
+    private final ParallelChunkProcessor<Customer, Customer> chunkProcessor = new ParallelChunkProcessor<>(item -> {
+        threads.add(Thread.currentThread());
+        return item.getId() % 2 == 1 ? null : item;
+    }, written::addAll);
+
+    ParallelChunkProcessorTests() {
+        chunkProcessor.setExecutor(executor);
+        chunkProcessor.setParallelism(4);
+        chunkProcessor.setMinSliceSize(10);
+    }
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void filteredItemsAreCountedOnceOnTheParallelPath() throws Exception {
+        StepContribution contribution = MetaDataInstanceFactory.createStepExecution().createStepContribution();
+
+        chunkProcessor.process(contribution, chunk(100));
+
+        assertThat(threads).doesNotContain(Thread.currentThread());
+        assertThat(written).extracting(Customer::getId).startsWith(0L, 2L, 4L).hasSize(50);
+        assertThat(contribution.getFilterCount()).isEqualTo(50);
+        assertThat(contribution.getWriteCount()).isEqualTo(50);
+    }
+
+    @Test
+    void smallChunksAreProcessedInPlaceAndCountedTheSame() throws Exception {
+        StepContribution contribution = MetaDataInstanceFactory.createStepExecution().createStepContribution();
+
+        chunkProcessor.process(contribution, chunk(15));
+
+        assertThat(threads).containsOnly(Thread.currentThread());
+        assertThat(contribution.getFilterCount()).isEqualTo(7);
+        assertThat(contribution.getWriteCount()).isEqualTo(8);
+    }
+
+    private static Chunk<Customer> chunk(int size) {
+        Chunk<Customer> chunk = new Chunk<>();
+        for (long id = 0; id < size; id++) {
+            chunk.add(new Customer(id, "first" + id, "last" + id, LocalDate.ofEpochDay(id)));
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,65 @@
+package as.springbatchlearn.domain;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlaveStartupTimerTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicLong uptime = new AtomicLong();
+    private final SlaveStartupTimer startupTimer = new SlaveStartupTimer();
+
+    SlaveStartupTimerTests() {
+        startupTimer.setMetrics(new ChunkPipelineMetrics(registry));
+        startupTimer.setUptime(uptime::get);
+    }
+
+    @Test
+    void recordsWhenTheSlaveIsReady() {
+        uptime.set(2500);
+
+        startupTimer.onApplicationEvent(new ApplicationReadyEvent(new SpringApplication(), new String[0],
+                new GenericApplicationContext()));
+
+        assertThat(startup("ready").count()).isEqualTo(1);
+        assertThat(startup("ready").totalTime(TimeUnit.MILLISECONDS)).isEqualTo(2500);
+    }
+
+    @Test
+    void recordsTheFirstChunkOnly() {
+        uptime.set(3100);
+        startupTimer.chunkHandled();
+        uptime.set(3200);
+        startupTimer.chunkHandled();
+
+        assertThat(startup("first-chunk").count()).isEqualTo(1);
+        assertThat(startup("first-chunk").totalTime(TimeUnit.MILLISECONDS)).isEqualTo(3100);
+    }
+
+    @Test
+    void handlingChunksRecordsTheFirstOne() throws Exception {
+        MeteredChunkHandler<Customer> chunkHandler = new MeteredChunkHandler<>(chunk -> null,
+                new ChunkPipelineMetrics(registry));
+        chunkHandler.setStartupTimer(startupTimer);
+        uptime.set(4000);
+
+        chunkHandler.handleChunk(null);
+        chunkHandler.handleChunk(null);
+
+        assertThat(chunkHandler.getHandled()).isEqualTo(2);
+        assertThat(startup("first-chunk").totalTime(TimeUnit.MILLISECONDS)).isEqualTo(4000);
+    }
+
+    private Timer startup(String phase) {
+        return registry.get("slave.startup").tag("phase", phase).timer();
+    }
+}
@@ -0,0 +1,107 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.integration.chunk.ChunkRequest;
+import org.springframework.batch.integration.chunk.ChunkResponse;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.messaging.support.GenericMessage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WindowedChunkMessageChannelItemWriterTests {
+
+    private final QueueChannel requests = new QueueChannel();
+    private final StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+    private final List<Customer> written = new ArrayList<>();
+    private final WindowedChunkMessageChannelItemWriter<Customer> chunkWriter = new WindowedChunkMessageChannelItemWriter<>();
+
+    WindowedChunkMessageChannelItemWriterTests() {
+        chunkWriter.setMessagingOperations(new MessagingTemplate(requests));
+        chunkWriter.setReplyTimeout(1000);
+        chunkWriter.beforeStep(stepExecution);
+        chunkWriter.open(new ExecutionContext());
+    }
+
+    @Test
+    void returnedItemsAreWrittenBeforeTheChunkIsAcknowledged() throws Exception {
+        chunkWriter.setItemWriter(items -> {
+            assertThat(chunkWriter.getInFlight()).isEqualTo(1);
+            written.addAll(items);
+        });
+        chunkWriter.write(Arrays.asList(customer(1), customer(2)));
+
+        reply(Arrays.asList(customer(1), customer(2)));
+
+        assertThat(written).extracting(Customer::getId).containsExactly(1L, 2L);
+        assertThat(chunkWriter.getInFlight()).isZero();
+        assertThat(chunkWriter.afterStep(completed())).isEqualTo(ExitStatus.COMPLETED.addExitDescription("Waited for 1 results."));
+    }
+
+    @Test
+    void aFailedWriteOfReturnedItemsFailsTheStep() throws Exception {
+        chunkWriter.setItemWriter(items -> {
+            throw new IllegalStateException("duplicate key");
+        });
+        chunkWriter.write(Arrays.asList(customer(1), customer(2)));
+
+        reply(Arrays.asList(customer(1), customer(2)));
+
+        assertThat(chunkWriter.getInFlight()).isZero();
+        StepExecution completed = completed();
+        assertThat(chunkWriter.afterStep(completed).getExitCode()).isEqualTo(ExitStatus.FAILED.getExitCode());
+        assertThat(completed.getStatus()).isEqualTo(BatchStatus.FAILED);
+        assertThat(chunkWriter.getStepContributions()).isEmpty();
+    }
+
+    @Test
+    void theAcknowledgedKeyStopsBeforeTheFirstChunkStillInFlight() throws Exception {
+        chunkWriter.setKeyExtractor(Customer::getId);
+        chunkWriter.write(Arrays.asList(customer(1), customer(2)));
+        chunkWriter.write(Arrays.asList(customer(4), customer(5)));
+        chunkWriter.write(Arrays.asList(customer(7), customer(8)));
+        ChunkRequest<?> first = (ChunkRequest<?>) requests.receive(0).getPayload();
+        ChunkRequest<?> second = (ChunkRequest<?>) requests.receive(0).getPayload();
+        ChunkRequest<?> third = (ChunkRequest<?>) requests.receive(0).getPayload();
+        ExecutionContext executionContext = new ExecutionContext();
+
+        acknowledge(first);
+        acknowledge(third);
+        chunkWriter.update(executionContext);
+        assertThat(executionContext.getLong(WindowedChunkMessageChannelItemWriter.ACKNOWLEDGED)).isEqualTo(2);
+
+        acknowledge(second);
+        chunkWriter.update(executionContext);
+        assertThat(executionContext.getLong(WindowedChunkMessageChannelItemWriter.ACKNOWLEDGED)).isEqualTo(8);
+    }
+
+    private void reply(List<Customer> items) {
+        ChunkRequest<?> request = (ChunkRequest<?>) requests.receive(0).getPayload();
+        chunkWriter.handleMessage(new GenericMessage<>(new ProcessedChunkResponse<>(request.getSequence(),
+                request.getJobId(), request.getStepContribution(), items)));
+    }
+
+    private void acknowledge(ChunkRequest<?> request) {
+        chunkWriter.handleMessage(new GenericMessage<>(new ChunkResponse(request.getSequence(), request.getJobId(),
+                request.getStepContribution())));
+    }
+
+    private StepExecution completed() {
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        return stepExecution;
+    }
+
+    private static Customer customer(long id) {
+        return new Customer(id, "first" + id, "last" + id, LocalDate.ofEpochDay(0));
+    }
+}
@@ -0,0 +1,229 @@
+package as.springbatchlearn.domain;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringJUnitConfig
+class WorkStealingPartitionHandlerTests {
+
+    private static final int ROWS = 2000;
+    private static final long SLOW_BELOW = 500;
+    private static final long FAIL_AT = 1501;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job job;
+
+    @Autowired
+    private Queue<Long> written;
+
+    @Autowired
+    private AtomicLong failAt;
+
+    @BeforeEach
+    void clearWritten() {
+        written.clear();
+    }
+
+    @Test
+    void everyRowIsReadOnceAndTheSlowRangeIsStolenFrom() throws Exception {
+        JobExecution jobExecution = jobLauncher.run(job, new JobParameters());
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        List<Long> ids = new ArrayList<>(written);
+        ids.sort(Long::compare);
+        assertThat(ids).containsExactlyElementsOf(expectedIds());
+
+        StepExecution manager = jobExecution.getStepExecutions().stream()
+                .filter(stepExecution -> stepExecution.getStepName().equals("manager"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        assertThat(manager.getExecutionContext().getString(WorkStealingPartitionHandler.SPLITS, "")).isNotEmpty();
+        assertThat(manager.getWriteCount()).isEqualTo(ROWS);
+    }
+
+    @Test
+    void aRestartWritesTheRowsOfTheFailedChunkAndNoOthersAgain() throws Exception {
+        JobParameters parameters = new JobParametersBuilder().addString("run", "restart").toJobParameters();
+        failAt.set(FAIL_AT);
+
+        JobExecution failed = jobLauncher.run(job, parameters);
+
+        assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+        assertThat(written).doesNotContain(FAIL_AT);
+
+        JobExecution restarted = jobLauncher.run(job, parameters);
+
+        assertThat(restarted.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        List<Long> ids = new ArrayList<>(written);
+        ids.sort(Long::compare);
+        assertThat(ids).containsExactlyElementsOf(expectedIds());
+    }
+
+    // ids with gaps: every third id is missing
+    private static List<Long> expectedIds() {
+        return LongStream.rangeClosed(1, ROWS * 3 / 2 + 1)
+                .filter(id -> id % 3 != 0)
+                .limit(ROWS)
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
+    @Configuration
+    @EnableBatchProcessing
+    static class TestConfiguration {
+
+        @Autowired
+        private JobBuilderFactory jobBuilderFactory;
+
+        @Autowired
+        private StepBuilderFactory stepBuilderFactory;
+
+        @Autowired
+        private JobRepository jobRepository;
+
+        @Bean
+        public DataSource dataSource() {
+            DataSource dataSource = new EmbeddedDatabaseBuilder()
+                    .setType(EmbeddedDatabaseType.H2)
+                    .generateUniqueName(true)
+                    .addScript("/org/springframework/batch/core/schema-h2.sql")
+                    .build();
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            jdbcTemplate.execute("CREATE TABLE customer (id bigint PRIMARY KEY, firstName varchar(255), lastName varchar(255), birthdate date)");
+            jdbcTemplate.batchUpdate("INSERT INTO customer VALUES (?, ?, ?, ?)",
+                    expectedIds().stream()
+                            .map(id -> new Object[]{id, "First" + id, "Last" + id, Date.valueOf("1980-01-01")})
+                            .collect(Collectors.toList()));
+
+            return dataSource;
+        }
+
+        @Bean
+        public Queue<Long> written() {
+            return new ConcurrentLinkedQueue<>();
+        }
+
+        // The id whose chunk fails to be written, once
+        @Bean
+        public AtomicLong failAt() {
+            return new AtomicLong();
+        }
+
+        @Bean
+        @StepScope
+        public KeysetPagingItemReader<Customer> rangeItemReader() {
+            KeysetPagingItemReader<Customer> reader = new KeysetPagingItemReader<>();
+
+            reader.setDataSource(dataSource());
+            reader.setSelectClause(CustomerRowMapper.SELECT_CLAUSE);
+            reader.setFromClause("customer");
+            reader.setSortKey("id");
+            reader.setRowMapper(new CustomerRowMapper());
+            reader.setKeyExtractor(Customer::getId);
+            reader.setPageSize(20);
+            reader.setPartitioned(true);
+
+            return reader;
+        }
+
+        @Bean
+        public Step worker() {
+            return stepBuilderFactory.get("worker")
+                    .<Customer, Customer>chunk(10)
+                    .reader(rangeItemReader())
+                    .processor((ItemProcessor<Customer, Customer>) item -> {
+                        if (item.getId() < SLOW_BELOW) {
+                            Thread.sleep(2);
+                        }
+                        return item;
+                    })
+                    .writer(items -> {
+                        long id = failAt().get();
+                        if (items.stream().anyMatch(item -> item.getId() == id) && failAt().compareAndSet(id, 0)) {
+                            throw new IllegalStateException("Failing the chunk of " + id);
+                        }
+                        items.forEach(item -> written().add(item.getId()));
+                    })
+                    .build();
+        }
+
+        @Bean
+        public ColumnRangePartitioner partitioner() {
+            ColumnRangePartitioner partitioner = new ColumnRangePartitioner();
+
+            partitioner.setDataSource(dataSource());
+            partitioner.setTable("customer");
+            partitioner.setColumn("id");
+
+            return partitioner;
+        }
+
+        @Bean
+        public WorkStealingPartitionHandler partitionHandler() {
+            WorkStealingPartitionHandler handler = new WorkStealingPartitionHandler();
+
+            handler.setStep(worker());
+            handler.setTaskExecutor(new SimpleAsyncTaskExecutor());
+            handler.setJobRepository(jobRepository);
+            handler.setWorkers(4);
+            handler.setPartitionsPerWorker(1);
+            handler.setMinSplitSize(20);
+
+            return handler;
+        }
+
+        @Bean
+        public Step manager() {
+            return stepBuilderFactory.get("manager")
+                    .partitioner("worker", partitioner())
+                    .partitionHandler(partitionHandler())
+                    .build();
+        }
+
+        @Bean
+        public Job job() {
+            return jobBuilderFactory.get("job")
+                    .start(manager())
+                    .build();
+        }
+    }
+}